@@ -58,6 +58,9 @@ public class MainActivity extends AppCompatActivity {
         if (savedInstanceState != null) {
             mSelectedNavItem = savedInstanceState.getInt(KEY_SELECTED_NAV_ITEM, mSelectedNavItem);
             mUser = (User) savedInstanceState.getSerializable(KEY_USER);
+        } else {
+            // open the connections while the UI is inflated, the first list request doesn't need to wait for the handshakes
+            EvernoteSession.getInstance().getEvernoteClientFactory().warmUpConnectionsAsync(null, null);
         }
 
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
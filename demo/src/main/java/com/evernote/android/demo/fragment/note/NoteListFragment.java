@@ -24,12 +24,13 @@ import com.evernote.android.demo.task.BaseTask;
 import com.evernote.android.demo.task.DeleteNoteTask;
 import com.evernote.android.demo.task.GetNoteContentTask;
 import com.evernote.android.demo.task.GetNoteHtmlTask;
-import com.evernote.android.demo.util.ParcelableUtil;
 import com.evernote.android.demo.util.ViewUtil;
 import com.evernote.android.intent.EvernoteIntent;
 import com.evernote.client.android.EvernoteSession;
 import com.evernote.client.android.asyncclient.EvernoteClientFactory;
 import com.evernote.client.android.type.NoteRef;
+import com.evernote.client.android.type.NoteRefList;
+import com.evernote.client.android.type.NoteRefPrefetcher;
 import com.evernote.edam.type.Note;
 
 import net.vrallev.android.task.TaskResult;
@@ -46,7 +47,7 @@ public class NoteListFragment extends Fragment {
 
     public static NoteListFragment create(List<NoteRef> noteRefList) {
         Bundle args = new Bundle();
-        ParcelableUtil.putParcelableList(args, noteRefList, KEY_NOTE_LIST);
+        args.putParcelable(KEY_NOTE_LIST, NoteRefList.copyOf(noteRefList));
 
         NoteListFragment fragment = new NoteListFragment();
         fragment.setArguments(args);
@@ -54,6 +55,7 @@ public class NoteListFragment extends Fragment {
     }
 
     private List<NoteRef> mNoteRefList;
+    private NoteRefPrefetcher mPrefetcher;
 
     private AbsListView mListView;
     private MyAdapter mAdapter;
@@ -62,7 +64,14 @@ public class NoteListFragment extends Fragment {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mNoteRefList = getArguments().getParcelableArrayList(KEY_NOTE_LIST);
+        mNoteRefList = getArguments().getParcelable(KEY_NOTE_LIST);
+        mPrefetcher = new NoteRefPrefetcher(NoteRefPrefetcher.Target.HTML, NoteRefPrefetcher.DEFAULT_PREFETCH_COUNT, 4 * 1024 * 1024);
+    }
+
+    @Override
+    public void onDestroy() {
+        mPrefetcher.shutdown();
+        super.onDestroy();
     }
 
     @Nullable
@@ -74,7 +83,25 @@ public class NoteListFragment extends Fragment {
         mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                new GetNoteHtmlTask(mNoteRefList.get(position)).start(NoteListFragment.this, "html");
+                new GetNoteHtmlTask(mNoteRefList.get(position), mPrefetcher).start(NoteListFragment.this, "html");
+            }
+        });
+
+        mListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+
+            private int mLastFirstVisibleItem = -1;
+
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                // no op
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (firstVisibleItem != mLastFirstVisibleItem && visibleItemCount > 0) {
+                    mPrefetcher.onWindowChanged(mNoteRefList, firstVisibleItem, visibleItemCount, firstVisibleItem >= mLastFirstVisibleItem);
+                    mLastFirstVisibleItem = firstVisibleItem;
+                }
             }
         });
 
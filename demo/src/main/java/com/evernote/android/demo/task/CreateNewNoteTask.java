@@ -4,10 +4,10 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import com.evernote.client.android.EvernoteSession;
-import com.evernote.client.android.EvernoteUtil;
 import com.evernote.client.android.asyncclient.EvernoteLinkedNotebookHelper;
 import com.evernote.client.android.asyncclient.EvernoteNoteStoreClient;
-import com.evernote.client.conn.mobile.FileData;
+import com.evernote.client.android.enml.EnmlWriter;
+import com.evernote.client.conn.mobile.FileResourceBuilder;
 import com.evernote.edam.error.EDAMNotFoundException;
 import com.evernote.edam.error.EDAMSystemException;
 import com.evernote.edam.error.EDAMUserException;
@@ -18,10 +18,8 @@ import com.evernote.edam.type.Resource;
 import com.evernote.edam.type.ResourceAttributes;
 import com.evernote.thrift.TException;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.StringWriter;
 
 /**
  * @author rwondratschek
@@ -54,42 +52,37 @@ public class CreateNewNoteTask extends BaseTask<Note> {
             note.setNotebookGuid(mNotebook.getGuid());
         }
 
+        StringWriter content = new StringWriter();
+        EnmlWriter enmlWriter = new EnmlWriter(content).startNote().text(mContent);
+
         if (mImageData == null) {
-            note.setContent(EvernoteUtil.NOTE_PREFIX + mContent + EvernoteUtil.NOTE_SUFFIX);
+            enmlWriter.endNote();
+            note.setContent(content.toString());
             return createNote(note);
         }
 
-        InputStream in = null;
-        try {
-            // Hash the data in the image file. The hash is used to reference the file in the ENML note content.
-            in = new BufferedInputStream(new FileInputStream(mImageData.getPath()));
-            FileData data = new FileData(EvernoteUtil.hash(in), new File(mImageData.getPath()));
+        FileResourceBuilder resourceBuilder = new FileResourceBuilder(
+                EvernoteSession.getInstance().getEvernoteClientFactory().getUploadManager().getHashCache(),
+                EvernoteSession.getInstance().getApplicationContext().getCacheDir());
 
+        try {
             ResourceAttributes attributes = new ResourceAttributes();
             attributes.setFileName(mImageData.getFileName());
 
-            // Create a new Resource
-            Resource resource = new Resource();
-            resource.setData(data);
-            resource.setMime(mImageData.getMimeType());
-            resource.setAttributes(attributes);
+            // Create a new Resource, the hash is used to reference the file in the ENML note content. It's
+            // cached, sending the same image again doesn't read the file twice.
+            Resource resource = resourceBuilder.fromFile(new File(mImageData.getPath()), mImageData.getMimeType(), attributes);
 
             note.addToResources(resource);
 
             // Set the note's ENML content
-            String content = EvernoteUtil.NOTE_PREFIX
-                    + mContent
-                    + EvernoteUtil.createEnMediaTag(resource)
-                    + EvernoteUtil.NOTE_SUFFIX;
-
-            note.setContent(content);
+            enmlWriter.media(resource).endNote();
+            note.setContent(content.toString());
 
             return createNote(note);
 
         } finally {
-            if (in != null) {
-                in.close();
-            }
+            resourceBuilder.close();
         }
     }
 
@@ -38,7 +38,8 @@ public class FindNotesTask extends BaseTask<List<NoteRef>> {
         mSearch = new EvernoteSearchHelper.Search()
                 .setOffset(offset)
                 .setMaxNotes(maxNotes)
-                .setNoteFilter(noteFilter);
+                .setNoteFilter(noteFilter)
+                .setCacheEnabled(true);
 
         if (linkedNotebook != null) {
             mSearch.addLinkedNotebook(linkedNotebook);
@@ -1,9 +1,12 @@
 package com.evernote.android.demo.task;
 
+import android.support.annotation.Nullable;
+
 import com.evernote.client.android.EvernoteSession;
 import com.evernote.client.android.asyncclient.EvernoteClientFactory;
 import com.evernote.client.android.asyncclient.EvernoteHtmlHelper;
 import com.evernote.client.android.type.NoteRef;
+import com.evernote.client.android.type.NoteRefPrefetcher;
 import com.squareup.okhttp.Response;
 
 /**
@@ -12,14 +15,20 @@ import com.squareup.okhttp.Response;
 public class GetNoteHtmlTask extends BaseTask<String> {
 
     private final NoteRef mNoteRef;
+    private final NoteRefPrefetcher mPrefetcher;
 
-    public GetNoteHtmlTask(NoteRef noteRef) {
+    public GetNoteHtmlTask(NoteRef noteRef, @Nullable NoteRefPrefetcher prefetcher) {
         super(String.class);
         mNoteRef = noteRef;
+        mPrefetcher = prefetcher;
     }
 
     @Override
     protected String checkedExecute() throws Exception {
+        if (mPrefetcher != null) {
+            return mPrefetcher.getHtml(mNoteRef);
+        }
+
         EvernoteClientFactory clientFactory = EvernoteSession.getInstance().getEvernoteClientFactory();
 
         EvernoteHtmlHelper htmlHelper;
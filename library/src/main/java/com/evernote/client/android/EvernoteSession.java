@@ -33,6 +33,7 @@ import android.os.Parcelable;
 import android.support.v4.app.FragmentActivity;
 
 import com.evernote.client.android.asyncclient.EvernoteClientFactory;
+import com.evernote.client.android.asyncclient.EvernoteLocalIndex;
 import com.evernote.client.android.helper.Cat;
 import com.evernote.client.android.helper.EvernotePreconditions;
 import com.evernote.client.android.login.EvernoteLoginActivity;
@@ -256,6 +257,12 @@ public final class EvernoteSession {
     /**
      * Clears all stored session information. If the user is not logged in, then this is a no-op.
      *
+     * <br>
+     * <br>
+     *
+     * The data of the user, which the factories keep on the device, e.g. the {@link EvernoteLocalIndex}
+     * with the plain text of the user's notes and cached thumbnails, is cleared in the background.
+     *
      * @return {@code true} if the user successfully logged out, {@code false} if the user wasn't
      * logged in.
      * @see #isLoggedIn()
@@ -265,6 +272,8 @@ public final class EvernoteSession {
             return false;
         }
 
+        getEvernoteClientFactory().clearUserDataAsync(null);
+
         mAuthenticationResult.clear();
         mAuthenticationResult = null;
 
@@ -42,14 +42,28 @@ import android.webkit.CookieSyncManager;
 import android.webkit.ValueCallback;
 
 import com.evernote.client.android.helper.Cat;
+import com.evernote.client.conn.mobile.FileData;
+import com.evernote.edam.type.Data;
 import com.evernote.edam.type.Resource;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @SuppressWarnings("unused")
 public final class EvernoteUtil {
@@ -102,54 +116,199 @@ public final class EvernoteUtil {
      */
     private static final String EDAM_HASH_ALGORITHM = "MD5";
 
-    private static final MessageDigest HASH_DIGEST;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
 
-    private static final String PACKAGE_NAME = "com.evernote";
-    private static final String EVERNOTE_SIGNATURE = "XS7HhF3x8-kho4iOnAQIdP7_m4UsbRKgaEAr1HaXwnc=";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
 
     static {
-        MessageDigest messageDigest;
-        try {
-            messageDigest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            // notify in hash method
-            messageDigest = null;
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
         }
-        HASH_DIGEST = messageDigest;
     }
 
+    /**
+     * Length of the constant parts of an en-media tag.
+     */
+    private static final int EN_MEDIA_TAG_LENGTH = "<en-media hash=\"\" type=\"\"/>".length();
+
+    /*
+     * MessageDigest isn't thread-safe, each thread uses its own instance and buffers.
+     */
+    private static final ThreadLocal<MessageDigest> HASH_DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance(EDAM_HASH_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                // notify in hash method
+                return null;
+            }
+        }
+    };
+
+    private static final ThreadLocal<byte[]> HASH_BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[HASH_BUFFER_SIZE];
+        }
+    };
+
+    private static final ThreadLocal<ByteBuffer> HASH_DIRECT_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        }
+    };
+
+    private static final String PACKAGE_NAME = "com.evernote";
+    private static final String EVERNOTE_SIGNATURE = "XS7HhF3x8-kho4iOnAQIdP7_m4UsbRKgaEAr1HaXwnc=";
+
     /**
      * Create an ENML &lt;en-media&gt; tag for the specified Resource object.
      */
     public static String createEnMediaTag(Resource resource) {
-        return "<en-media hash=\"" + bytesToHex(resource.getData().getBodyHash()) + "\" type=\"" + resource.getMime() + "\"/>";
+        Data data = resource.getData();
+        String hash = data instanceof FileData ? ((FileData) data).getBodyHashHex() : bytesToHex(data.getBodyHash());
+
+        return new StringBuilder(EN_MEDIA_TAG_LENGTH + hash.length() + resource.getMime().length())
+                .append("<en-media hash=\"").append(hash)
+                .append("\" type=\"").append(resource.getMime())
+                .append("\"/>")
+                .toString();
     }
 
     /**
-     * Returns an MD5 checksum of the provided array of bytes.
+     * Returns an MD5 checksum of the provided array of bytes. This method is thread-safe.
      */
     public static byte[] hash(byte[] body) {
-        if (HASH_DIGEST != null) {
-            return HASH_DIGEST.digest(body);
-        } else {
-            throw new EvernoteUtilException(EDAM_HASH_ALGORITHM + " not supported", new NoSuchAlgorithmException(EDAM_HASH_ALGORITHM));
-        }
+        return getHashDigest().digest(body);
     }
 
     /**
-     * Returns an MD5 checksum of the contents of the provided InputStream.
+     * Returns an MD5 checksum of the contents of the provided InputStream. This method is thread-safe.
      */
     public static byte[] hash(InputStream in) throws IOException {
-        if (HASH_DIGEST == null) {
-            throw new EvernoteUtilException(EDAM_HASH_ALGORITHM + " not supported", new NoSuchAlgorithmException(EDAM_HASH_ALGORITHM));
-        }
+        return hash(in, null);
+    }
+
+    /**
+     * Returns an MD5 checksum of the contents of the provided InputStream and copies the contents
+     * into the OutputStream in the same pass. This method is thread-safe.
+     *
+     * @param in The data to hash. The stream isn't closed.
+     * @param copy Receives all read data. May be {@code null}.
+     */
+    public static byte[] hash(InputStream in, @Nullable OutputStream copy) throws IOException {
+        MessageDigest digest = getHashDigest();
+        byte[] buf = HASH_BUFFER.get();
 
-        byte[] buf = new byte[1024];
         int n;
         while ((n = in.read(buf)) != -1) {
-            HASH_DIGEST.update(buf, 0, n);
+            digest.update(buf, 0, n);
+            if (copy != null) {
+                copy.write(buf, 0, n);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Returns an MD5 checksum of the file. The file is read with a {@link FileChannel} into a direct
+     * buffer, which is reused by the calling thread. This method is thread-safe.
+     */
+    public static byte[] hash(File file) throws IOException {
+        MessageDigest digest = getHashDigest();
+        ByteBuffer buffer = HASH_DIRECT_BUFFER.get();
+
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return digest.digest();
+
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Hashes all files in parallel with one thread for each processor.
+     *
+     * @see #hashAll(List, ExecutorService)
+     */
+    public static List<byte[]> hashAll(List<File> files) throws IOException, InterruptedException {
+        int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            return hashAll(files, executorService);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Hashes all files in parallel on the given executor.
+     *
+     * @param files The files to hash.
+     * @param executorService Runs the hash computations.
+     * @return The MD5 checksums in the same order as the files.
+     */
+    public static List<byte[]> hashAll(List<File> files, ExecutorService executorService) throws IOException, InterruptedException {
+        List<Future<byte[]>> futures = new ArrayList<>(files.size());
+        for (final File file : files) {
+            futures.add(executorService.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return hash(file);
+                }
+            }));
+        }
+
+        List<byte[]> result = new ArrayList<>(files.size());
+        try {
+            for (Future<byte[]> future : futures) {
+                result.add(future.get());
+            }
+
+        } catch (ExecutionException e) {
+            for (Future<byte[]> future : futures) {
+                future.cancel(true);
+            }
+
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+
+        return result;
+    }
+
+    private static MessageDigest getHashDigest() {
+        MessageDigest digest = HASH_DIGEST.get();
+        if (digest == null) {
+            throw new EvernoteUtilException(EDAM_HASH_ALGORITHM + " not supported", new NoSuchAlgorithmException(EDAM_HASH_ALGORITHM));
         }
-        return HASH_DIGEST.digest();
+
+        // a previous computation may have failed with an exception
+        digest.reset();
+        return digest;
     }
 
     /**
@@ -168,18 +327,61 @@ public final class EvernoteUtil {
      *                   byte for readability.
      */
     public static String bytesToHex(byte[] bytes, boolean withSpaces) {
-        StringBuilder sb = new StringBuilder();
+        if (!withSpaces) {
+            char[] chars = new char[bytes.length * 2];
+            bytesToHex(bytes, 0, bytes.length, chars, 0);
+            return new String(chars);
+        }
+
+        char[] chars = new char[bytes.length * 3];
+        int index = 0;
         for (byte hashByte : bytes) {
-            int intVal = 0xff & hashByte;
-            if (intVal < 0x10) {
-                sb.append('0');
-            }
-            sb.append(Integer.toHexString(intVal));
-            if (withSpaces) {
-                sb.append(' ');
-            }
+            chars[index++] = HEX_DIGITS[(hashByte >> 4) & 0x0f];
+            chars[index++] = HEX_DIGITS[hashByte & 0x0f];
+            chars[index++] = ' ';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Writes the hexadecimal form of the bytes into the provided buffer without allocating any
+     * objects. Two lower case characters are written per byte.
+     *
+     * @param bytes The source array.
+     * @param offset The index of the first byte to convert.
+     * @param length The number of bytes to convert.
+     * @param out The target buffer, it must have room for {@code 2 * length} characters.
+     * @param outOffset The index of the first character in the target buffer.
+     * @return The number of written characters.
+     */
+    public static int bytesToHex(byte[] bytes, int offset, int length, char[] out, int outOffset) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length || outOffset < 0 || outOffset + 2 * length > out.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int index = outOffset;
+        for (int i = offset; i < offset + length; i++) {
+            out[index++] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            out[index++] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return index - outOffset;
+    }
+
+    /**
+     * Same as {@link #bytesToHex(byte[], int, int, char[], int)}, but writes ASCII bytes, e.g. directly
+     * into a network or file buffer.
+     */
+    public static int bytesToHex(byte[] bytes, int offset, int length, byte[] out, int outOffset) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length || outOffset < 0 || outOffset + 2 * length > out.length) {
+            throw new IndexOutOfBoundsException();
         }
-        return sb.toString();
+
+        int index = outOffset;
+        for (int i = offset; i < offset + length; i++) {
+            out[index++] = (byte) HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            out[index++] = (byte) HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return index - outOffset;
     }
 
     /**
@@ -190,14 +392,63 @@ public final class EvernoteUtil {
      */
     public static byte[] hexToBytes(String hexString) {
         byte[] result = new byte[hexString.length() / 2];
-        for (int i = 0; i < result.length; ++i) {
-            int offset = i * 2;
-            result[i] = (byte) Integer.parseInt(hexString.substring(offset,
-                offset + 2), 16);
-        }
+        hexToBytes(hexString, 0, result.length * 2, result, 0);
         return result;
     }
 
+    /**
+     * Parses hexadecimal characters into the provided buffer without allocating any objects. Upper
+     * and lower case characters are accepted.
+     *
+     * @param hex The source characters.
+     * @param offset The index of the first character to parse.
+     * @param length The number of characters to parse, must be even.
+     * @param out The target buffer, it must have room for {@code length / 2} bytes.
+     * @param outOffset The index of the first byte in the target buffer.
+     * @return The number of written bytes.
+     * @throws IllegalArgumentException If a character isn't a hexadecimal digit or the length is odd.
+     */
+    public static int hexToBytes(CharSequence hex, int offset, int length, byte[] out, int outOffset) {
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("odd number of hex characters");
+        }
+        if (offset < 0 || length < 0 || offset + length > hex.length() || outOffset < 0 || outOffset + length / 2 > out.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int index = outOffset;
+        for (int i = offset; i < offset + length; i += 2) {
+            out[index++] = (byte) ((hexValue(hex.charAt(i)) << 4) | hexValue(hex.charAt(i + 1)));
+        }
+        return index - outOffset;
+    }
+
+    /**
+     * Same as {@link #hexToBytes(CharSequence, int, int, byte[], int)}, but parses a char array.
+     */
+    public static int hexToBytes(char[] hex, int offset, int length, byte[] out, int outOffset) {
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("odd number of hex characters");
+        }
+        if (offset < 0 || length < 0 || offset + length > hex.length || outOffset < 0 || outOffset + length / 2 > out.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int index = outOffset;
+        for (int i = offset; i < offset + length; i += 2) {
+            out[index++] = (byte) ((hexValue(hex[i]) << 4) | hexValue(hex[i + 1]));
+        }
+        return index - outOffset;
+    }
+
+    private static int hexValue(char c) {
+        int value = c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("invalid hex character " + c);
+        }
+        return value;
+    }
+
     /**
      * Removes all cookies for this application.
      */
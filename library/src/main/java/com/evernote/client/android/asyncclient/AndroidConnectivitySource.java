@@ -0,0 +1,60 @@
+package com.evernote.client.android.asyncclient;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+/**
+ * Reads the network state from the {@link ConnectivityManager}. Requires the
+ * {@code ACCESS_NETWORK_STATE} permission.
+ */
+public class AndroidConnectivitySource implements ConnectivitySource {
+
+    private final Context mContext;
+    private final ConnectivityManager mConnectivityManager;
+
+    private BroadcastReceiver mReceiver;
+
+    /**
+     * @param context Any context, the application context is used.
+     */
+    public AndroidConnectivitySource(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        mConnectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    @Override
+    public boolean isConnected() {
+        NetworkInfo networkInfo = mConnectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    @Override
+    public boolean isMetered() {
+        return ConnectivityManagerCompat.isActiveNetworkMetered(mConnectivityManager);
+    }
+
+    @Override
+    public synchronized void setListener(@Nullable final Listener listener) {
+        if (mReceiver != null) {
+            mContext.unregisterReceiver(mReceiver);
+            mReceiver = null;
+        }
+
+        if (listener != null) {
+            mReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    listener.onConnectivityChanged();
+                }
+            };
+            mContext.registerReceiver(mReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Provides the network state to an {@link EvernoteTransferPolicy}. {@link AndroidConnectivitySource}
+ * is the implementation for devices, tests can provide a fake one.
+ */
+public interface ConnectivitySource {
+
+    /**
+     * @return {@code true}, if the device has a network connection.
+     */
+    boolean isConnected();
+
+    /**
+     * @return {@code true}, if the active network is metered, e.g. a cellular network.
+     */
+    boolean isMetered();
+
+    /**
+     * @param listener Notified whenever the network state changes. {@code null} removes the listener.
+     */
+    void setListener(@Nullable Listener listener);
+
+    /**
+     * Receives network changes.
+     */
+    interface Listener {
+        void onConnectivityChanged();
+    }
+}
@@ -28,7 +28,13 @@ public abstract class EvernoteAsyncClient {
     }
 
     protected <T> Future<T> submitTask(@NonNull final Callable<T> callable, @Nullable final EvernoteCallback<T> callback) {
-        return mExecutorService.submit(new Callable<T>() {
+        return submitTask(mExecutorService, callable, callback);
+    }
+
+    protected <T> Future<T> submitTask(@NonNull ExecutorService executorService, @NonNull final Callable<T> callable,
+                                       @Nullable final EvernoteCallback<T> callback) {
+
+        return executorService.submit(new Callable<T>() {
             @Override
             public T call() throws Exception {
                 try {
@@ -66,6 +72,10 @@ public abstract class EvernoteAsyncClient {
         }
     }
 
+    protected final ExecutorService getExecutorService() {
+        return mExecutorService;
+    }
+
     protected final void runOnUiThread(@NonNull Runnable runnable) {
         if (Thread.currentThread() != UI_THREAD) {
             UI_HANDLER.post(runnable);
@@ -0,0 +1,449 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.EvernoteSession;
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.edam.error.EDAMErrorCode;
+import com.evernote.edam.error.EDAMSystemException;
+import com.evernote.edam.type.Data;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Resource;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes many note mutations with bounded concurrency. Each worker thread uses its own
+ * {@link EvernoteNoteStoreClient} with {@link EvernoteRateLimiter.Priority#BACKGROUND} priority,
+ * so that the shared rate limiter paces the calls and calls from the UI aren't starved.
+ *
+ * <br>
+ * <br>
+ *
+ * Operations on the same note are executed by one worker in their original order. Notes are
+ * ordered by the size of their content and resources, deletions don't carry any payload and are
+ * executed first, so that small notes aren't stuck behind huge attachments. If the server reports
+ * {@link EDAMErrorCode#RATE_LIMIT_REACHED}, then all remaining operations fail with the same
+ * exception and can be retried later.
+ *
+ * @see EvernoteNoteStoreClient#executeBulk(List, int, Listener)
+ */
+@SuppressWarnings("unused")
+public class EvernoteBulkWriter {
+
+    public static final int DEFAULT_PARALLELISM = 3;
+
+    private final EvernoteNoteStoreClient mClient;
+    private final EvernoteSession mEvernoteSession;
+    private final String mUrl;
+    private final String mAuthenticationToken;
+
+    /**
+     * @param client The client, which created this writer.
+     * @param session The session to create a client for each worker. If {@code null}, then all
+     *                operations are executed sequentially with the given client.
+     * @param url The note store URL of the given client.
+     * @param authenticationToken The token of the given client.
+     */
+    public EvernoteBulkWriter(@NonNull EvernoteNoteStoreClient client, @Nullable EvernoteSession session, @Nullable String url,
+                              @NonNull String authenticationToken) {
+
+        mClient = EvernotePreconditions.checkNotNull(client);
+        mEvernoteSession = session;
+        mUrl = url;
+        mAuthenticationToken = EvernotePreconditions.checkNotEmpty(authenticationToken);
+    }
+
+    /**
+     * Executes the given operations and blocks until all of them completed.
+     *
+     * @param operations The mutations to execute.
+     * @param parallelism The maximum number of concurrent calls.
+     * @param listener Receives each result as soon as the operation completed. It's invoked on the
+     *                 worker threads, for operations skipped after a rate limit event it's invoked
+     *                 on the calling thread before this method returns. May be {@code null}.
+     * @return The results in the same order as the given operations.
+     */
+    public List<Result> execute(@NonNull List<Operation> operations, int parallelism, @Nullable Listener listener) throws InterruptedException {
+        EvernotePreconditions.checkArgumentPositive(parallelism, "parallelism must be greater or equal 1");
+        if (operations.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final Execution execution = new Execution(operations, listener);
+
+        int workers = mEvernoteSession == null || mUrl == null ? 1 : Math.min(parallelism, operations.size());
+        if (workers == 1) {
+            execution.run(mClient.asBackgroundClient());
+            return execution.getResults();
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                executorService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        execution.run(mEvernoteSession.getEvernoteClientFactory().getNoteStoreClient(mUrl, mAuthenticationToken).asBackgroundClient());
+                    }
+                });
+            }
+
+            executorService.shutdown();
+            while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                // wait until all workers are done
+            }
+
+        } catch (InterruptedException e) {
+            execution.stop(null);
+            executorService.shutdownNow();
+            throw e;
+        }
+
+        return execution.getResults();
+    }
+
+    /**
+     * Estimates how many bytes an operation transfers.
+     */
+    protected long getPayloadSize(@NonNull Operation operation) {
+        Note note = operation.getNote();
+        if (note == null) {
+            return 0;
+        }
+
+        long size = note.isSetContent() ? note.getContent().length() : 0;
+        if (note.isSetResources()) {
+            for (Resource resource : note.getResources()) {
+                Data data = resource.getData();
+                if (data == null) {
+                    continue;
+                }
+                if (data.isSetSize()) {
+                    size += data.getSize();
+                } else if (data.isSetBody()) {
+                    size += data.getBody().length;
+                }
+            }
+        }
+        return size;
+    }
+
+    /*package*/ static Result executeOperation(EvernoteNoteStoreClient client, int index, Operation operation) {
+        try {
+            switch (operation.getType()) {
+                case CREATE_NOTE:
+                    return new Result(index, operation, client.createNote(operation.getNote()), 0, null);
+                case UPDATE_NOTE:
+                    Note note = client.updateNote(operation.getNote());
+                    return new Result(index, operation, note, note.getUpdateSequenceNum(), null);
+                case DELETE_NOTE:
+                    return new Result(index, operation, null, client.deleteNote(operation.getGuid()), null);
+                case EXPUNGE_NOTE:
+                    return new Result(index, operation, null, client.expungeNote(operation.getGuid()), null);
+                default:
+                    throw new IllegalStateException("not implemented");
+            }
+
+        } catch (Exception e) {
+            return new Result(index, operation, null, 0, e);
+        }
+    }
+
+    /**
+     * Creating a note isn't idempotent, if the connection broke after the request was sent, then
+     * sending it again may create a duplicate.
+     *
+     * @return {@code true}, if the exception proves that the request never reached the server.
+     */
+    /*package*/ static boolean isRequestNotSent(Throwable throwable) {
+        while (throwable != null) {
+            if (throwable instanceof ConnectException || throwable instanceof UnknownHostException
+                    || throwable instanceof NoRouteToHostException) {
+                return true;
+            }
+            throwable = throwable.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Groups the operations on the same note into a chain, which keeps their original order and is
+     * executed by a single worker. Creations have no GUID, each one is its own chain. The chains are
+     * ordered by the sum of their payload sizes.
+     *
+     * @return The indices of the operations for each chain.
+     */
+    /*package*/ static int[][] createChains(List<Operation> operations, long[] sizes) {
+        List<List<Integer>> chains = new ArrayList<>();
+        Map<String, List<Integer>> chainsByGuid = new HashMap<>();
+        for (int i = 0; i < operations.size(); i++) {
+            String guid = operations.get(i).getGuid();
+            List<Integer> chain = guid == null ? null : chainsByGuid.get(guid);
+            if (chain == null) {
+                chain = new ArrayList<>();
+                chains.add(chain);
+                if (guid != null) {
+                    chainsByGuid.put(guid, chain);
+                }
+            }
+            chain.add(i);
+        }
+
+        final long[] chainSizes = new long[chains.size()];
+        Integer[] order = new Integer[chains.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            for (int index : chains.get(i)) {
+                chainSizes[i] += sizes[index];
+            }
+        }
+
+        // stable sort, chains with the same size keep their original order
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return chainSizes[lhs] < chainSizes[rhs] ? -1 : (chainSizes[lhs] == chainSizes[rhs] ? 0 : 1);
+            }
+        });
+
+        int[][] result = new int[order.length][];
+        for (int i = 0; i < order.length; i++) {
+            List<Integer> chain = chains.get(order[i]);
+            result[i] = new int[chain.size()];
+            for (int j = 0; j < result[i].length; j++) {
+                result[i][j] = chain.get(j);
+            }
+        }
+        return result;
+    }
+
+    private final class Execution {
+
+        private final List<Operation> mOperations;
+        private final Listener mListener;
+        private final int[][] mChains;
+        private final Result[] mResults;
+        private final AtomicInteger mNext;
+
+        private volatile boolean mStopped;
+        private volatile Exception mStopException;
+
+        private Execution(List<Operation> operations, Listener listener) {
+            mOperations = operations;
+            mListener = listener;
+            long[] sizes = new long[operations.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = getPayloadSize(operations.get(i));
+            }
+            mChains = createChains(operations, sizes);
+            mResults = new Result[operations.size()];
+            mNext = new AtomicInteger();
+        }
+
+        private void run(EvernoteNoteStoreClient client) {
+            while (!mStopped) {
+                int position = mNext.getAndIncrement();
+                if (position >= mChains.length) {
+                    return;
+                }
+
+                for (int index : mChains[position]) {
+                    if (mStopped) {
+                        return;
+                    }
+
+                    Result result = executeOperation(client, index, mOperations.get(index));
+                    mResults[index] = result;
+
+                    if (mListener != null) {
+                        mListener.onResult(result);
+                    }
+
+                    Exception exception = result.getException();
+                    if (exception instanceof EDAMSystemException
+                            && EDAMErrorCode.RATE_LIMIT_REACHED.equals(((EDAMSystemException) exception).getErrorCode())) {
+                        stop(exception);
+                    }
+                }
+            }
+        }
+
+        private void stop(Exception exception) {
+            if (exception != null && mStopException == null) {
+                mStopException = exception;
+            }
+            mStopped = true;
+        }
+
+        private List<Result> getResults() {
+            List<Result> results = new ArrayList<>(mResults.length);
+            for (int i = 0; i < mResults.length; i++) {
+                Result result = mResults[i];
+                if (result == null) {
+                    result = new Result(i, mOperations.get(i), null, 0, mStopException);
+                    if (mListener != null) {
+                        mListener.onResult(result);
+                    }
+                }
+                results.add(result);
+            }
+            return results;
+        }
+    }
+
+    /**
+     * The type of a single mutation.
+     */
+    public enum Type {
+        CREATE_NOTE,
+        UPDATE_NOTE,
+        DELETE_NOTE,
+        EXPUNGE_NOTE
+    }
+
+    /**
+     * A single mutation of a bulk write.
+     */
+    public static final class Operation {
+
+        public static Operation createNote(@NonNull Note note) {
+            return new Operation(Type.CREATE_NOTE, EvernotePreconditions.checkNotNull(note), null);
+        }
+
+        public static Operation updateNote(@NonNull Note note) {
+            return new Operation(Type.UPDATE_NOTE, EvernotePreconditions.checkNotNull(note), note.getGuid());
+        }
+
+        public static Operation deleteNote(@NonNull String guid) {
+            return new Operation(Type.DELETE_NOTE, null, EvernotePreconditions.checkNotEmpty(guid));
+        }
+
+        public static Operation expungeNote(@NonNull String guid) {
+            return new Operation(Type.EXPUNGE_NOTE, null, EvernotePreconditions.checkNotEmpty(guid));
+        }
+
+        private final Type mType;
+        private final Note mNote;
+        private final String mGuid;
+
+        private Operation(Type type, Note note, String guid) {
+            mType = type;
+            mNote = note;
+            mGuid = guid;
+        }
+
+        @NonNull
+        public Type getType() {
+            return mType;
+        }
+
+        /**
+         * @return The note to create or update. Returns {@code null} for deletions.
+         */
+        @Nullable
+        public Note getNote() {
+            return mNote;
+        }
+
+        /**
+         * @return The GUID of the affected note. Returns {@code null} for creations.
+         */
+        @Nullable
+        public String getGuid() {
+            return mGuid;
+        }
+    }
+
+    /**
+     * The outcome of a single {@link Operation}.
+     */
+    public static final class Result {
+
+        private final int mIndex;
+        private final Operation mOperation;
+        private final Note mNote;
+        private final int mUpdateSequenceNum;
+        private final Exception mException;
+
+        /*package*/ Result(int index, Operation operation, Note note, int updateSequenceNum, Exception exception) {
+            mIndex = index;
+            mOperation = operation;
+            mNote = note;
+            mUpdateSequenceNum = note != null ? note.getUpdateSequenceNum() : updateSequenceNum;
+            mException = exception;
+        }
+
+        /**
+         * @return The position of the operation in the list passed to the writer. Returns {@code -1}
+         * for replayed {@link EvernoteOutbox} entries.
+         */
+        public int getIndex() {
+            return mIndex;
+        }
+
+        @NonNull
+        public Operation getOperation() {
+            return mOperation;
+        }
+
+        /**
+         * @return {@code true} if the server accepted the mutation.
+         */
+        public boolean isSuccessful() {
+            return mException == null;
+        }
+
+        /**
+         * @return The note returned by the server for creations and updates. Otherwise {@code null}.
+         */
+        @Nullable
+        public Note getNote() {
+            return mNote;
+        }
+
+        /**
+         * @return The update sequence number of the mutation, if it was successful.
+         */
+        public int getUpdateSequenceNum() {
+            return mUpdateSequenceNum;
+        }
+
+        /**
+         * @return The reason why this operation failed. Operations, which weren't executed because
+         * of a rate limit event, contain the rate limit exception.
+         */
+        @Nullable
+        public Exception getException() {
+            return mException;
+        }
+    }
+
+    /**
+     * Receives the results of a bulk write while it's running.
+     */
+    public interface Listener {
+        /**
+         * Called on a worker thread after an operation completed. Operations, which were skipped
+         * after a rate limit event, are reported on the thread calling
+         * {@link EvernoteBulkWriter#execute(List, int, Listener)}.
+         *
+         * @param result The result of the operation.
+         */
+        void onResult(@NonNull Result result);
+    }
+}
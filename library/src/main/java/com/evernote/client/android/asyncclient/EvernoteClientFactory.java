@@ -10,6 +10,8 @@ import com.evernote.client.android.EvernoteUtil;
 import com.evernote.client.android.helper.EvernotePreconditions;
 import com.evernote.client.conn.mobile.ByteStore;
 import com.evernote.client.conn.mobile.DiskBackedByteStore;
+import com.evernote.client.conn.mobile.FileHashCache;
+import com.evernote.client.conn.mobile.ResponseSpool;
 import com.evernote.client.conn.mobile.TAndroidTransport;
 import com.evernote.edam.error.EDAMNotFoundException;
 import com.evernote.edam.error.EDAMSystemException;
@@ -21,17 +23,31 @@ import com.evernote.edam.userstore.AuthenticationResult;
 import com.evernote.edam.userstore.UserStore;
 import com.evernote.thrift.TException;
 import com.evernote.thrift.protocol.TBinaryProtocol;
+import com.squareup.okhttp.Callback;
 import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A factory to create async wrappers around a {@link NoteStore.Client}. Use the corresponding
@@ -49,11 +65,22 @@ import java.util.concurrent.TimeUnit;
 @SuppressWarnings("unused")
 public class EvernoteClientFactory {
 
+    private static ExecutorService sWarmUpExecutorService;
+
     protected final EvernoteSession mEvernoteSession;
     protected final OkHttpClient mHttpClient;
     protected final ByteStore mByteStore;
     protected final Map<String, String> mHeaders;
     protected final ExecutorService mExecutorService;
+    protected final EvernoteRateLimiter.Registry mRateLimiterRegistry;
+    protected final EvernoteOutbox mOutbox;
+    protected final EvernoteUploadManager mUploadManager;
+    protected final ResponseSpool mResponseSpool;
+    protected final EvernoteTransferPolicy mTransferPolicy;
+    protected final EvernoteLinkedNotebookCache mLinkedNotebookCache;
+    protected final EvernoteThumbnailCache mThumbnailCache;
+    protected final EvernoteSearchResultCache mSearchResultCache;
+    protected final EvernoteLocalIndex mLocalIndex;
 
     private final Map<String, EvernoteUserStoreClient> mUserStoreClients;
     private final Map<String, EvernoteNoteStoreClient> mNoteStoreClients;
@@ -64,6 +91,10 @@ public class EvernoteClientFactory {
     private final Map<String, EvernoteHtmlHelper> mLinkedHtmlHelper;
     private EvernoteHtmlHelper mHtmlHelperBusiness;
 
+    private EvernoteThumbnailHelper mThumbnailHelperDefault;
+    private final Map<String, EvernoteThumbnailHelper> mLinkedThumbnailHelper;
+    private EvernoteThumbnailHelper mThumbnailHelperBusiness;
+
     private EvernoteSearchHelper mEvernoteSearchHelper;
 
     private final EvernoteAsyncClient mCreateHelperClient;
@@ -71,16 +102,34 @@ public class EvernoteClientFactory {
     private com.evernote.edam.userstore.AuthenticationResult mBusinessAuthenticationResult;
 
     protected EvernoteClientFactory(EvernoteSession session, OkHttpClient httpClient, ByteStore byteStore, Map<String, String> headers, ExecutorService executorService) {
+        this(session, httpClient, byteStore, headers, executorService, null, null, null, null, null, null, null, null, null);
+    }
+
+    protected EvernoteClientFactory(EvernoteSession session, OkHttpClient httpClient, ByteStore byteStore, Map<String, String> headers,
+                                    ExecutorService executorService, EvernoteRateLimiter.Registry rateLimiterRegistry, EvernoteOutbox outbox,
+                                    EvernoteUploadManager uploadManager, ResponseSpool responseSpool, EvernoteTransferPolicy transferPolicy,
+                                    EvernoteLinkedNotebookCache linkedNotebookCache, EvernoteThumbnailCache thumbnailCache,
+                                    EvernoteSearchResultCache searchResultCache, EvernoteLocalIndex localIndex) {
         mEvernoteSession = EvernotePreconditions.checkNotNull(session);
         mHttpClient = EvernotePreconditions.checkNotNull(httpClient);
         mByteStore = EvernotePreconditions.checkNotNull(byteStore);
         mHeaders = headers;
         mExecutorService = EvernotePreconditions.checkNotNull(executorService);
+        mRateLimiterRegistry = rateLimiterRegistry;
+        mOutbox = outbox;
+        mUploadManager = uploadManager;
+        mResponseSpool = responseSpool;
+        mTransferPolicy = transferPolicy;
+        mLinkedNotebookCache = linkedNotebookCache == null ? new EvernoteLinkedNotebookCache(session) : linkedNotebookCache;
+        mThumbnailCache = thumbnailCache;
+        mSearchResultCache = searchResultCache == null ? new EvernoteSearchResultCache() : searchResultCache;
+        mLocalIndex = localIndex;
 
         mUserStoreClients = new HashMap<>();
         mNoteStoreClients = new HashMap<>();
         mLinkedNotebookHelpers = new HashMap<>();
         mLinkedHtmlHelper = new HashMap<>();
+        mLinkedThumbnailHelper = new HashMap<>();
 
         mCreateHelperClient = new EvernoteAsyncClient(mExecutorService) { };
     }
@@ -93,14 +142,7 @@ public class EvernoteClientFactory {
     public synchronized EvernoteUserStoreClient getUserStoreClient() {
         checkLoggedIn();
 
-        String url = new Uri.Builder()
-                .scheme("https")
-                .authority(mEvernoteSession.getAuthenticationResult().getEvernoteHost())
-                .path("/edam/user")
-                .build()
-                .toString();
-
-        return getUserStoreClient(url, mEvernoteSession.getAuthToken());
+        return getUserStoreClient(getUserStoreUrl(), mEvernoteSession.getAuthToken());
     }
 
     /**
@@ -318,6 +360,100 @@ public class EvernoteClientFactory {
         return new EvernoteHtmlHelper(mHttpClient, mEvernoteSession.getAuthenticationResult().getEvernoteHost(), authToken, mExecutorService);
     }
 
+    /**
+     * Use this method, if you want to download the thumbnails of personal notes.
+     *
+     * @return An async wrapper to load thumbnails from the Evernote service.
+     */
+    public synchronized EvernoteThumbnailHelper getThumbnailHelperDefault() {
+        checkLoggedIn();
+
+        if (mThumbnailHelperDefault == null) {
+            mThumbnailHelperDefault = createThumbnailHelper(mEvernoteSession.getAuthenticationResult().getWebApiUrlPrefix(),
+                    mEvernoteSession.getAuthToken());
+        }
+        return mThumbnailHelperDefault;
+    }
+
+    /**
+     * Use this method, if you want to download the thumbnails of linked notes. The helper uses the same
+     * authentication as {@link #getLinkedHtmlHelper(LinkedNotebook)}.
+     *
+     * @param linkedNotebook The referenced {@link LinkedNotebook}. Its GUID and share key must not be
+     *                       {@code null}.
+     * @return An async wrapper to load thumbnails from the Evernote service.
+     */
+    public synchronized EvernoteThumbnailHelper getLinkedThumbnailHelper(@NonNull LinkedNotebook linkedNotebook)
+            throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException {
+
+        String key = linkedNotebook.getGuid();
+
+        EvernoteThumbnailHelper thumbnailHelper = mLinkedThumbnailHelper.get(key);
+        if (thumbnailHelper == null) {
+            EvernoteHtmlHelper htmlHelper = getLinkedHtmlHelper(linkedNotebook);
+
+            String webApiUrlPrefix = linkedNotebook.isSetWebApiUrlPrefix() ? linkedNotebook.getWebApiUrlPrefix()
+                    : createWebApiUrlPrefix(linkedNotebook.getShardId());
+
+            thumbnailHelper = createThumbnailHelper(webApiUrlPrefix, htmlHelper.mAuthToken);
+            mLinkedThumbnailHelper.put(key, thumbnailHelper);
+        }
+
+        return thumbnailHelper;
+    }
+
+    /**
+     * @see #getLinkedThumbnailHelper(LinkedNotebook)
+     */
+    public Future<EvernoteThumbnailHelper> getLinkedThumbnailHelperAsync(@NonNull final LinkedNotebook linkedNotebook,
+                                                                         @Nullable EvernoteCallback<EvernoteThumbnailHelper> callback) {
+        return mCreateHelperClient.submitTask(new Callable<EvernoteThumbnailHelper>() {
+            @Override
+            public EvernoteThumbnailHelper call() throws Exception {
+                return getLinkedThumbnailHelper(linkedNotebook);
+            }
+        }, callback);
+    }
+
+    /**
+     * Use this method, if you want to download the thumbnails of business notes.
+     *
+     * @return An async wrapper to load thumbnails from the Evernote service.
+     */
+    public synchronized EvernoteThumbnailHelper getThumbnailHelperBusiness() throws TException, EDAMUserException, EDAMSystemException {
+        if (mThumbnailHelperBusiness == null || isBusinessAuthExpired()) {
+            authenticateToBusiness();
+            mThumbnailHelperBusiness = createThumbnailHelper(createWebApiUrlPrefix(mBusinessAuthenticationResult.getUser().getShardId()),
+                    mBusinessAuthenticationResult.getAuthenticationToken());
+        }
+        return mThumbnailHelperBusiness;
+    }
+
+    /**
+     * @see #getThumbnailHelperBusiness()
+     */
+    public Future<EvernoteThumbnailHelper> getThumbnailHelperBusinessAsync(@Nullable EvernoteCallback<EvernoteThumbnailHelper> callback) {
+        return mCreateHelperClient.submitTask(new Callable<EvernoteThumbnailHelper>() {
+            @Override
+            public EvernoteThumbnailHelper call() throws Exception {
+                return getThumbnailHelperBusiness();
+            }
+        }, callback);
+    }
+
+    protected EvernoteThumbnailHelper createThumbnailHelper(String webApiUrlPrefix, String authToken) {
+        return new EvernoteThumbnailHelper(mHttpClient, webApiUrlPrefix, authToken, mThumbnailCache, mExecutorService);
+    }
+
+    protected final String createWebApiUrlPrefix(String shardId) {
+        return new Uri.Builder()
+                .scheme("https")
+                .authority(mEvernoteSession.getAuthenticationResult().getEvernoteHost())
+                .path("/shard/" + shardId + "/")
+                .build()
+                .toString();
+    }
+
     /**
      * @return An async wrapper to search notes in multiple note stores.
      */
@@ -334,16 +470,253 @@ public class EvernoteClientFactory {
         return new EvernoteSearchHelper(mEvernoteSession, mExecutorService);
     }
 
+    /**
+     * Opens connections to the personal note store, the user store and the note stores of the given
+     * linked notebooks, so that the first real call doesn't need to wait for the DNS lookup, the TCP
+     * and the TLS handshake. The connections are kept in the pool of the HTTP client and are reused
+     * by all clients created by this factory and by all other factories sharing the HTTP client.
+     *
+     * <br>
+     * <br>
+     *
+     * All hosts are contacted in parallel. Calling this method is optional, but it's recommended right
+     * after the user logged in or the app started.
+     *
+     * @param linkedNotebooks Additional linked notebooks whose note store hosts should be contacted.
+     *                        May be {@code null}.
+     * @return The number of hosts, which responded.
+     */
+    public int warmUpConnections(@Nullable Collection<LinkedNotebook> linkedNotebooks) throws InterruptedException {
+        checkLoggedIn();
+
+        Map<String, String> urls = new LinkedHashMap<>();
+        addWarmUpUrl(urls, mEvernoteSession.getAuthenticationResult().getNoteStoreUrl());
+        addWarmUpUrl(urls, getUserStoreUrl());
+
+        if (linkedNotebooks != null) {
+            for (LinkedNotebook linkedNotebook : linkedNotebooks) {
+                addWarmUpUrl(urls, linkedNotebook.getNoteStoreUrl());
+            }
+        }
+
+        final CountDownLatch latch = new CountDownLatch(urls.size());
+        final AtomicInteger successCount = new AtomicInteger();
+
+        for (String url : urls.values()) {
+            Request.Builder builder = new Request.Builder()
+                    .url(url)
+                    .head();
+
+            if (mHeaders != null) {
+                for (String name : mHeaders.keySet()) {
+                    builder.header(name, mHeaders.get(name));
+                }
+            }
+
+            mHttpClient.newCall(builder.build()).enqueue(new Callback() {
+                @Override
+                public void onFailure(Request request, IOException e) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onResponse(Response response) throws IOException {
+                    try {
+                        // releases the connection back to the pool
+                        response.body().close();
+                        successCount.incrementAndGet();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        latch.await(mHttpClient.getConnectTimeout() + mHttpClient.getReadTimeout(), TimeUnit.MILLISECONDS);
+        return successCount.get();
+    }
+
+    /**
+     * Runs on its own background thread, waiting for slow hosts doesn't delay other async calls.
+     *
+     * @see #warmUpConnections(Collection)
+     */
+    public Future<Integer> warmUpConnectionsAsync(@Nullable final Collection<LinkedNotebook> linkedNotebooks, @Nullable EvernoteCallback<Integer> callback) {
+        return mCreateHelperClient.submitTask(getWarmUpExecutorService(), new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return warmUpConnections(linkedNotebooks);
+            }
+        }, callback);
+    }
+
+    private static synchronized ExecutorService getWarmUpExecutorService() {
+        if (sWarmUpExecutorService == null) {
+            ThreadPoolExecutor executorService = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ConnectionWarmUp-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executorService.allowCoreThreadTimeOut(true);
+            sWarmUpExecutorService = executorService;
+        }
+        return sWarmUpExecutorService;
+    }
+
+    private static void addWarmUpUrl(Map<String, String> urls, String url) {
+        if (url == null) {
+            return;
+        }
+
+        Uri uri = Uri.parse(url);
+        String key = uri.getScheme() + "://" + uri.getAuthority();
+        if (uri.getAuthority() != null && !urls.containsKey(key)) {
+            urls.put(key, url);
+        }
+    }
+
     protected TBinaryProtocol createBinaryProtocol(String url) {
-        return new TBinaryProtocol(new TAndroidTransport(mHttpClient, mByteStore, url, mHeaders));
+        return new TBinaryProtocol(new TAndroidTransport(mHttpClient, mByteStore, url, mHeaders, mResponseSpool));
     }
 
     protected NoteStore.Client createNoteStoreClient(String url) {
-        return new NoteStore.Client(createBinaryProtocol(url));
+        return new LazyNoteStoreClient(createBinaryProtocol(url));
     }
 
     protected synchronized EvernoteNoteStoreClient createEvernoteNoteStoreClient(String url, String authToken) {
-        return new EvernoteNoteStoreClient(createNoteStoreClient(url), authToken, mExecutorService);
+        return new EvernoteNoteStoreClient(createNoteStoreClient(url), url, authToken, mExecutorService, mEvernoteSession, getRateLimiter(url),
+                mTransferPolicy);
+    }
+
+    /**
+     * @param url The note store URL.
+     * @return The limiter shared by all note store clients of the current user for this host. Returns
+     * {@code null}, if rate limiting is disabled.
+     * @see Builder#setRateLimitingEnabled(boolean)
+     */
+    @Nullable
+    public EvernoteRateLimiter getRateLimiter(@NonNull String url) {
+        if (mRateLimiterRegistry == null) {
+            return null;
+        }
+
+        String host = Uri.parse(url).getHost();
+        if (host == null) {
+            host = url;
+        }
+
+        int userId = mEvernoteSession.isLoggedIn() ? mEvernoteSession.getAuthenticationResult().getUserId() : -1;
+
+        return mRateLimiterRegistry.get(userId, host);
+    }
+
+    /**
+     * @return The outbox shared by all factories of the same {@link Builder}.
+     * @see EvernoteNoteStoreClient#enqueue(EvernoteBulkWriter.Operation)
+     */
+    public EvernoteOutbox getOutbox() {
+        if (mOutbox == null) {
+            throw new IllegalStateException("factory was created without an outbox");
+        }
+        return mOutbox;
+    }
+
+    /**
+     * @return The upload manager shared by all factories of the same {@link Builder}.
+     */
+    public EvernoteUploadManager getUploadManager() {
+        if (mUploadManager == null) {
+            throw new IllegalStateException("factory was created without an upload manager");
+        }
+        return mUploadManager;
+    }
+
+    /**
+     * @return The policy deferring heavy downloads. Returns {@code null}, if no policy was set.
+     * @see Builder#setTransferPolicy(EvernoteTransferPolicy)
+     */
+    @Nullable
+    public EvernoteTransferPolicy getTransferPolicy() {
+        return mTransferPolicy;
+    }
+
+    /**
+     * @return The cache of the user's linked notebooks. It's shared by all factories created by the same builder.
+     */
+    public EvernoteLinkedNotebookCache getLinkedNotebookCache() {
+        return mLinkedNotebookCache;
+    }
+
+    /**
+     * @return The cache of downloaded thumbnails. It's shared by all factories created by the same
+     * builder. Returns {@code null}, if thumbnails aren't cached.
+     * @see Builder#setThumbnailCache(EvernoteThumbnailCache)
+     */
+    @Nullable
+    public EvernoteThumbnailCache getThumbnailCache() {
+        return mThumbnailCache;
+    }
+
+    /**
+     * @return The cache of search results. It's shared by all factories created by the same builder.
+     * @see EvernoteSearchHelper.Search#setCacheEnabled(boolean)
+     */
+    public EvernoteSearchResultCache getSearchResultCache() {
+        return mSearchResultCache;
+    }
+
+    /**
+     * Drops the data of the signed in user, which the components shared by all factories of the
+     * builder keep on the device: the local index, cached thumbnails and cached search results.
+     * {@link EvernoteSession#logOut()} calls this method in the background.
+     */
+    public void clearUserData() {
+        mSearchResultCache.invalidate();
+        if (mThumbnailCache != null) {
+            mThumbnailCache.clear();
+        }
+        if (mLocalIndex != null) {
+            mLocalIndex.clear();
+        }
+    }
+
+    /**
+     * @see #clearUserData()
+     */
+    public Future<Void> clearUserDataAsync(@Nullable EvernoteCallback<Void> callback) {
+        return mCreateHelperClient.submitTask(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                clearUserData();
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @return The local full text index of the personal notes. It's shared by all factories created
+     * by the same builder. Returns {@code null}, if the local index wasn't enabled.
+     * @see Builder#setLocalIndexEnabled(boolean)
+     */
+    @Nullable
+    public EvernoteLocalIndex getLocalIndex() {
+        return mLocalIndex;
+    }
+
+    protected final String getUserStoreUrl() {
+        return new Uri.Builder()
+                .scheme("https")
+                .authority(mEvernoteSession.getAuthenticationResult().getEvernoteHost())
+                .path("/edam/user")
+                .build()
+                .toString();
     }
 
     protected final String createKey(String url, String authToken) {
@@ -374,6 +747,31 @@ public class EvernoteClientFactory {
         }
     }
 
+    /**
+     * Defines which HTTP protocols the factory's HTTP client negotiates with the Evernote service.
+     *
+     * @see Builder#setTransportMode(TransportMode)
+     */
+    public enum TransportMode {
+        /**
+         * Only use HTTP/1.1. Each concurrent Thrift call occupies its own connection.
+         */
+        HTTP_1_1,
+
+        /**
+         * Prefer HTTP/2 if the host supports it. All concurrent Thrift calls to the same host are multiplexed
+         * over a single connection, which saves TLS handshakes and radio wake-ups. If the host or the
+         * platform doesn't support HTTP/2, then the connection falls back to HTTP/1.1.
+         *
+         * <br>
+         * <br>
+         *
+         * OkHttp already negotiates HTTP/2 by default, this mode only stops offering SPDY/3. The default
+         * HTTP client created by the builder additionally keeps fewer connections alive for a longer time.
+         */
+        HTTP_2
+    }
+
     /**
      * A builder to construct an {@link EvernoteClientFactory}. The recommended approach is to set
      * the builder in the session with {@link EvernoteSession#setEvernoteClientFactoryBuilder(Builder)}
@@ -387,6 +785,19 @@ public class EvernoteClientFactory {
         private OkHttpClient mHttpClient;
         private ByteStore.Factory mByteStoreFactory;
         private ExecutorService mExecutorService;
+        private TransportMode mTransportMode;
+        private boolean mRateLimitingEnabled;
+        private EvernoteRateLimiter.Registry mRateLimiterRegistry;
+        private File mOutboxDirectory;
+        private EvernoteOutbox mOutbox;
+        private EvernoteUploadManager mUploadManager;
+        private ResponseSpool.Factory mResponseSpoolFactory;
+        private EvernoteTransferPolicy mTransferPolicy;
+        private EvernoteLinkedNotebookCache mLinkedNotebookCache;
+        private EvernoteThumbnailCache mThumbnailCache;
+        private EvernoteSearchResultCache mSearchResultCache;
+        private boolean mLocalIndexEnabled;
+        private EvernoteLocalIndex mLocalIndex;
 
         /**
          * @param evernoteSession The current session, must not be {@code null}.
@@ -394,6 +805,7 @@ public class EvernoteClientFactory {
         public Builder(EvernoteSession evernoteSession) {
             mEvernoteSession = EvernotePreconditions.checkNotNull(evernoteSession);
             mHeaders = new HashMap<>();
+            mRateLimitingEnabled = true;
         }
 
         /**
@@ -427,22 +839,159 @@ public class EvernoteClientFactory {
             return this;
         }
 
+        /**
+         * By default the protocols of the HTTP client aren't changed. If set, then the protocols are
+         * also applied to a copy of an HTTP client set with {@link #setHttpClient(OkHttpClient)}, the
+         * passed in client itself isn't modified.
+         *
+         * @param transportMode The HTTP protocols which should be negotiated with the Evernote service.
+         */
+        public Builder setTransportMode(TransportMode transportMode) {
+            mTransportMode = transportMode;
+            return this;
+        }
+
+        /**
+         * The default value is {@code true}. All factories created by this builder share the same
+         * {@link EvernoteRateLimiter}s, so that all note store clients of an account are paced together.
+         *
+         * @param rateLimitingEnabled If {@code true}, then note store calls are paced by an {@link EvernoteRateLimiter}.
+         */
+        public Builder setRateLimitingEnabled(boolean rateLimitingEnabled) {
+            mRateLimitingEnabled = rateLimitingEnabled;
+            return this;
+        }
+
+        /**
+         * The default directory is located in the app's files directory.
+         *
+         * @param outboxDirectory The directory, which stores the journal of the {@link EvernoteOutbox}.
+         */
+        public Builder setOutboxDirectory(File outboxDirectory) {
+            mOutboxDirectory = outboxDirectory;
+            return this;
+        }
+
+        /**
+         * Responses aren't spooled by default, they're decoded while they're received.
+         *
+         * @param responseSpoolFactory Creates the {@link ResponseSpool} for each Thread. If set, then
+         *                             responses are received completely, before they're decoded.
+         */
+        public Builder setResponseSpoolFactory(ResponseSpool.Factory responseSpoolFactory) {
+            mResponseSpoolFactory = responseSpoolFactory;
+            return this;
+        }
+
+        /**
+         * By default all calls are allowed on every network. All factories created by this builder
+         * share the policy.
+         *
+         * @param transferPolicy Defers heavy downloads until a suitable network is available.
+         */
+        public Builder setTransferPolicy(EvernoteTransferPolicy transferPolicy) {
+            mTransferPolicy = transferPolicy;
+            return this;
+        }
+
+        /**
+         * The default cache is located in the app's cache directory. All factories created by this
+         * builder share the cache.
+         *
+         * @param thumbnailCache Caches the downloaded thumbnails in memory and on the disk.
+         */
+        public Builder setThumbnailCache(EvernoteThumbnailCache thumbnailCache) {
+            mThumbnailCache = thumbnailCache;
+            return this;
+        }
+
+        /**
+         * All factories created by this builder share the cache.
+         *
+         * @param searchResultCache Caches the results of searches, which enabled the cache.
+         * @see EvernoteSearchHelper.Search#setCacheEnabled(boolean)
+         */
+        public Builder setSearchResultCache(EvernoteSearchResultCache searchResultCache) {
+            mSearchResultCache = searchResultCache;
+            return this;
+        }
+
+        /**
+         * The default value is {@code false}. The index must be filled with {@link EvernoteLocalIndex#sync()},
+         * before searches can use it.
+         *
+         * @param localIndexEnabled If {@code true}, then all factories created by this builder share an
+         *                          {@link EvernoteLocalIndex} in the app's database directory.
+         * @see EvernoteSearchHelper.Search#setLocalIndexEnabled(boolean)
+         */
+        public Builder setLocalIndexEnabled(boolean localIndexEnabled) {
+            mLocalIndexEnabled = localIndexEnabled;
+            return this;
+        }
+
+        /**
+         * Enables the local index with a custom instance.
+         *
+         * @param localIndex The local full text index of the personal notes.
+         * @see #setLocalIndexEnabled(boolean)
+         */
+        public Builder setLocalIndex(EvernoteLocalIndex localIndex) {
+            mLocalIndex = localIndex;
+            mLocalIndexEnabled = localIndex != null;
+            return this;
+        }
+
         public EvernoteClientFactory build() {
             if (mHttpClient == null) {
                 mHttpClient = createDefaultHttpClient();
             }
+            OkHttpClient httpClient = mHttpClient;
+            if (mTransportMode != null) {
+                // the client may be shared with other parts of the app, don't change its protocols
+                httpClient = applyTransportMode(mHttpClient.clone(), mTransportMode);
+            }
             if (mByteStoreFactory == null) {
                 mByteStoreFactory = createDefaultByteStore(mEvernoteSession.getApplicationContext());
             }
             if (mExecutorService == null) {
                 mExecutorService = Executors.newSingleThreadExecutor();
             }
+            if (mRateLimitingEnabled && mRateLimiterRegistry == null) {
+                mRateLimiterRegistry = new EvernoteRateLimiter.Registry();
+            }
+            if (mOutbox == null) {
+                if (mOutboxDirectory == null) {
+                    mOutboxDirectory = new File(mEvernoteSession.getApplicationContext().getFilesDir(), "evernoteOutbox");
+                }
+                mOutbox = new EvernoteOutbox(mEvernoteSession, mOutboxDirectory, mExecutorService);
+            }
+            if (mLinkedNotebookCache == null) {
+                mLinkedNotebookCache = new EvernoteLinkedNotebookCache(mEvernoteSession);
+            }
+            if (mThumbnailCache == null) {
+                int memorySize = (int) (Runtime.getRuntime().maxMemory() / 64);
+                mThumbnailCache = new EvernoteThumbnailCache(new File(mEvernoteSession.getApplicationContext().getCacheDir(), "evernoteThumbnails"),
+                        memorySize, EvernoteThumbnailCache.DEFAULT_MAX_DISK_BYTES);
+            }
+            if (mSearchResultCache == null) {
+                mSearchResultCache = new EvernoteSearchResultCache();
+            }
+            if (mLocalIndexEnabled && mLocalIndex == null) {
+                mLocalIndex = new EvernoteLocalIndex(mEvernoteSession, mExecutorService);
+            }
+            if (mUploadManager == null) {
+                FileHashCache hashCache = new FileHashCache(new File(mEvernoteSession.getApplicationContext().getCacheDir(), "evernoteHashes"));
+                mUploadManager = new EvernoteUploadManager(hashCache);
+            }
 
             addHeader("Cache-Control", "no-transform");
             addHeader("Accept", "application/x-thrift");
             addHeader("User-Agent", EvernoteUtil.generateUserAgentString(mEvernoteSession.getApplicationContext()));
 
-            return new EvernoteClientFactory(mEvernoteSession, mHttpClient, mByteStoreFactory.create(), mHeaders, mExecutorService);
+            return new EvernoteClientFactory(mEvernoteSession, httpClient, mByteStoreFactory.create(), mHeaders, mExecutorService,
+                    mRateLimitingEnabled ? mRateLimiterRegistry : null, mOutbox, mUploadManager,
+                    mResponseSpoolFactory == null ? null : mResponseSpoolFactory.create(), mTransferPolicy, mLinkedNotebookCache, mThumbnailCache,
+                    mSearchResultCache, mLocalIndexEnabled ? mLocalIndex : null);
         }
 
         private OkHttpClient createDefaultHttpClient() {
@@ -450,7 +999,26 @@ public class EvernoteClientFactory {
             httpClient.setConnectTimeout(10, TimeUnit.SECONDS);
             httpClient.setReadTimeout(10, TimeUnit.SECONDS);
             httpClient.setWriteTimeout(20, TimeUnit.SECONDS);
-            httpClient.setConnectionPool(new ConnectionPool(20, 2 * 60 * 1000));
+            if (mTransportMode == TransportMode.HTTP_2) {
+                // one multiplexed connection per host is enough, keep it alive longer to avoid new handshakes
+                httpClient.setConnectionPool(new ConnectionPool(5, 5 * 60 * 1000));
+            } else {
+                httpClient.setConnectionPool(new ConnectionPool(20, 2 * 60 * 1000));
+            }
+            return httpClient;
+        }
+
+        private OkHttpClient applyTransportMode(OkHttpClient httpClient, TransportMode transportMode) {
+            switch (transportMode) {
+                case HTTP_1_1:
+                    httpClient.setProtocols(Collections.singletonList(Protocol.HTTP_1_1));
+                    break;
+
+                case HTTP_2:
+                    // HTTP/1.1 must be included, it's the fallback if ALPN doesn't select HTTP/2
+                    httpClient.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+                    break;
+            }
             return httpClient;
         }
 
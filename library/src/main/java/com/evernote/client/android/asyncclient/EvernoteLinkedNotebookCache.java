@@ -0,0 +1,205 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.EvernoteSession;
+import com.evernote.edam.error.EDAMNotFoundException;
+import com.evernote.edam.error.EDAMSystemException;
+import com.evernote.edam.error.EDAMUserException;
+import com.evernote.edam.type.LinkedNotebook;
+import com.evernote.thrift.TException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the linked notebooks of the signed in user, so that resolving many linked notes costs at
+ * most one {@code listLinkedNotebooks} call.
+ *
+ * <br>
+ * <br>
+ *
+ * After the time to live has expired the cache asks for the account's update count with the cheap
+ * {@code getSyncState} call and only reloads the linked notebooks, if the account has changed.
+ * GUIDs, which aren't linked notebooks of the user, are remembered as well and don't cause further
+ * calls until the account changes. Concurrent misses share a single reload. The cache is dropped,
+ * when a different user signs in.
+ *
+ * @see EvernoteClientFactory#getLinkedNotebookCache()
+ */
+@SuppressWarnings("unused")
+public class EvernoteLinkedNotebookCache {
+
+    public static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_MAX_SIZE = 500;
+
+    private final EvernoteSession mEvernoteSession;
+    private final long mTimeToLiveNanos;
+    private final int mMaxSize;
+
+    private final Map<String, LinkedNotebook> mLinkedNotebooks;
+    private final Map<String, Boolean> mUnknownGuids;
+    private final Object mLoadMonitor;
+
+    private boolean mLoaded;
+    private boolean mEvicted;
+    private int mUpdateCount;
+    private long mValidatedAtNanos;
+    private String mAuthToken;
+
+    /**
+     * @param session The session of the user, whose linked notebooks are cached.
+     */
+    public EvernoteLinkedNotebookCache(@NonNull EvernoteSession session) {
+        this(session, DEFAULT_TIME_TO_LIVE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param session The session of the user, whose linked notebooks are cached.
+     * @param timeToLiveMillis How long the cache is used without checking the account for changes.
+     * @param maxSize The maximum number of linked notebooks and unknown GUIDs, which are kept.
+     */
+    public EvernoteLinkedNotebookCache(@NonNull EvernoteSession session, long timeToLiveMillis, final int maxSize) {
+        mEvernoteSession = session;
+        mTimeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        mMaxSize = maxSize;
+        mLoadMonitor = new Object();
+
+        mLinkedNotebooks = new LinkedHashMap<String, LinkedNotebook>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LinkedNotebook> eldest) {
+                if (size() > maxSize) {
+                    // the cache doesn't know all linked notebooks anymore, a miss must reload them
+                    mEvicted = true;
+                    return true;
+                }
+                return false;
+            }
+        };
+        mUnknownGuids = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param guid The GUID of the linked notebook.
+     * @return The linked notebook or {@code null}, if the user has no linked notebook with this GUID.
+     */
+    @Nullable
+    public LinkedNotebook get(@NonNull String guid) throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException {
+        String authToken = getAuthToken();
+
+        synchronized (this) {
+            if (authToken == null || !authToken.equals(mAuthToken)) {
+                // a different user signed in
+                invalidate();
+                mAuthToken = authToken;
+            }
+            if (isResolved(guid)) {
+                return mLinkedNotebooks.get(guid);
+            }
+        }
+
+        synchronized (mLoadMonitor) {
+            // another thread may have reloaded the linked notebooks while this one was waiting
+            synchronized (this) {
+                if (isResolved(guid)) {
+                    return mLinkedNotebooks.get(guid);
+                }
+            }
+
+            int updateCount = loadUpdateCount();
+            boolean reload;
+            synchronized (this) {
+                reload = !mLoaded || mEvicted || updateCount != mUpdateCount;
+            }
+
+            if (reload) {
+                List<LinkedNotebook> linkedNotebooks = loadLinkedNotebooks();
+                synchronized (this) {
+                    mLinkedNotebooks.clear();
+                    mUnknownGuids.clear();
+                    mEvicted = false;
+                    LinkedNotebook requested = null;
+                    for (LinkedNotebook linkedNotebook : linkedNotebooks) {
+                        if (guid.equals(linkedNotebook.getGuid())) {
+                            requested = linkedNotebook;
+                        } else {
+                            mLinkedNotebooks.put(linkedNotebook.getGuid(), linkedNotebook);
+                        }
+                    }
+                    if (requested != null) {
+                        // added last, so that it's never evicted before it's returned
+                        mLinkedNotebooks.put(guid, requested);
+                    }
+                    mLoaded = true;
+                    mUpdateCount = updateCount;
+                }
+            }
+
+            synchronized (this) {
+                mValidatedAtNanos = System.nanoTime();
+
+                LinkedNotebook linkedNotebook = mLinkedNotebooks.get(guid);
+                if (linkedNotebook == null) {
+                    mUnknownGuids.put(guid, Boolean.TRUE);
+                }
+                return linkedNotebook;
+            }
+        }
+    }
+
+    /**
+     * Drops all cached linked notebooks, the next access loads them again.
+     */
+    public synchronized void invalidate() {
+        mLinkedNotebooks.clear();
+        mUnknownGuids.clear();
+        mLoaded = false;
+        mEvicted = false;
+    }
+
+    /**
+     * @return The maximum number of linked notebooks and unknown GUIDs, which are kept.
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * While the cache is valid and holds all linked notebooks, a miss means that the GUID is unknown.
+     */
+    private boolean isResolved(String guid) {
+        if (!mLoaded || System.nanoTime() - mValidatedAtNanos >= mTimeToLiveNanos) {
+            return false;
+        }
+        return !mEvicted || mLinkedNotebooks.containsKey(guid) || mUnknownGuids.containsKey(guid);
+    }
+
+    /**
+     * @return The token of the signed in user. The cache is dropped when it changes.
+     */
+    protected String getAuthToken() {
+        return mEvernoteSession.getAuthToken();
+    }
+
+    /**
+     * @return The update count of the user's account.
+     */
+    protected int loadUpdateCount() throws EDAMUserException, EDAMSystemException, TException {
+        return mEvernoteSession.getEvernoteClientFactory().getNoteStoreClient().getSyncState().getUpdateCount();
+    }
+
+    /**
+     * @return All linked notebooks of the user.
+     */
+    protected List<LinkedNotebook> loadLinkedNotebooks() throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException {
+        return mEvernoteSession.getEvernoteClientFactory().getNoteStoreClient().listLinkedNotebooks();
+    }
+}
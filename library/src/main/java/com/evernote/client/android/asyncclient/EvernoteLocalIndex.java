@@ -0,0 +1,387 @@
+package com.evernote.client.android.asyncclient;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.AuthenticationResult;
+import com.evernote.client.android.EvernoteSession;
+import com.evernote.client.android.helper.Cat;
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.edam.error.EDAMNotFoundException;
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.notestore.SyncChunkFilter;
+import com.evernote.edam.type.Note;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A local full text index of the user's personal notes, which lets the {@link EvernoteSearchHelper}
+ * answer searches within milliseconds and without a network connection. The index is an SQLite FTS4
+ * table, which stores the note's title, dates and the search text returned by
+ * {@code getNoteSearchText()}.
+ *
+ * <br>
+ * <br>
+ *
+ * The index is filled incrementally with {@link #sync()}. Each call only requests the sync chunks
+ * after the last indexed update sequence number, so it's cheap to call it periodically, e.g. when the
+ * app is opened. All calls use the background client, so that they don't delay the calls the user is
+ * waiting for. The index is dropped, when the user logs out or a different user signs in.
+ *
+ * <br>
+ * <br>
+ *
+ * Only plain search words, quoted phrases and prefix searches are evaluated locally. Searches using
+ * other parts of the search grammar, other scopes than {@link EvernoteSearchHelper.Scope#PERSONAL_NOTES}
+ * or fields which aren't stored locally are sent to the server.
+ *
+ * @see EvernoteClientFactory#getLocalIndex()
+ * @see EvernoteSearchHelper.Search#setLocalIndexEnabled(boolean)
+ */
+@SuppressWarnings("unused")
+public class EvernoteLocalIndex extends EvernoteAsyncClient {
+
+    private static final Cat CAT = new Cat("EvernoteLocalIndex");
+
+    public static final String DEFAULT_DATABASE_NAME = "evernote_local_index.db";
+
+    private static final int DATABASE_VERSION = 1;
+    private static final int MAX_SYNC_ENTRIES = 100;
+
+    private static final String TABLE_NOTES = "notes";
+    private static final String TABLE_NOTES_FTS = "notes_fts";
+    private static final String TABLE_STATE = "state";
+
+    private static final String KEY_USER_ID = "userId";
+    private static final String KEY_USN = "usn";
+    private static final String KEY_READY = "ready";
+
+    private final EvernoteSession mEvernoteSession;
+    private final OpenHelper mOpenHelper;
+    private final Object mSyncMonitor;
+
+    /**
+     * @param session The session of the user, whose notes are indexed.
+     * @param executorService The executor running the actions in the background.
+     */
+    public EvernoteLocalIndex(@NonNull EvernoteSession session, @NonNull ExecutorService executorService) {
+        this(session, DEFAULT_DATABASE_NAME, executorService);
+    }
+
+    /**
+     * @param session The session of the user, whose notes are indexed.
+     * @param databaseName The name of the database file in the app's database directory.
+     * @param executorService The executor running the actions in the background.
+     */
+    public EvernoteLocalIndex(@NonNull EvernoteSession session, @NonNull String databaseName, @NonNull ExecutorService executorService) {
+        super(executorService);
+        mEvernoteSession = EvernotePreconditions.checkNotNull(session);
+        mOpenHelper = new OpenHelper(session.getApplicationContext(), EvernotePreconditions.checkNotEmpty(databaseName));
+        mSyncMonitor = new Object();
+    }
+
+    /**
+     * Indexes all notes, which were created, updated or deleted since the last call.
+     *
+     * @return The number of notes, which were added to or updated in the index.
+     */
+    public int sync() throws Exception {
+        synchronized (mSyncMonitor) {
+            SQLiteDatabase database = mOpenHelper.getWritableDatabase();
+
+            String userId = getUserId();
+            if (userId == null) {
+                throw new IllegalStateException("not logged in");
+            }
+            if (!userId.equals(getState(database, KEY_USER_ID))) {
+                // a different user signed in
+                clear(database);
+                putState(database, KEY_USER_ID, userId);
+            }
+
+            EvernoteNoteStoreClient client = mEvernoteSession.getEvernoteClientFactory().getNoteStoreClient().asBackgroundClient();
+
+            SyncChunkFilter filter = new SyncChunkFilter();
+            filter.setIncludeNotes(true);
+            filter.setIncludeExpunged(true);
+
+            String usnValue = getState(database, KEY_USN);
+            int usn = usnValue == null ? 0 : Integer.parseInt(usnValue);
+            int updateCount = client.getSyncState().getUpdateCount();
+            int indexed = 0;
+
+            while (usn < updateCount) {
+                SyncChunk chunk = client.getFilteredSyncChunk(usn, MAX_SYNC_ENTRIES, filter);
+                List<Note> notes = chunk.getNotes() == null ? Collections.<Note>emptyList() : chunk.getNotes();
+
+                // load the texts first, so that the database isn't locked during network calls
+                Map<String, String> texts = new HashMap<>();
+                for (Note note : notes) {
+                    if (note.isActive()) {
+                        try {
+                            texts.put(note.getGuid(), client.getNoteSearchText(note.getGuid(), false, true));
+                        } catch (EDAMNotFoundException e) {
+                            CAT.d("Note %s was expunged while syncing", note.getGuid());
+                        }
+                    }
+                }
+
+                database.beginTransaction();
+                try {
+                    for (Note note : notes) {
+                        String text = texts.get(note.getGuid());
+                        if (text == null) {
+                            deleteNote(database, note.getGuid());
+                        } else {
+                            putNote(database, note, text);
+                            indexed++;
+                        }
+                    }
+                    if (chunk.getExpungedNotes() != null) {
+                        for (String guid : chunk.getExpungedNotes()) {
+                            deleteNote(database, guid);
+                        }
+                    }
+
+                    usn = chunk.isSetChunkHighUSN() ? chunk.getChunkHighUSN() : chunk.getUpdateCount();
+                    putState(database, KEY_USN, String.valueOf(usn));
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+
+                if (!chunk.isSetChunkHighUSN()) {
+                    break;
+                }
+            }
+
+            putState(database, KEY_READY, "1");
+            return indexed;
+        }
+    }
+
+    /**
+     * @see #sync()
+     */
+    public Future<Integer> syncAsync(@Nullable EvernoteCallback<Integer> callback) {
+        return submitTask(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return sync();
+            }
+        }, callback);
+    }
+
+    /**
+     * @return {@code true}, if the notes of the signed in user were indexed at least once.
+     */
+    public boolean isReady() {
+        SQLiteDatabase database = mOpenHelper.getReadableDatabase();
+        String userId = getUserId();
+        return userId != null && userId.equals(getState(database, KEY_USER_ID)) && getState(database, KEY_READY) != null;
+    }
+
+    /**
+     * Drops all indexed notes, the next {@link #sync()} indexes all notes again. The database file is
+     * rebuilt, so that the text of the deleted notes doesn't remain in free pages. This is called by
+     * {@link EvernoteClientFactory#clearUserData()}, when the user logs out.
+     */
+    public void clear() {
+        synchronized (mSyncMonitor) {
+            SQLiteDatabase database = mOpenHelper.getWritableDatabase();
+            clear(database);
+            database.execSQL("VACUUM");
+        }
+    }
+
+    /**
+     * @see #clear()
+     */
+    public Future<Void> clearAsync(@Nullable EvernoteCallback<Void> callback) {
+        return submitTask(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                clear();
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Searches the indexed notes. The caller must check that the filter is supported by {@code LocalIndexQuery}.
+     *
+     * @return The notes split into pages like the server returns them or {@code null}, if the index
+     * isn't ready.
+     */
+    @Nullable
+    /*package*/ List<NotesMetadataList> findNotes(@NonNull NoteFilter noteFilter, int offset, int maxNotes, int pageSize) {
+        if (!isReady()) {
+            return null;
+        }
+
+        String matchQuery = LocalIndexQuery.toMatchQuery(noteFilter.getWords());
+        String orderColumn = LocalIndexQuery.getOrderColumn(noteFilter);
+        if (matchQuery == null || orderColumn == null) {
+            throw new IllegalArgumentException("filter isn't supported");
+        }
+
+        StringBuilder from = new StringBuilder(" FROM " + TABLE_NOTES + " n");
+        List<String> arguments = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+
+        if (!matchQuery.isEmpty()) {
+            from.append(" JOIN " + TABLE_NOTES_FTS + " f ON f.docid = n.rowid");
+            conditions.add(TABLE_NOTES_FTS + " MATCH ?");
+            arguments.add(matchQuery);
+        }
+        if (noteFilter.isSetNotebookGuid()) {
+            conditions.add("n.notebook_guid = ?");
+            arguments.add(noteFilter.getNotebookGuid());
+        }
+        for (int i = 0; i < conditions.size(); i++) {
+            from.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+        }
+
+        SQLiteDatabase database = mOpenHelper.getReadableDatabase();
+        String[] selectionArgs = arguments.toArray(new String[arguments.size()]);
+
+        int totalNotes;
+        Cursor cursor = database.rawQuery("SELECT COUNT(*)" + from, selectionArgs);
+        try {
+            totalNotes = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+
+        List<NoteMetadata> notes = new ArrayList<>();
+        cursor = database.rawQuery("SELECT n.guid, n.notebook_guid, n.title, n.created, n.updated, n.usn" + from
+                + " ORDER BY " + orderColumn + ", n.guid LIMIT " + (maxNotes - offset) + " OFFSET " + offset, selectionArgs);
+        try {
+            while (cursor.moveToNext()) {
+                NoteMetadata note = new NoteMetadata(cursor.getString(0));
+                note.setNotebookGuid(cursor.getString(1));
+                note.setTitle(cursor.getString(2));
+                note.setCreated(cursor.getLong(3));
+                note.setUpdated(cursor.getLong(4));
+                note.setUpdateSequenceNum(cursor.getInt(5));
+                notes.add(note);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<NotesMetadataList> result = new ArrayList<>();
+        int start = 0;
+        do {
+            int end = Math.min(start + pageSize, notes.size());
+
+            NotesMetadataList page = new NotesMetadataList();
+            page.setStartIndex(offset + start);
+            page.setTotalNotes(totalNotes);
+            page.setNotes(new ArrayList<>(notes.subList(start, end)));
+            result.add(page);
+
+            start = end;
+        } while (start < notes.size());
+
+        return result;
+    }
+
+    private String getUserId() {
+        AuthenticationResult authenticationResult = mEvernoteSession.getAuthenticationResult();
+        return authenticationResult == null ? null : String.valueOf(authenticationResult.getUserId());
+    }
+
+    private static void putNote(SQLiteDatabase database, Note note, String text) {
+        deleteNote(database, note.getGuid());
+
+        ContentValues values = new ContentValues();
+        values.put("guid", note.getGuid());
+        values.put("notebook_guid", note.getNotebookGuid());
+        values.put("title", note.getTitle());
+        values.put("created", note.getCreated());
+        values.put("updated", note.getUpdated());
+        values.put("usn", note.getUpdateSequenceNum());
+        long rowId = database.insertOrThrow(TABLE_NOTES, null, values);
+
+        values = new ContentValues();
+        values.put("docid", rowId);
+        values.put("title", note.getTitle());
+        values.put("content", text);
+        database.insertOrThrow(TABLE_NOTES_FTS, null, values);
+    }
+
+    private static void deleteNote(SQLiteDatabase database, String guid) {
+        database.execSQL("DELETE FROM " + TABLE_NOTES_FTS + " WHERE docid IN (SELECT rowid FROM " + TABLE_NOTES + " WHERE guid = ?)",
+                new Object[]{guid});
+        database.delete(TABLE_NOTES, "guid = ?", new String[]{guid});
+    }
+
+    private static void clear(SQLiteDatabase database) {
+        database.beginTransaction();
+        try {
+            database.delete(TABLE_NOTES_FTS, null, null);
+            database.delete(TABLE_NOTES, null, null);
+            database.delete(TABLE_STATE, null, null);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private static String getState(SQLiteDatabase database, String key) {
+        Cursor cursor = database.query(TABLE_STATE, new String[]{"value"}, "key = ?", new String[]{key}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void putState(SQLiteDatabase database, String key, String value) {
+        ContentValues values = new ContentValues();
+        values.put("key", key);
+        values.put("value", value);
+        database.insertWithOnConflict(TABLE_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static final class OpenHelper extends SQLiteOpenHelper {
+
+        private OpenHelper(Context context, String name) {
+            super(context, name, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_NOTES + " (guid TEXT NOT NULL UNIQUE, notebook_guid TEXT, title TEXT, "
+                    + "created INTEGER, updated INTEGER, usn INTEGER)");
+            db.execSQL("CREATE INDEX notes_notebook_guid ON " + TABLE_NOTES + " (notebook_guid)");
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_NOTES_FTS + " USING fts4(title, content)");
+            db.execSQL("CREATE TABLE " + TABLE_STATE + " (key TEXT PRIMARY KEY, value TEXT)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // the index can always be rebuilt from the server
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NOTES);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NOTES_FTS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_STATE);
+            onCreate(db);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.evernote.client.android.asyncclient;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import com.evernote.client.android.EvernoteSession;
 import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.client.conn.mobile.LazyNote;
 import com.evernote.edam.error.EDAMNotFoundException;
 import com.evernote.edam.error.EDAMSystemException;
 import com.evernote.edam.error.EDAMUserException;
@@ -34,6 +37,7 @@ import com.evernote.edam.type.Tag;
 import com.evernote.edam.userstore.AuthenticationResult;
 import com.evernote.thrift.TException;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -50,13 +54,196 @@ import java.util.concurrent.Future;
 @SuppressWarnings("unused")
 public class EvernoteNoteStoreClient extends EvernoteAsyncClient {
 
-    private final NoteStore.Client mClient;
+    private final NoteStore.Client mNoteStoreClient;
+    private final NoteStore.Iface mClient;
+    private final String mUrl;
     private final String mAuthenticationToken;
+    private final EvernoteSession mEvernoteSession;
+
+    private final EvernoteRateLimiter mRateLimiter;
+    private final EvernoteRateLimiter.Priority mPriority;
+    private final EvernoteTransferPolicy mTransferPolicy;
+    private EvernoteNoteStoreClient mBackgroundClient;
 
     /*package*/ EvernoteNoteStoreClient(@NonNull NoteStore.Client client, @NonNull String authenticationToken, @NonNull ExecutorService executorService) {
+        this(client, null, authenticationToken, executorService, null, null, null, EvernoteRateLimiter.Priority.FOREGROUND);
+    }
+
+    /*package*/ EvernoteNoteStoreClient(@NonNull NoteStore.Client client, @Nullable String url, @NonNull String authenticationToken,
+                                        @NonNull ExecutorService executorService, @Nullable EvernoteSession session, @Nullable EvernoteRateLimiter rateLimiter,
+                                        @Nullable EvernoteTransferPolicy transferPolicy) {
+        this(client, url, authenticationToken, executorService, session, rateLimiter, transferPolicy, EvernoteRateLimiter.Priority.FOREGROUND);
+    }
+
+    private EvernoteNoteStoreClient(@NonNull NoteStore.Client client, @Nullable String url, @NonNull String authenticationToken,
+                                    @NonNull ExecutorService executorService, @Nullable EvernoteSession session,
+                                    @Nullable EvernoteRateLimiter rateLimiter, @Nullable EvernoteTransferPolicy transferPolicy,
+                                    @NonNull EvernoteRateLimiter.Priority priority) {
         super(executorService);
-        mClient = EvernotePreconditions.checkNotNull(client);
+        mNoteStoreClient = EvernotePreconditions.checkNotNull(client);
+        mUrl = url;
         mAuthenticationToken = EvernotePreconditions.checkNotEmpty(authenticationToken);
+        mEvernoteSession = session;
+        mRateLimiter = rateLimiter;
+        mPriority = priority;
+        mTransferPolicy = transferPolicy;
+
+        NoteStore.Iface rateLimitedClient = rateLimiter == null ? client : RateLimitedNoteStore.wrap(client, rateLimiter, priority);
+        // deferred calls are rejected before they use a permit of the rate limiter
+        mClient = transferPolicy == null ? rateLimitedClient : TransferPolicyNoteStore.wrap(rateLimitedClient, transferPolicy);
+    }
+
+    /**
+     * Returns a client for bulk operations like syncing, fetching or expunging many objects. It shares
+     * the connection and authentication token with this client, but its calls never use the capacity
+     * of the {@link EvernoteRateLimiter}, which is reserved for calls the user is waiting for.
+     *
+     * @return A client whose calls run with {@link EvernoteRateLimiter.Priority#BACKGROUND}. Returns
+     * this instance, if rate limiting is disabled or this already is a background client.
+     */
+    public synchronized EvernoteNoteStoreClient asBackgroundClient() {
+        if (mRateLimiter == null || mPriority == EvernoteRateLimiter.Priority.BACKGROUND) {
+            return this;
+        }
+        if (mBackgroundClient == null) {
+            mBackgroundClient = new EvernoteNoteStoreClient(mNoteStoreClient, mUrl, mAuthenticationToken, getExecutorService(),
+                    mEvernoteSession, mRateLimiter, mTransferPolicy, EvernoteRateLimiter.Priority.BACKGROUND);
+        }
+        return mBackgroundClient;
+    }
+
+    /**
+     * @return The limiter pacing the calls of this client. Returns {@code null}, if rate limiting is disabled.
+     */
+    @Nullable
+    public EvernoteRateLimiter getRateLimiter() {
+        return mRateLimiter;
+    }
+
+    /**
+     * @return The policy deciding which calls may run on the current network. Returns {@code null},
+     * if all calls are allowed on every network.
+     */
+    @Nullable
+    public EvernoteTransferPolicy getTransferPolicy() {
+        return mTransferPolicy;
+    }
+
+    /**
+     * Queues the action until the {@link EvernoteTransferPolicy} allows the kind of data on the
+     * current network, e.g. until the device is connected to Wi-Fi. Queued actions run one after
+     * another in the order they were queued. The action runs immediately in the background, if
+     * there's no transfer policy.
+     *
+     * <pre class="prettyprint">
+     * client.executeWhenAllowed(TransferClass.RESOURCE_DATA, new Callable&lt;byte[]&gt;() {
+     *     &#64;Override
+     *     public byte[] call() throws Exception {
+     *         return client.getResourceData(guid);
+     *     }
+     * }, callback);
+     * </pre>
+     *
+     * @param transferClass The heaviest kind of data the action downloads.
+     * @param action The action, which calls this client.
+     * @param callback Receives the result of the action. May be {@code null}.
+     */
+    public <T> Future<T> executeWhenAllowed(@NonNull final EvernoteTransferPolicy.TransferClass transferClass, @NonNull final Callable<T> action,
+                                            @Nullable EvernoteCallback<T> callback) {
+
+        if (mTransferPolicy == null) {
+            return submitTask(action, callback);
+        }
+
+        return submitTask(mTransferPolicy.getDeferredExecutor(), new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                while (true) {
+                    mTransferPolicy.awaitAllowed(transferClass);
+                    try {
+                        return action.call();
+                    } catch (EvernoteTransferPolicy.TransferDeferredException e) {
+                        // the network changed again after the check, wait for the next change
+                        continue;
+                    }
+                }
+            }
+        }, callback);
+    }
+
+    /**
+     * Executes many note mutations with bounded concurrency. Each worker uses its own connection and
+     * all calls run as {@link EvernoteRateLimiter.Priority#BACKGROUND} calls. Mutations of the same
+     * note keep their order. Deletions run first, then creations and updates ordered by their size,
+     * so that small notes aren't stuck behind huge attachments.
+     *
+     * @param operations The mutations to execute.
+     * @param parallelism The maximum number of concurrent calls.
+     * @param listener Receives each result as soon as the mutation has completed. May be {@code null}.
+     * @return The results in the same order as the given operations.
+     * @see EvernoteBulkWriter
+     */
+    public List<EvernoteBulkWriter.Result> executeBulk(@NonNull List<EvernoteBulkWriter.Operation> operations, int parallelism,
+                                                       @Nullable EvernoteBulkWriter.Listener listener) throws InterruptedException {
+
+        return createBulkWriter().execute(operations, parallelism, listener);
+    }
+
+    /**
+     * @see #executeBulk(List, int, EvernoteBulkWriter.Listener)
+     */
+    public Future<List<EvernoteBulkWriter.Result>> executeBulkAsync(@NonNull final List<EvernoteBulkWriter.Operation> operations, final int parallelism,
+                                                                    @Nullable final EvernoteBulkWriter.Listener listener,
+                                                                    @Nullable EvernoteCallback<List<EvernoteBulkWriter.Result>> callback) {
+
+        return submitTask(new Callable<List<EvernoteBulkWriter.Result>>() {
+            @Override
+            public List<EvernoteBulkWriter.Result> call() throws Exception {
+                return executeBulk(operations, parallelism, listener);
+            }
+        }, callback);
+    }
+
+    /**
+     * Stores the mutation in the shared {@link EvernoteOutbox} and starts replaying the outbox in
+     * the background. The mutation survives process restarts and is sent once the device is online.
+     *
+     * @param operation The mutation to enqueue.
+     * @see EvernoteClientFactory#getOutbox()
+     */
+    public void enqueue(@NonNull EvernoteBulkWriter.Operation operation) throws IOException {
+        if (mEvernoteSession == null || mUrl == null) {
+            throw new IllegalStateException("client wasn't created by a factory");
+        }
+
+        EvernoteOutbox outbox = mEvernoteSession.getEvernoteClientFactory().getOutbox();
+        outbox.enqueue(mUrl, mAuthenticationToken, operation);
+        outbox.flushAsync(null);
+    }
+
+    /**
+     * @see #enqueue(EvernoteBulkWriter.Operation)
+     */
+    public Future<Void> enqueueAsync(@NonNull final EvernoteBulkWriter.Operation operation, @Nullable EvernoteCallback<Void> callback) {
+        return submitTask(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                enqueue(operation);
+                return null;
+            }
+        }, callback);
+    }
+
+    protected EvernoteBulkWriter createBulkWriter() {
+        return new EvernoteBulkWriter(this, mEvernoteSession, mUrl, mAuthenticationToken);
+    }
+
+    /*package*/ String getUrl() {
+        return mUrl;
+    }
+
+    /*package*/ String getAuthenticationToken() {
+        return mAuthenticationToken;
     }
 
     public SyncState getSyncState() throws EDAMUserException, EDAMSystemException, TException {
@@ -449,6 +636,45 @@ public class EvernoteNoteStoreClient extends EvernoteAsyncClient {
         }, callback);
     }
 
+    /**
+     * Same as {@link #getNote(String, boolean, boolean, boolean, boolean)}, but the ENML content
+     * isn't decoded into a string until {@link Note#getContent()} is called. Use
+     * {@link LazyNote#openContentStream()} to read the content without creating the string.
+     *
+     * @return A {@link LazyNote}. Returns a regular {@link Note}, if the underlying client was
+     * created by an overridden {@link EvernoteClientFactory#createNoteStoreClient(String)}.
+     */
+    public Note getNoteLazily(String guid, boolean withContent, boolean withResourcesData, boolean withResourcesRecognition,
+                              boolean withResourcesAlternateData) throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException {
+
+        if (!(mNoteStoreClient instanceof LazyNoteStoreClient)) {
+            return getNote(guid, withContent, withResourcesData, withResourcesRecognition, withResourcesAlternateData);
+        }
+
+        LazyNoteStoreClient client = (LazyNoteStoreClient) mNoteStoreClient;
+        client.setDecodeLazily(true);
+        try {
+            return getNote(guid, withContent, withResourcesData, withResourcesRecognition, withResourcesAlternateData);
+        } finally {
+            client.setDecodeLazily(false);
+        }
+    }
+
+    /**
+     * @see #getNoteLazily(String, boolean, boolean, boolean, boolean)
+     */
+    public Future<Note> getNoteLazilyAsync(final String guid, final boolean withContent, final boolean withResourcesData,
+                                           final boolean withResourcesRecognition, final boolean withResourcesAlternateData,
+                                           EvernoteCallback<Note> callback) {
+
+        return submitTask(new Callable<Note>() {
+            @Override
+            public Note call() throws Exception {
+                return getNoteLazily(guid, withContent, withResourcesData, withResourcesRecognition, withResourcesAlternateData);
+            }
+        }, callback);
+    }
+
     public LazyMap getNoteApplicationData(String guid) throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException {
         return mClient.getNoteApplicationData(mAuthenticationToken, guid);
     }
@@ -0,0 +1,326 @@
+package com.evernote.client.android.asyncclient;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.EvernoteSession;
+import com.evernote.client.android.helper.Cat;
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.client.android.asyncclient.OutboxJournal.Entry;
+import com.evernote.client.conn.mobile.FileData;
+import com.evernote.edam.error.EDAMSystemException;
+import com.evernote.thrift.TException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A persistent queue for note mutations, which couldn't or shouldn't be sent immediately. Each
+ * entry is stored in its own journal file, resources backed by a {@link FileData} are copied into
+ * the outbox directory, so the original files may be deleted after the mutation was enqueued.
+ *
+ * <br>
+ * <br>
+ *
+ * The entries are replayed in their original order with {@link #flush()}, e.g. after
+ * {@link #registerConnectivityReceiver(Context)} noticed that the device is online again. If an
+ * update for a note is enqueued while an older update for the same note is still pending, then the
+ * fields set in the newer update are merged into the older one and only one update is sent to the server.
+ *
+ * <br>
+ * <br>
+ *
+ * All factories created by the same {@link EvernoteClientFactory.Builder} share one outbox. Use
+ * {@link EvernoteNoteStoreClient#enqueue(EvernoteBulkWriter.Operation)} to add mutations.
+ */
+@SuppressWarnings("unused")
+public class EvernoteOutbox extends EvernoteAsyncClient {
+
+    private static final Cat CAT = new Cat("EvernoteOutbox");
+
+    private final EvernoteSession mEvernoteSession;
+    private final OutboxJournal mJournal;
+
+    private final List<Listener> mListeners;
+    private final AtomicBoolean mFlushing;
+
+    private Entry mInFlight;
+    private ExecutorService mFlushExecutorService;
+
+    private BroadcastReceiver mConnectivityReceiver;
+
+    /**
+     * @param session The session to create the clients, which replay the entries.
+     * @param directory The directory containing the journal files.
+     * @param executorService Runs {@link #enqueueAsync(String, String, EvernoteBulkWriter.Operation, EvernoteCallback)}.
+     */
+    public EvernoteOutbox(@NonNull EvernoteSession session, @NonNull File directory, @NonNull ExecutorService executorService) {
+        super(executorService);
+        mEvernoteSession = EvernotePreconditions.checkNotNull(session);
+        mJournal = new OutboxJournal(EvernotePreconditions.checkNotNull(directory));
+
+        mListeners = new CopyOnWriteArrayList<>();
+        mFlushing = new AtomicBoolean();
+    }
+
+    /**
+     * Stores the operation in the journal. If the operation updates a note with a pending update,
+     * then the fields set by the operation are merged into the pending update.
+     *
+     * @param url The note store URL, which receives the mutation.
+     * @param authenticationToken The token for this note store.
+     * @param operation The mutation.
+     */
+    public synchronized void enqueue(@NonNull String url, @NonNull String authenticationToken,
+                                     @NonNull EvernoteBulkWriter.Operation operation) throws IOException {
+
+        EvernotePreconditions.checkNotEmpty(url);
+        EvernotePreconditions.checkNotEmpty(authenticationToken);
+        EvernotePreconditions.checkNotNull(operation);
+
+        Entry pending = findCoalescableEntry(url, operation);
+        if (pending != null) {
+            try {
+                mJournal.coalesce(pending, url, authenticationToken, operation);
+                CAT.d("Coalesced update for note %s", operation.getGuid());
+            } catch (TException e) {
+                // the pending entry can't be read, keep both updates
+                CAT.w(e, "Could not coalesce update for note %s", operation.getGuid());
+                mJournal.append(url, authenticationToken, operation);
+            }
+
+        } else {
+            mJournal.append(url, authenticationToken, operation);
+        }
+    }
+
+    /**
+     * @see #enqueue(String, String, EvernoteBulkWriter.Operation)
+     */
+    public Future<Void> enqueueAsync(@NonNull final String url, @NonNull final String authenticationToken,
+                                     @NonNull final EvernoteBulkWriter.Operation operation, @Nullable EvernoteCallback<Void> callback) {
+
+        return submitTask(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                enqueue(url, authenticationToken, operation);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @return The number of mutations, which weren't sent to the server yet.
+     */
+    public synchronized int getPendingCount() throws IOException {
+        return mJournal.getEntries().size();
+    }
+
+    /**
+     * Sends all pending mutations in their original order. The replay stops at the first network
+     * or system error, the entry stays in the journal and is retried with the next flush. Entries
+     * rejected by the server, e.g. with an {@code EDAMUserException}, are removed. A note creation,
+     * which failed after the request may have reached the server, is removed, too, see
+     * {@link #isRetryable(EvernoteBulkWriter.Type, Exception)}. If another
+     * thread is already flushing, then this method returns immediately.
+     *
+     * @return The number of entries, which were removed from the journal.
+     */
+    public int flush() throws IOException {
+        if (!mFlushing.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        int count = 0;
+        try {
+            while (mEvernoteSession.isLoggedIn()) {
+                Entry entry;
+                synchronized (this) {
+                    entry = mJournal.getEntries().peekFirst();
+                    if (entry == null) {
+                        break;
+                    }
+                    mInFlight = entry;
+                }
+
+                EvernoteBulkWriter.Operation operation;
+                try {
+                    operation = mJournal.readOperation(entry);
+                } catch (IOException | TException e) {
+                    CAT.e(e, "Dropping corrupted entry %d", entry.mId);
+                    remove(entry);
+                    continue;
+                }
+
+                EvernoteNoteStoreClient client = mEvernoteSession.getEvernoteClientFactory()
+                        .getNoteStoreClient(entry.mUrl, entry.mAuthenticationToken)
+                        .asBackgroundClient();
+
+                EvernoteBulkWriter.Result result = EvernoteBulkWriter.executeOperation(client, -1, operation);
+                if (!result.isSuccessful() && isRetryable(operation.getType(), result.getException())) {
+                    CAT.d("Stopped replay, %s", result.getException());
+                    break;
+                }
+
+                remove(entry);
+                count++;
+
+                for (Listener listener : mListeners) {
+                    listener.onReplayed(result);
+                }
+            }
+
+        } finally {
+            synchronized (this) {
+                mInFlight = null;
+            }
+            mFlushing.set(false);
+        }
+
+        return count;
+    }
+
+    /**
+     * Runs on its own background thread, a long replay doesn't delay other async calls.
+     *
+     * @see #flush()
+     */
+    public Future<Integer> flushAsync(@Nullable EvernoteCallback<Integer> callback) {
+        return submitTask(getFlushExecutorService(), new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return flush();
+            }
+        }, callback);
+    }
+
+    private synchronized ExecutorService getFlushExecutorService() {
+        if (mFlushExecutorService == null) {
+            ThreadPoolExecutor executorService = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "OutboxFlush-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executorService.allowCoreThreadTimeOut(true);
+            mFlushExecutorService = executorService;
+        }
+        return mFlushExecutorService;
+    }
+
+    /**
+     * @param listener Receives the result of each replayed entry on the flushing thread.
+     */
+    public void addListener(@NonNull Listener listener) {
+        mListeners.add(EvernotePreconditions.checkNotNull(listener));
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Flushes the outbox in the background each time the device connects to a network. Requires
+     * the {@code ACCESS_NETWORK_STATE} permission.
+     *
+     * @param context Any context, the application context is used to register the receiver.
+     */
+    public synchronized void registerConnectivityReceiver(@NonNull Context context) {
+        if (mConnectivityReceiver != null) {
+            return;
+        }
+
+        mConnectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+                NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+                if (networkInfo != null && networkInfo.isConnected()) {
+                    flushAsync(null);
+                }
+            }
+        };
+
+        context.getApplicationContext().registerReceiver(mConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    public synchronized void unregisterConnectivityReceiver(@NonNull Context context) {
+        if (mConnectivityReceiver != null) {
+            context.getApplicationContext().unregisterReceiver(mConnectivityReceiver);
+            mConnectivityReceiver = null;
+        }
+    }
+
+    /**
+     * Creating a note isn't idempotent. If the connection broke after the request was sent, then
+     * the note may already exist and sending it again would create a duplicate. Such entries are
+     * removed and reported to the {@link Listener} with the failed result instead.
+     *
+     * @return {@code true} if the entry should stay in the journal and be sent again later.
+     */
+    protected boolean isRetryable(EvernoteBulkWriter.Type type, Exception exception) {
+        if (exception instanceof EDAMSystemException) {
+            return true;
+        }
+        if (!(exception instanceof TException)) {
+            return false;
+        }
+        return type != EvernoteBulkWriter.Type.CREATE_NOTE || EvernoteBulkWriter.isRequestNotSent(exception);
+    }
+
+    private Entry findCoalescableEntry(String url, EvernoteBulkWriter.Operation operation) throws IOException {
+        if (operation.getType() != EvernoteBulkWriter.Type.UPDATE_NOTE || operation.getGuid() == null) {
+            return null;
+        }
+
+        Iterator<Entry> iterator = mJournal.getEntries().descendingIterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (operation.getGuid().equals(entry.mGuid)) {
+                boolean coalescable = entry.mType == EvernoteBulkWriter.Type.UPDATE_NOTE && entry.mUrl.equals(url) && entry != mInFlight;
+                return coalescable ? entry : null;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void remove(Entry entry) {
+        mJournal.remove(entry);
+    }
+
+    /**
+     * Receives the results of replayed entries.
+     */
+    public interface Listener {
+        /**
+         * Called on the flushing thread after the server accepted or rejected an entry.
+         *
+         * @param result The result of the entry. {@link EvernoteBulkWriter.Result#getIndex()} returns {@code -1}.
+         */
+        void onReplayed(@NonNull EvernoteBulkWriter.Result result);
+    }
+}
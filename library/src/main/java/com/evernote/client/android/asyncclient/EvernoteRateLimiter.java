@@ -0,0 +1,232 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.edam.error.EDAMErrorCode;
+import com.evernote.edam.error.EDAMSystemException;
+import com.evernote.thrift.TException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An adaptive token bucket, which paces all calls from one account to one note store host. All
+ * {@link EvernoteNoteStoreClient}s created by the same {@link EvernoteClientFactory.Builder} share
+ * the limiter for their account and host, including linked and business note stores.
+ *
+ * <br>
+ * <br>
+ *
+ * The limiter learns the sustainable call rate from {@link EDAMErrorCode#RATE_LIMIT_REACHED} events.
+ * Each event halves the current rate and blocks all calls for the returned rate limit duration without
+ * contacting the server. Every successful call increases the rate slowly again. A part of the bucket
+ * is reserved for {@link Priority#FOREGROUND} calls, so that bulk operations like syncing can't starve
+ * the calls the user is waiting for.
+ */
+@SuppressWarnings("unused")
+public class EvernoteRateLimiter {
+
+    private static final double DEFAULT_INITIAL_RATE = 5.0;
+    private static final double DEFAULT_MAX_RATE = 10.0;
+    private static final int DEFAULT_BURST = 20;
+    private static final float DEFAULT_FOREGROUND_RESERVE = 0.25f;
+
+    private static final double MIN_RATE = 1.0 / 60.0;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double CEILING_FACTOR = 0.75;
+    private static final double ADDITIVE_INCREASE = 0.02;
+    private static final double CEILING_RECOVERY = 1.001;
+
+    /**
+     * Defines whether a call may use the reserved capacity of the limiter.
+     */
+    public enum Priority {
+        /**
+         * A call the user is waiting for. It may use the whole bucket.
+         */
+        FOREGROUND,
+
+        /**
+         * A call from a bulk operation, e.g. syncing, fetching or expunging many objects. It can't
+         * use the capacity reserved for foreground calls.
+         */
+        BACKGROUND
+    }
+
+    private final double mMaxRate;
+    private final int mBurst;
+    private final double mReserved;
+
+    private double mRate;
+    private double mCeiling;
+    private double mTokens;
+    private long mLastRefillNanos;
+    private long mBlockedUntil;
+
+    public EvernoteRateLimiter() {
+        this(DEFAULT_INITIAL_RATE, DEFAULT_MAX_RATE, DEFAULT_BURST, DEFAULT_FOREGROUND_RESERVE);
+    }
+
+    /**
+     * @param initialRate The calls per second before any rate limit event was observed.
+     * @param maxRate The upper bound for the learned calls per second.
+     * @param burst The maximum number of calls, which can be executed at once.
+     * @param foregroundReserve The fraction of the burst, which only {@link Priority#FOREGROUND} calls may use.
+     */
+    public EvernoteRateLimiter(double initialRate, double maxRate, int burst, float foregroundReserve) {
+        EvernotePreconditions.checkArgumentPositive(burst, "burst must be greater or equal 1");
+        EvernotePreconditions.checkArgumentInRange(foregroundReserve, 0f, 1f, "foregroundReserve");
+        if (initialRate <= 0 || maxRate < initialRate) {
+            throw new IllegalArgumentException("invalid rate");
+        }
+
+        mMaxRate = maxRate;
+        mBurst = burst;
+        mReserved = Math.min(burst - 1, Math.floor(burst * foregroundReserve));
+
+        mRate = initialRate;
+        mCeiling = maxRate;
+        mTokens = burst;
+        mLastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Blocks until the call is allowed.
+     *
+     * @param priority The priority of the call.
+     * @throws EDAMSystemException If the server reported a rate limit event recently and the limit
+     * is still in effect. The exception contains the remaining duration in seconds.
+     * @throws TException If the thread was interrupted while waiting.
+     */
+    public synchronized void acquire(@NonNull Priority priority) throws EDAMSystemException, TException {
+        double required = getRequiredTokens(priority);
+
+        while (true) {
+            checkNotBlocked();
+            refill();
+
+            if (mTokens >= required) {
+                mTokens -= 1;
+                return;
+            }
+
+            long waitNanos = (long) ((required - mTokens) / mRate * TimeUnit.SECONDS.toNanos(1));
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(waitNanos, 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TException("interrupted while waiting for the rate limiter", e);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #acquire(Priority)}, but never blocks.
+     *
+     * @param priority The priority of the call.
+     * @return {@code true} if the call is allowed immediately.
+     */
+    public synchronized boolean tryAcquire(@NonNull Priority priority) {
+        if (System.currentTimeMillis() < mBlockedUntil) {
+            return false;
+        }
+
+        refill();
+        if (mTokens >= getRequiredTokens(priority)) {
+            mTokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Notifies the limiter about a successful call. The rate slowly increases until the learned
+     * sustainable rate is reached.
+     */
+    public synchronized void onSuccess() {
+        mCeiling = Math.min(mMaxRate, mCeiling * CEILING_RECOVERY);
+        mRate = Math.min(mCeiling, mRate + ADDITIVE_INCREASE);
+    }
+
+    /**
+     * Notifies the limiter that the server rejected a call with {@link EDAMErrorCode#RATE_LIMIT_REACHED}.
+     *
+     * @param rateLimitDuration The duration in seconds, which the server returned.
+     */
+    public synchronized void onRateLimitReached(int rateLimitDuration) {
+        long blockedUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.max(0, rateLimitDuration));
+        mBlockedUntil = Math.max(mBlockedUntil, blockedUntil);
+
+        mCeiling = Math.max(MIN_RATE, mRate * CEILING_FACTOR);
+        mRate = Math.max(MIN_RATE, mRate * DECREASE_FACTOR);
+        mTokens = 0;
+
+        notifyAll();
+    }
+
+    /**
+     * @return The current calls per second.
+     */
+    public synchronized double getRate() {
+        return mRate;
+    }
+
+    /**
+     * @return The remaining time in milliseconds until calls are allowed again. Returns {@code 0},
+     * if the limiter isn't blocked.
+     */
+    public synchronized long getBlockedMillis() {
+        return Math.max(0, mBlockedUntil - System.currentTimeMillis());
+    }
+
+    private double getRequiredTokens(Priority priority) {
+        return priority == Priority.FOREGROUND ? 1 : 1 + mReserved;
+    }
+
+    private void checkNotBlocked() throws EDAMSystemException {
+        long remaining = mBlockedUntil - System.currentTimeMillis();
+        if (remaining > 0) {
+            EDAMSystemException exception = new EDAMSystemException(EDAMErrorCode.RATE_LIMIT_REACHED);
+            exception.setMessage("rate limit reached, call rejected by client");
+            exception.setRateLimitDuration((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remaining + 999)));
+            throw exception;
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - mLastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        mLastRefillNanos = now;
+
+        mTokens = Math.min(mBurst, mTokens + elapsedSeconds * mRate);
+    }
+
+    /**
+     * Holds one limiter for each account and host combination.
+     */
+    public static class Registry {
+
+        private final Map<String, EvernoteRateLimiter> mRateLimiters = new HashMap<>();
+
+        /**
+         * @param userId The user ID of the account.
+         * @param host The note store host.
+         * @return The shared limiter for this account and host.
+         */
+        public synchronized EvernoteRateLimiter get(int userId, @NonNull String host) {
+            String key = userId + "@" + host;
+            EvernoteRateLimiter rateLimiter = mRateLimiters.get(key);
+            if (rateLimiter == null) {
+                rateLimiter = create();
+                mRateLimiters.put(key, rateLimiter);
+            }
+            return rateLimiter;
+        }
+
+        protected EvernoteRateLimiter create() {
+            return new EvernoteRateLimiter();
+        }
+    }
+}
@@ -2,11 +2,15 @@ package com.evernote.client.android.asyncclient;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.util.Pair;
 
 import com.evernote.client.android.EvernoteSession;
+import com.evernote.client.android.helper.Cat;
 import com.evernote.client.android.helper.EvernotePreconditions;
 import com.evernote.client.android.type.NoteRef;
+import com.evernote.client.android.type.NoteRefCodec;
+import com.evernote.client.android.type.NoteRefList;
 import com.evernote.edam.error.EDAMNotFoundException;
 import com.evernote.edam.error.EDAMSystemException;
 import com.evernote.edam.error.EDAMUserException;
@@ -19,7 +23,11 @@ import com.evernote.edam.type.NoteSortOrder;
 import com.evernote.edam.type.Notebook;
 import com.evernote.thrift.TException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -48,6 +56,8 @@ import java.util.concurrent.Future;
 @SuppressWarnings("unused")
 public class EvernoteSearchHelper extends EvernoteAsyncClient {
 
+    private static final Cat CAT = new Cat("EvernoteSearchHelper");
+
     private final EvernoteSession mSession;
     private final EvernoteClientFactory mClientFactory;
     private final EvernoteNoteStoreClient mPrivateClient;
@@ -74,8 +84,36 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
             throw new IllegalArgumentException("offset must be less than max notes");
         }
 
+        if (search.isLocalIndexEnabled()) {
+            Result localResult = executeLocally(search);
+            if (localResult != null) {
+                return localResult;
+            }
+        }
+
+        EvernoteSearchResultCache.Recording recording = null;
+        if (search.isCacheEnabled()) {
+            EvernoteSearchResultCache cache = mClientFactory.getSearchResultCache();
+            EvernoteSearchResultCache.UpdateCountLoader loader = new EvernoteSearchResultCache.UpdateCountLoader() {
+                @Override
+                public int loadUpdateCount(Scope scope, @Nullable LinkedNotebook linkedNotebook) throws Exception {
+                    return EvernoteSearchHelper.this.loadUpdateCount(scope, linkedNotebook);
+                }
+            };
+
+            String cacheKey = createCacheKey(search);
+            Result cachedResult = cache.get(mSession.getAuthToken(), cacheKey, loader);
+            if (cachedResult != null) {
+                return cachedResult;
+            }
+            recording = cache.startRecording(mSession.getAuthToken(), cacheKey, loader);
+        }
+
         Result result = new Result(search.getScopes());
 
+        // the personal store also tracks the linked notebooks of the user
+        addStore(recording, Scope.PERSONAL_NOTES, null);
+
         for (Scope scope : search.getScopes()) {
             switch (scope) {
                 case PERSONAL_NOTES:
@@ -83,33 +121,44 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
                         result.setPersonalResults(findPersonalNotes(search));
                     } catch (Exception e) {
                         maybeRethrow(search, e);
+                        setIncomplete(recording);
                     }
                     break;
 
                 case LINKED_NOTEBOOKS:
-                    List<LinkedNotebook> linkedNotebooks = getLinkedNotebooks(search, false);
+                    List<LinkedNotebook> linkedNotebooks = getLinkedNotebooks(search, false, recording);
                     for (LinkedNotebook linkedNotebook : linkedNotebooks) {
+                        addStore(recording, Scope.LINKED_NOTEBOOKS, linkedNotebook);
                         try {
                             result.addLinkedNotebookResult(linkedNotebook, findNotesInLinkedNotebook(search, linkedNotebook));
                         } catch (Exception e) {
                             maybeRethrow(search, e);
+                            setIncomplete(recording);
                         }
                     }
                     break;
 
                 case BUSINESS:
-                    linkedNotebooks = getLinkedNotebooks(search, true);
+                    linkedNotebooks = getLinkedNotebooks(search, true, recording);
+                    if (!linkedNotebooks.isEmpty()) {
+                        addStore(recording, Scope.BUSINESS, null);
+                    }
                     for (LinkedNotebook linkedNotebook : linkedNotebooks) {
                         try {
                             result.addBusinessResult(linkedNotebook, findNotesInBusinessNotebook(search, linkedNotebook));
                         } catch (Exception e) {
                             maybeRethrow(search, e);
+                            setIncomplete(recording);
                         }
                     }
                     break;
             }
         }
 
+        if (recording != null && !recording.commit(result)) {
+            CAT.d("Search result not cached, it's incomplete");
+        }
+
         return result;
     }
 
@@ -125,6 +174,67 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
         }, callback);
     }
 
+    /**
+     * Submits a search and merges the notes of all scopes into a single list, which is sorted by the
+     * order of the {@link NoteFilter}. The offset and max notes of the search apply to the merged list.
+     *
+     * <br>
+     * <br>
+     *
+     * Each note store is queried lazily page by page. A note store is only asked for more notes, if its
+     * last received note is still part of the global top notes. Showing the first page of all notes
+     * therefore needs one call per note store in most cases, instead of loading all notes of each store.
+     *
+     * @param search The desired search with its parameters. The order of the note filter must be
+     *               {@link NoteSortOrder#CREATED}, {@link NoteSortOrder#UPDATED} or {@link NoteSortOrder#TITLE},
+     *               other orders can't be compared across note stores.
+     * @return The globally sorted notes.
+     */
+    public MergedResult executeMerged(@NonNull Search search) throws Exception {
+        if (search.getOffset() >= search.getMaxNotes()) {
+            throw new IllegalArgumentException("offset must be less than max notes");
+        }
+
+        SearchMerger merger = new SearchMerger(search.getNoteFilter(), search.getResultSpec(), search.isIgnoreExceptions());
+        for (Scope scope : search.getScopes()) {
+            switch (scope) {
+                case PERSONAL_NOTES:
+                    merger.addSource(new SearchMerger.Source(scope, null, mPrivateClient, merger.createNoteFilter(null)));
+                    break;
+
+                case LINKED_NOTEBOOKS:
+                case BUSINESS:
+                    boolean business = scope == Scope.BUSINESS;
+                    for (LinkedNotebook linkedNotebook : getLinkedNotebooks(search, business)) {
+                        try {
+                            EvernoteLinkedNotebookHelper linkedNotebookHelper = mClientFactory.getLinkedNotebookHelper(linkedNotebook);
+                            Notebook correspondingNotebook = linkedNotebookHelper.getCorrespondingNotebook();
+
+                            EvernoteNoteStoreClient client = business ? mClientFactory.getBusinessNotebookHelper().getClient() : linkedNotebookHelper.getClient();
+                            merger.addSource(new SearchMerger.Source(scope, linkedNotebook, client, merger.createNoteFilter(correspondingNotebook.getGuid())));
+                        } catch (Exception e) {
+                            maybeRethrow(search, e);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        return merger.merge(search.getOffset(), search.getMaxNotes(), search.getPageSize());
+    }
+
+    /**
+     * @see #executeMerged(Search)
+     */
+    public Future<MergedResult> executeMergedAsync(@NonNull final Search search, @Nullable EvernoteCallback<MergedResult> callback) {
+        return submitTask(new Callable<MergedResult>() {
+            @Override
+            public MergedResult call() throws Exception {
+                return executeMerged(search);
+            }
+        }, callback);
+    }
+
     protected List<NotesMetadataList> findPersonalNotes(Search search) throws Exception {
         return findAllNotes(search, mPrivateClient, search.getNoteFilter());
     }
@@ -178,13 +288,89 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
         return result;
     }
 
+    /**
+     * @return The result from the local index or {@code null}, if the search must be sent to the server.
+     */
+    private Result executeLocally(Search search) {
+        EvernoteLocalIndex localIndex = mClientFactory.getLocalIndex();
+        if (localIndex == null || !search.getScopes().equals(EnumSet.of(Scope.PERSONAL_NOTES))
+                || !LocalIndexQuery.isSupported(search.getNoteFilter(), search.getResultSpec())) {
+            return null;
+        }
+
+        try {
+            List<NotesMetadataList> personalResults = localIndex.findNotes(search.getNoteFilter(), search.getOffset(),
+                    search.getMaxNotes(), search.getPageSize());
+            if (personalResults == null) {
+                return null;
+            }
+
+            Result result = new Result(search.getScopes());
+            result.setPersonalResults(personalResults);
+            return result;
+
+        } catch (Exception e) {
+            // a broken index must not break the search, the server still answers it
+            CAT.w(e);
+            return null;
+        }
+    }
+
+    /**
+     * @param scope The scope of the note store.
+     * @param linkedNotebook The linked notebook for {@link Scope#LINKED_NOTEBOOKS}, otherwise {@code null}.
+     * @return The update count of the note store, which changes with every modification.
+     */
+    protected int loadUpdateCount(Scope scope, @Nullable LinkedNotebook linkedNotebook) throws Exception {
+        switch (scope) {
+            case PERSONAL_NOTES:
+                return mPrivateClient.getSyncState().getUpdateCount();
+            case LINKED_NOTEBOOKS:
+                // the sync state of a linked notebook requires the user's own token, not the shared notebook token
+                EvernoteNoteStoreClient client = mClientFactory.getNoteStoreClient(linkedNotebook.getNoteStoreUrl(), mSession.getAuthToken());
+                return client.getLinkedNotebookSyncState(linkedNotebook).getUpdateCount();
+            case BUSINESS:
+                return mClientFactory.getBusinessNotebookHelper().getClient().getSyncState().getUpdateCount();
+            default:
+                throw new IllegalArgumentException("unknown scope " + scope);
+        }
+    }
+
+    private static void addStore(@Nullable EvernoteSearchResultCache.Recording recording, Scope scope, LinkedNotebook linkedNotebook) {
+        if (recording != null) {
+            recording.addStore(scope, linkedNotebook);
+        }
+    }
+
+    private static void setIncomplete(@Nullable EvernoteSearchResultCache.Recording recording) {
+        if (recording != null) {
+            recording.setIncomplete();
+        }
+    }
+
+    private static String createCacheKey(Search search) {
+        return EvernoteSearchResultCache.createKey(search.getNoteFilter(), search.getResultSpec(), search.getScopes(), search.mLinkedNotebooks,
+                search.mBusinessNotebooks, search.getOffset(), search.getMaxNotes(), search.getPageSize(), search.isIgnoreExceptions());
+    }
+
     protected List<LinkedNotebook> getLinkedNotebooks(Search search, boolean business) throws Exception {
+        return getLinkedNotebooks(search, business, null);
+    }
+
+    /**
+     * @param recording Marked as incomplete if the notebooks can't be listed, the result would miss
+     *                  all notes of this scope.
+     */
+    private List<LinkedNotebook> getLinkedNotebooks(Search search, boolean business, @Nullable EvernoteSearchResultCache.Recording recording)
+            throws Exception {
+
         if (business) {
             if (search.mBusinessNotebooks.isEmpty()) {
                 try {
                     return mClientFactory.getBusinessNotebookHelper().listBusinessNotebooks(mSession);
                 } catch (EDAMUserException | EDAMSystemException | EDAMNotFoundException | TException e) {
                     maybeRethrow(search, e);
+                    setIncomplete(recording);
                     return Collections.emptyList();
                 }
             } else {
@@ -197,6 +383,7 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
                     return mPrivateClient.listLinkedNotebooks();
                 } catch (EDAMUserException | EDAMNotFoundException | TException | EDAMSystemException e) {
                     maybeRethrow(search, e);
+                    setIncomplete(recording);
                     return Collections.emptyList();
                 }
             } else {
@@ -231,6 +418,8 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
         private int mMaxNotes;
         private int mPageSize;
         private boolean mIgnoreExceptions;
+        private boolean mCacheEnabled;
+        private boolean mLocalIndexEnabled;
 
         public Search() {
             mScopes = EnumSet.noneOf(Scope.class);
@@ -343,6 +532,34 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
             return this;
         }
 
+        /**
+         * The default value is {@code false}. A cached result is only returned, if none of the queried
+         * note stores has changed since then. Checking this costs one {@code getSyncState} call per
+         * note store. Note that the same {@link Result} instance is returned for equivalent searches.
+         *
+         * @param cacheEnabled If {@code true} then the result is stored in and loaded from the
+         *                     {@link EvernoteSearchResultCache}.
+         * @see EvernoteClientFactory#getSearchResultCache()
+         */
+        public Search setCacheEnabled(boolean cacheEnabled) {
+            mCacheEnabled = cacheEnabled;
+            return this;
+        }
+
+        /**
+         * The default value is {@code false}. The local index only answers searches of personal notes
+         * with plain search words, quoted phrases and prefix searches. All other searches and searches
+         * before the index was synced are sent to the server.
+         *
+         * @param localIndexEnabled If {@code true} then the search is answered by the {@link EvernoteLocalIndex}
+         *                          without any network call, if possible.
+         * @see EvernoteClientFactory#getLocalIndex()
+         */
+        public Search setLocalIndexEnabled(boolean localIndexEnabled) {
+            mLocalIndexEnabled = localIndexEnabled;
+            return this;
+        }
+
         private EnumSet<Scope> getScopes() {
             if (mScopes.isEmpty()) {
                 mScopes.add(Scope.PERSONAL_NOTES);
@@ -392,6 +609,14 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
         public boolean isIgnoreExceptions() {
             return mIgnoreExceptions;
         }
+
+        public boolean isCacheEnabled() {
+            return mCacheEnabled;
+        }
+
+        public boolean isLocalIndexEnabled() {
+            return mLocalIndexEnabled;
+        }
     }
 
     /**
@@ -399,13 +624,20 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
      */
     public static final class Result {
 
+        private static final int SERIAL_VERSION = 1;
+
         private final List<NotesMetadataList> mPersonalResults;
         private final Map<Pair<String, LinkedNotebook>, List<NotesMetadataList>> mLinkedNotebookResults;
         private final Map<Pair<String, LinkedNotebook>, List<NotesMetadataList>> mBusinessResults;
 
         private NoteRef.Factory mNoteRefFactory;
 
-        private Result(Set<Scope> scopes) {
+        private NoteRefList mPersonalNoteRefs;
+        private NoteRefList mLinkedNotebookNoteRefs;
+        private NoteRefList mBusinessNoteRefs;
+        private NoteRefList mAllNoteRefs;
+
+        /*package*/ Result(Set<Scope> scopes) {
             mPersonalResults = scopes.contains(Scope.PERSONAL_NOTES) ? new ArrayList<NotesMetadataList>() : null;
             mLinkedNotebookResults = scopes.contains(Scope.LINKED_NOTEBOOKS) ? new HashMap<Pair<String, LinkedNotebook>, List<NotesMetadataList>>() : null;
             mBusinessResults = scopes.contains(Scope.BUSINESS) ? new HashMap<Pair<String, LinkedNotebook>, List<NotesMetadataList>>() : null;
@@ -419,7 +651,7 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
          *
          * @param noteRefFactory The new factory to construct the {@link NoteRef} instances.
          */
-        public void setNoteRefFactory(@NonNull NoteRef.Factory noteRefFactory) {
+        public synchronized void setNoteRefFactory(@NonNull NoteRef.Factory noteRefFactory) {
             mNoteRefFactory = EvernotePreconditions.checkNotNull(noteRefFactory);
         }
 
@@ -447,15 +679,21 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
 
         /**
          * @return All personal notes. Returns {@code null}, if {@link Scope#PERSONAL_NOTES} wasn't set.
+         * With the default {@link NoteRef.Factory} the returned list is an immutable {@link NoteRefList},
+         * which is only created once.
          */
-        public List<NoteRef> getPersonalResultsAsNoteRef() {
+        public synchronized List<NoteRef> getPersonalResultsAsNoteRef() {
             if (mPersonalResults == null) {
                 return null;
             }
 
-            List<NoteRef> result = new ArrayList<>();
-            fillNoteRef(mPersonalResults, result, null);
-            return result;
+            if (!isDefaultNoteRefFactory()) {
+                List<NoteRef> result = new ArrayList<>();
+                fillNoteRef(mPersonalResults, result, null);
+                return result;
+            }
+
+            return getPersonalNoteRefList();
         }
 
         /**
@@ -469,20 +707,26 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
 
         /**
          * @return All linked notes. Returns {@code null}, if {@link Scope#LINKED_NOTEBOOKS} wasn't set.
+         * With the default {@link NoteRef.Factory} the returned list is an immutable {@link NoteRefList},
+         * which is only created once.
          */
-        public List<NoteRef> getLinkedNotebookResultsAsNoteRef() {
+        public synchronized List<NoteRef> getLinkedNotebookResultsAsNoteRef() {
             if (mLinkedNotebookResults == null) {
                 return null;
             }
 
-            List<NoteRef> result = new ArrayList<>();
+            if (!isDefaultNoteRefFactory()) {
+                List<NoteRef> result = new ArrayList<>();
 
-            for (Pair<String, LinkedNotebook> key : mLinkedNotebookResults.keySet()) {
-                List<NotesMetadataList> notesMetadataLists = mLinkedNotebookResults.get(key);
-                fillNoteRef(notesMetadataLists, result, key.second);
+                for (Pair<String, LinkedNotebook> key : mLinkedNotebookResults.keySet()) {
+                    List<NotesMetadataList> notesMetadataLists = mLinkedNotebookResults.get(key);
+                    fillNoteRef(notesMetadataLists, result, key.second);
+                }
+
+                return result;
             }
 
-            return result;
+            return getLinkedNotebookNoteRefList();
         }
 
         /**
@@ -496,27 +740,47 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
 
         /**
          * @return All business notes. Returns {@code null}, if {@link Scope#BUSINESS} wasn't set.
+         * With the default {@link NoteRef.Factory} the returned list is an immutable {@link NoteRefList},
+         * which is only created once.
          */
-        public List<NoteRef> getBusinessResultsAsNoteRef() {
+        public synchronized List<NoteRef> getBusinessResultsAsNoteRef() {
             if (mBusinessResults == null) {
                 return null;
             }
 
-            List<NoteRef> result = new ArrayList<>();
+            if (!isDefaultNoteRefFactory()) {
+                List<NoteRef> result = new ArrayList<>();
+
+                for (Pair<String, LinkedNotebook> key : mBusinessResults.keySet()) {
+                    List<NotesMetadataList> notesMetadataLists = mBusinessResults.get(key);
+                    fillNoteRef(notesMetadataLists, result, key.second);
+                }
 
-            for (Pair<String, LinkedNotebook> key : mBusinessResults.keySet()) {
-                List<NotesMetadataList> notesMetadataLists = mBusinessResults.get(key);
-                fillNoteRef(notesMetadataLists, result, key.second);
+                return result;
             }
 
-            return result;
+            return getBusinessNoteRefList();
         }
 
         /**
          * @return All personal, linked and business notes. Never returns {@code null}, if no results
-         * were found then the list is empty.
+         * were found then the list is empty. With the default {@link NoteRef.Factory} the returned
+         * list is an immutable {@link NoteRefList}, which is only created once.
          */
-        public List<NoteRef> getAllAsNoteRef() {
+        public synchronized List<NoteRef> getAllAsNoteRef() {
+            if (isDefaultNoteRefFactory()) {
+                if (mAllNoteRefs == null) {
+                    NoteRefList.Builder builder = new NoteRefList.Builder(0);
+                    for (NoteRefList part : Arrays.asList(getPersonalNoteRefList(), getLinkedNotebookNoteRefList(), getBusinessNoteRefList())) {
+                        if (part != null) {
+                            builder.addAll(part);
+                        }
+                    }
+                    mAllNoteRefs = builder.build();
+                }
+                return mAllNoteRefs;
+            }
+
             List<NoteRef> result = new ArrayList<>();
 
             List<NoteRef> part = getPersonalResultsAsNoteRef();
@@ -537,6 +801,167 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
             return result;
         }
 
+        /**
+         * Writes the notes of this result in the compact format of {@link NoteRefCodec}, e.g. to persist
+         * the last search. Only the values of the {@link NoteRef}s are written, the remaining metadata of
+         * the notes and linked notebooks is dropped.
+         *
+         * @param out The target stream, it isn't closed.
+         * @see #readFrom(InputStream)
+         */
+        public synchronized void writeTo(@NonNull OutputStream out) throws IOException {
+            out.write(SERIAL_VERSION);
+            NoteRefCodec.writeList(out, getPersonalNoteRefList());
+            NoteRefCodec.writeList(out, getLinkedNotebookNoteRefList());
+            NoteRefCodec.writeList(out, getBusinessNoteRefList());
+        }
+
+        /**
+         * Restores a result written by {@link #writeTo(OutputStream)}. The restored {@link NotesMetadataList}s
+         * only contain the GUID, title and notebook GUID of each note, the restored {@link LinkedNotebook}s
+         * only their GUID. All {@code AsNoteRef} methods return the same values as the original result.
+         *
+         * @param in The source stream, it isn't closed.
+         * @return The restored result.
+         */
+        public static Result readFrom(@NonNull InputStream in) throws IOException {
+            int version = in.read();
+            if (version != SERIAL_VERSION) {
+                throw new IOException("unknown version " + version);
+            }
+
+            NoteRefList personal = NoteRefCodec.readList(in);
+            NoteRefList linked = NoteRefCodec.readList(in);
+            NoteRefList business = NoteRefCodec.readList(in);
+
+            Set<Scope> scopes = EnumSet.noneOf(Scope.class);
+            if (personal != null) {
+                scopes.add(Scope.PERSONAL_NOTES);
+            }
+            if (linked != null) {
+                scopes.add(Scope.LINKED_NOTEBOOKS);
+            }
+            if (business != null) {
+                scopes.add(Scope.BUSINESS);
+            }
+
+            Result result = new Result(scopes);
+            if (personal != null) {
+                result.setPersonalResults(Collections.singletonList(createNotesMetadataList(personal, 0, personal.size())));
+                result.mPersonalNoteRefs = personal;
+            }
+            if (linked != null) {
+                restoreLinkedNotebookResults(linked, result.mLinkedNotebookResults);
+                result.mLinkedNotebookNoteRefs = linked;
+            }
+            if (business != null) {
+                restoreLinkedNotebookResults(business, result.mBusinessResults);
+                result.mBusinessNoteRefs = business;
+            }
+            return result;
+        }
+
+        private static void restoreLinkedNotebookResults(NoteRefList noteRefs, Map<Pair<String, LinkedNotebook>, List<NotesMetadataList>> target) {
+            // notes of the same linked notebook are stored consecutively
+            int start = 0;
+            while (start < noteRefs.size()) {
+                String notebookGuid = noteRefs.getNotebookGuid(start);
+                int end = start + 1;
+                while (end < noteRefs.size() && TextUtils.equals(notebookGuid, noteRefs.getNotebookGuid(end))) {
+                    end++;
+                }
+
+                LinkedNotebook linkedNotebook = new LinkedNotebook();
+                linkedNotebook.setGuid(notebookGuid);
+
+                List<NotesMetadataList> notesMetadataLists = new ArrayList<>();
+                notesMetadataLists.add(createNotesMetadataList(noteRefs, start, end));
+                target.put(new Pair<>(notebookGuid, linkedNotebook), notesMetadataLists);
+
+                start = end;
+            }
+        }
+
+        private static NotesMetadataList createNotesMetadataList(NoteRefList noteRefs, int start, int end) {
+            List<NoteMetadata> notes = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                NoteMetadata note = new NoteMetadata();
+                note.setGuid(noteRefs.getGuid(i));
+                note.setTitle(noteRefs.getTitle(i));
+                note.setNotebookGuid(noteRefs.getNotebookGuid(i));
+                notes.add(note);
+            }
+
+            NotesMetadataList notesMetadataList = new NotesMetadataList();
+            notesMetadataList.setStartIndex(0);
+            notesMetadataList.setTotalNotes(notes.size());
+            notesMetadataList.setNotes(notes);
+            return notesMetadataList;
+        }
+
+        private NoteRefList getPersonalNoteRefList() {
+            if (mPersonalResults != null && mPersonalNoteRefs == null) {
+                NoteRefList.Builder builder = new NoteRefList.Builder(countNotes(mPersonalResults));
+                fillNoteRefList(mPersonalResults, builder, null);
+                mPersonalNoteRefs = builder.build();
+            }
+            return mPersonalNoteRefs;
+        }
+
+        private NoteRefList getLinkedNotebookNoteRefList() {
+            if (mLinkedNotebookResults != null && mLinkedNotebookNoteRefs == null) {
+                mLinkedNotebookNoteRefs = createNoteRefList(mLinkedNotebookResults);
+            }
+            return mLinkedNotebookNoteRefs;
+        }
+
+        private NoteRefList getBusinessNoteRefList() {
+            if (mBusinessResults != null && mBusinessNoteRefs == null) {
+                mBusinessNoteRefs = createNoteRefList(mBusinessResults);
+            }
+            return mBusinessNoteRefs;
+        }
+
+        private boolean isDefaultNoteRefFactory() {
+            return mNoteRefFactory.getClass() == NoteRef.DefaultFactory.class;
+        }
+
+        private NoteRefList createNoteRefList(Map<Pair<String, LinkedNotebook>, List<NotesMetadataList>> results) {
+            int count = 0;
+            for (List<NotesMetadataList> notesMetadataLists : results.values()) {
+                count += countNotes(notesMetadataLists);
+            }
+
+            NoteRefList.Builder builder = new NoteRefList.Builder(count);
+            for (Pair<String, LinkedNotebook> key : results.keySet()) {
+                fillNoteRefList(results.get(key), builder, key.second);
+            }
+            return builder.build();
+        }
+
+        private static int countNotes(List<NotesMetadataList> notesMetadataLists) {
+            int count = 0;
+            for (NotesMetadataList notesMetadataList : notesMetadataLists) {
+                count += notesMetadataList.getNotesSize();
+            }
+            return count;
+        }
+
+        /**
+         * Same as {@link NoteRef.DefaultFactory}, but without creating the references.
+         */
+        private static void fillNoteRefList(List<NotesMetadataList> notesMetadataLists, NoteRefList.Builder builder, LinkedNotebook linkedNotebook) {
+            for (NotesMetadataList notesMetadataList : notesMetadataLists) {
+                for (NoteMetadata note : notesMetadataList.getNotes()) {
+                    if (linkedNotebook == null) {
+                        builder.add(note.getGuid(), note.getNotebookGuid(), note.getTitle(), false);
+                    } else {
+                        builder.add(note.getGuid(), linkedNotebook.getGuid(), note.getTitle(), true);
+                    }
+                }
+            }
+        }
+
         protected void fillNoteRef(final List<NotesMetadataList> notesMetadataList, final List<NoteRef> result, LinkedNotebook linkedNotebook) {
             for (NotesMetadataList notesMetadataListEntry : notesMetadataList) {
                 List<NoteMetadata> notes = notesMetadataListEntry.getNotes();
@@ -547,4 +972,82 @@ public class EvernoteSearchHelper extends EvernoteAsyncClient {
             }
         }
     }
+
+    /**
+     * The notes of all scopes in a single list, sorted by the order of the {@link NoteFilter}.
+     *
+     * @see #executeMerged(Search)
+     */
+    public static final class MergedResult {
+
+        private final List<NoteMetadata> mNotes;
+        private final List<Scope> mScopes;
+        private final List<LinkedNotebook> mLinkedNotebooks;
+
+        /*package*/ MergedResult() {
+            mNotes = new ArrayList<>();
+            mScopes = new ArrayList<>();
+            mLinkedNotebooks = new ArrayList<>();
+        }
+
+        /*package*/ void add(NoteMetadata note, Scope scope, LinkedNotebook linkedNotebook) {
+            mNotes.add(note);
+            mScopes.add(scope);
+            mLinkedNotebooks.add(linkedNotebook);
+        }
+
+        /**
+         * @return The sorted notes.
+         */
+        public List<NoteMetadata> getNotes() {
+            return Collections.unmodifiableList(mNotes);
+        }
+
+        /**
+         * @param index The position of the note.
+         * @return The scope, in which the note was found.
+         */
+        public Scope getScope(int index) {
+            return mScopes.get(index);
+        }
+
+        /**
+         * @param index The position of the note.
+         * @return The linked or business notebook of the note or {@code null}, if it's a personal note.
+         */
+        @Nullable
+        public LinkedNotebook getLinkedNotebook(int index) {
+            return mLinkedNotebooks.get(index);
+        }
+
+        /**
+         * @return The sorted notes as references.
+         */
+        public List<NoteRef> getAsNoteRef() {
+            NoteRefList.Builder builder = new NoteRefList.Builder(mNotes.size());
+            for (int i = 0; i < mNotes.size(); i++) {
+                NoteMetadata note = mNotes.get(i);
+                LinkedNotebook linkedNotebook = mLinkedNotebooks.get(i);
+                if (linkedNotebook == null) {
+                    builder.add(note.getGuid(), note.getNotebookGuid(), note.getTitle(), false);
+                } else {
+                    builder.add(note.getGuid(), linkedNotebook.getGuid(), note.getTitle(), true);
+                }
+            }
+            return builder.build();
+        }
+
+        /**
+         * @param noteRefFactory Constructs the {@link NoteRef} instances.
+         * @return The sorted notes as references.
+         */
+        public List<NoteRef> getAsNoteRef(@NonNull NoteRef.Factory noteRefFactory) {
+            List<NoteRef> result = new ArrayList<>(mNotes.size());
+            for (int i = 0; i < mNotes.size(); i++) {
+                LinkedNotebook linkedNotebook = mLinkedNotebooks.get(i);
+                result.add(linkedNotebook == null ? noteRefFactory.fromPersonal(mNotes.get(i)) : noteRefFactory.fromLinked(mNotes.get(i), linkedNotebook));
+            }
+            return result;
+        }
+    }
 }
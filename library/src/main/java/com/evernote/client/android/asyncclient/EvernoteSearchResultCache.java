@@ -0,0 +1,308 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.type.LinkedNotebook;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the results of {@link EvernoteSearchHelper} searches, so that running the same search again,
+ * e.g. after a rotation or a refresh, doesn't repeat every {@code findNotesMetadata} call.
+ *
+ * <br>
+ * <br>
+ *
+ * Searches are identified by a canonical form of their {@link NoteFilter}, {@link NotesMetadataResultSpec},
+ * scopes and linked notebooks. Next to the result the cache stores the update count of each note store,
+ * which the search queried. A cached result is only returned, if no note store has changed since then,
+ * which costs one cheap {@code getSyncState} call per note store. The cache is dropped, when a different
+ * user signs in.
+ *
+ * @see EvernoteClientFactory#getSearchResultCache()
+ * @see EvernoteSearchHelper.Search#setCacheEnabled(boolean)
+ */
+@SuppressWarnings("unused")
+public class EvernoteSearchResultCache {
+
+    public static final int DEFAULT_MAX_SIZE = 20;
+
+    private final Map<String, Entry> mEntries;
+    private final int mMaxSize;
+
+    private String mAuthToken;
+
+    public EvernoteSearchResultCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize The maximum number of search results, which are kept.
+     */
+    public EvernoteSearchResultCache(final int maxSize) {
+        mMaxSize = maxSize;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result, if none of the note stores queried by the search has changed. Loading
+     * the update counts may block, it doesn't hold the lock of the cache.
+     *
+     * @param authToken The token of the signed in user.
+     * @param key The canonical form of the search.
+     * @param loader Loads the current update counts.
+     * @return The valid cached result or {@code null}.
+     */
+    @Nullable
+    /*package*/ EvernoteSearchHelper.Result get(@Nullable String authToken, @NonNull String key, @NonNull UpdateCountLoader loader) {
+        Entry entry;
+        synchronized (this) {
+            checkAuthToken(authToken);
+            entry = mEntries.get(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        boolean changed = false;
+        try {
+            for (Store store : entry.mStores) {
+                if (loader.loadUpdateCount(store.mScope, store.mLinkedNotebook) != store.mUpdateCount) {
+                    changed = true;
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            // handled like a cache miss, the search itself reports the problem
+            return null;
+        }
+
+        synchronized (this) {
+            if (mEntries.get(key) != entry) {
+                return null;
+            }
+            if (changed) {
+                mEntries.remove(key);
+                return null;
+            }
+            return entry.mResult;
+        }
+    }
+
+    /**
+     * @param authToken The token of the signed in user.
+     * @param key The canonical form of the search.
+     * @param loader Loads the update counts of the queried note stores.
+     * @return Collects the update counts, while the search is running.
+     */
+    /*package*/ Recording startRecording(@Nullable String authToken, @NonNull String key, @NonNull UpdateCountLoader loader) {
+        return new Recording(authToken, key, loader);
+    }
+
+    private synchronized void put(String authToken, String key, EvernoteSearchHelper.Result result, List<Store> stores) {
+        checkAuthToken(authToken);
+        mEntries.put(key, new Entry(result, stores));
+    }
+
+    /**
+     * Drops all cached results, the next search queries the note stores again.
+     */
+    public synchronized void invalidate() {
+        mEntries.clear();
+    }
+
+    /**
+     * @return The number of cached results.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return The maximum number of search results, which are kept.
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    private void checkAuthToken(String authToken) {
+        if (authToken == null || !authToken.equals(mAuthToken)) {
+            // a different user signed in
+            mEntries.clear();
+            mAuthToken = authToken;
+        }
+    }
+
+    /**
+     * Creates the canonical form of a search. Equivalent searches, e.g. with differently formatted
+     * search words or a different order of tags, result in the same key.
+     */
+    /*package*/ static String createKey(@NonNull NoteFilter noteFilter, @NonNull NotesMetadataResultSpec resultSpec,
+                                        @NonNull Set<EvernoteSearchHelper.Scope> scopes, @NonNull Collection<LinkedNotebook> linkedNotebooks,
+                                        @NonNull Collection<LinkedNotebook> businessNotebooks, int offset, int maxNotes, int pageSize,
+                                        boolean ignoreExceptions) {
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("scopes=").append(scopes);
+        builder.append(";linked=").append(getSortedGuids(linkedNotebooks));
+        builder.append(";business=").append(getSortedGuids(businessNotebooks));
+        builder.append(";offset=").append(offset);
+        builder.append(";maxNotes=").append(maxNotes);
+        builder.append(";pageSize=").append(pageSize);
+        builder.append(";ignoreExceptions=").append(ignoreExceptions);
+
+        builder.append(";order=").append(noteFilter.isSetOrder() ? noteFilter.getOrder() : -1);
+        builder.append(";ascending=").append(noteFilter.isAscending());
+        // the search grammar is case insensitive
+        builder.append(";words=").append(noteFilter.isSetWords() ? noteFilter.getWords().trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT) : "");
+        builder.append(";notebook=").append(noteFilter.isSetNotebookGuid() ? noteFilter.getNotebookGuid() : "");
+        builder.append(";tags=").append(getSorted(noteFilter.getTagGuids()));
+        builder.append(";timeZone=").append(noteFilter.isSetTimeZone() ? noteFilter.getTimeZone() : "");
+        builder.append(";inactive=").append(noteFilter.isInactive());
+        builder.append(";emphasized=").append(noteFilter.isSetEmphasized() ? noteFilter.getEmphasized() : "");
+
+        builder.append(";spec=");
+        appendFlag(builder, resultSpec.isIncludeTitle());
+        appendFlag(builder, resultSpec.isIncludeContentLength());
+        appendFlag(builder, resultSpec.isIncludeCreated());
+        appendFlag(builder, resultSpec.isIncludeUpdated());
+        appendFlag(builder, resultSpec.isIncludeDeleted());
+        appendFlag(builder, resultSpec.isIncludeUpdateSequenceNum());
+        appendFlag(builder, resultSpec.isIncludeNotebookGuid());
+        appendFlag(builder, resultSpec.isIncludeTagGuids());
+        appendFlag(builder, resultSpec.isIncludeAttributes());
+        appendFlag(builder, resultSpec.isIncludeLargestResourceMime());
+        appendFlag(builder, resultSpec.isIncludeLargestResourceSize());
+
+        return builder.toString();
+    }
+
+    private static List<String> getSortedGuids(Collection<LinkedNotebook> linkedNotebooks) {
+        List<String> guids = new ArrayList<>(linkedNotebooks.size());
+        for (LinkedNotebook linkedNotebook : linkedNotebooks) {
+            guids.add(linkedNotebook.getGuid());
+        }
+        return getSorted(guids);
+    }
+
+    private static List<String> getSorted(List<String> values) {
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(values);
+        Collections.sort(result);
+        return result;
+    }
+
+    private static void appendFlag(StringBuilder builder, boolean flag) {
+        builder.append(flag ? '1' : '0');
+    }
+
+    /**
+     * Loads the update count of a note store, which changes with every modification.
+     */
+    /*package*/ interface UpdateCountLoader {
+        /**
+         * @param scope The scope of the note store.
+         * @param linkedNotebook The linked notebook for {@link EvernoteSearchHelper.Scope#LINKED_NOTEBOOKS}, otherwise {@code null}.
+         */
+        int loadUpdateCount(EvernoteSearchHelper.Scope scope, @Nullable LinkedNotebook linkedNotebook) throws Exception;
+    }
+
+    /**
+     * The update counts of the note stores queried by one search. They're loaded before each query,
+     * so that a change during the search invalidates the result.
+     */
+    /*package*/ final class Recording {
+
+        private final String mAuthToken;
+        private final String mKey;
+        private final UpdateCountLoader mLoader;
+
+        private List<Store> mStores;
+
+        private Recording(String authToken, String key, UpdateCountLoader loader) {
+            mAuthToken = authToken;
+            mKey = key;
+            mLoader = loader;
+            mStores = new ArrayList<>();
+        }
+
+        /**
+         * Loads the update count of a note store. If it fails, then the search still succeeds, but its
+         * result isn't cached.
+         */
+        /*package*/ void addStore(EvernoteSearchHelper.Scope scope, @Nullable LinkedNotebook linkedNotebook) {
+            if (mStores == null) {
+                return;
+            }
+            try {
+                mStores.add(new Store(scope, linkedNotebook, mLoader.loadUpdateCount(scope, linkedNotebook)));
+            } catch (Exception e) {
+                mStores = null;
+            }
+        }
+
+        /**
+         * Called when a query failed and the result misses notes.
+         */
+        /*package*/ void setIncomplete() {
+            mStores = null;
+        }
+
+        /*package*/ boolean isComplete() {
+            return mStores != null;
+        }
+
+        /**
+         * @return {@code true}, if the result was cached. Incomplete results aren't cached.
+         */
+        /*package*/ boolean commit(@NonNull EvernoteSearchHelper.Result result) {
+            if (mStores == null) {
+                return false;
+            }
+            put(mAuthToken, mKey, result, mStores);
+            return true;
+        }
+    }
+
+    private static final class Store {
+
+        private final EvernoteSearchHelper.Scope mScope;
+        private final LinkedNotebook mLinkedNotebook;
+        private final int mUpdateCount;
+
+        private Store(EvernoteSearchHelper.Scope scope, LinkedNotebook linkedNotebook, int updateCount) {
+            mScope = scope;
+            mLinkedNotebook = linkedNotebook;
+            mUpdateCount = updateCount;
+        }
+    }
+
+    private static final class Entry {
+
+        private final EvernoteSearchHelper.Result mResult;
+        private final List<Store> mStores;
+
+        private Entry(EvernoteSearchHelper.Result result, List<Store> stores) {
+            mResult = result;
+            mStores = stores;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import com.evernote.client.android.EvernoteUtil;
+import com.evernote.client.android.helper.Cat;
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.squareup.okhttp.internal.Util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A two level cache for thumbnails. The encoded image bytes are kept in a memory LRU cache and in a
+ * directory on the disk. If the disk cache grows beyond its limit, then the least recently used files
+ * are deleted.
+ *
+ * <br>
+ * <br>
+ *
+ * The {@link EvernoteThumbnailHelper} includes its authentication token in each key, a thumbnail is
+ * never served to another account. The cache is cleared, when the user logs out, see
+ * {@link EvernoteClientFactory#clearUserData()}.
+ *
+ * <br>
+ * <br>
+ *
+ * Concurrent loads of the same thumbnail are merged, only the first caller downloads the thumbnail,
+ * all others wait for its result.
+ *
+ * @see EvernoteThumbnailHelper
+ * @see EvernoteClientFactory#getThumbnailCache()
+ */
+@SuppressWarnings("unused")
+public class EvernoteThumbnailCache {
+
+    private static final Cat CAT = new Cat("EvernoteThumbnailCache");
+
+    public static final long DEFAULT_MAX_DISK_BYTES = 20 * 1024 * 1024;
+
+    private final LruCache<String, byte[]> mMemoryCache;
+    private final File mDirectory;
+    private final long mMaxDiskBytes;
+    private final Map<String, Load> mLoads;
+
+    private long mDiskBytes;
+    private boolean mDiskBytesKnown;
+
+    /**
+     * @param directory The directory of the disk cache. If {@code null}, then thumbnails are only
+     *                  kept in memory.
+     * @param maxMemoryBytes The size of the memory cache in bytes.
+     * @param maxDiskBytes The size of the disk cache in bytes.
+     */
+    public EvernoteThumbnailCache(@Nullable File directory, int maxMemoryBytes, long maxDiskBytes) {
+        mDirectory = directory;
+        mMaxDiskBytes = EvernotePreconditions.checkArgumentNonnegative(maxDiskBytes, "negative value");
+        mLoads = new HashMap<>();
+
+        mMemoryCache = new LruCache<String, byte[]>(EvernotePreconditions.checkArgumentPositive(maxMemoryBytes, "maxMemoryBytes must be positive")) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+    }
+
+    /**
+     * @param key The key of the thumbnail. The disk cache only stores a hash of the key.
+     * @return The thumbnail from the memory or the disk cache or {@code null}, if it isn't cached.
+     */
+    @Nullable
+    public byte[] get(@NonNull String key) {
+        byte[] data = mMemoryCache.get(key);
+        if (data != null) {
+            return data;
+        }
+
+        data = readFromDisk(key);
+        if (data != null) {
+            mMemoryCache.put(key, data);
+        }
+        return data;
+    }
+
+    /**
+     * Returns the cached thumbnail or calls the loader and caches its result. If another thread is
+     * already loading the same thumbnail, then this method waits for its result instead.
+     *
+     * @param key The key of the thumbnail.
+     * @param loader Downloads the thumbnail. It may return {@code null}, which isn't cached.
+     * @return The thumbnail or {@code null}, if the loader didn't return a thumbnail.
+     */
+    @Nullable
+    public byte[] get(@NonNull String key, @NonNull Callable<byte[]> loader) throws Exception {
+        byte[] data = get(key);
+        if (data != null) {
+            return data;
+        }
+
+        Load load;
+        boolean owner;
+        synchronized (mLoads) {
+            load = mLoads.get(key);
+            owner = load == null;
+            if (owner) {
+                load = new Load();
+                mLoads.put(key, load);
+            }
+        }
+
+        if (!owner) {
+            return load.await();
+        }
+
+        try {
+            // another thread may have finished the load between the cache check and the registration
+            data = get(key);
+            if (data == null) {
+                data = loader.call();
+                if (data != null) {
+                    put(key, data);
+                }
+            }
+            load.finish(data, null);
+            return data;
+
+        } catch (Exception e) {
+            load.finish(null, e);
+            throw e;
+
+        } finally {
+            synchronized (mLoads) {
+                mLoads.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @param key The key of the thumbnail.
+     * @param data The encoded image.
+     */
+    public void put(@NonNull String key, @NonNull byte[] data) {
+        mMemoryCache.put(key, data);
+        writeToDisk(key, data);
+    }
+
+    /**
+     * Drops all cached thumbnails from the memory and the disk.
+     */
+    public void clear() {
+        mMemoryCache.evictAll();
+
+        synchronized (this) {
+            File[] files = mDirectory == null ? null : mDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+            mDiskBytes = 0;
+            mDiskBytesKnown = true;
+        }
+    }
+
+    private synchronized byte[] readFromDisk(String key) {
+        if (mDirectory == null) {
+            return null;
+        }
+
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    return null;
+                }
+                offset += read;
+            }
+
+            // the modification date is the access order of the disk cache
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+
+        } catch (IOException e) {
+            CAT.w(e);
+            return null;
+
+        } finally {
+            Util.closeQuietly(in);
+        }
+    }
+
+    private synchronized void writeToDisk(String key, byte[] data) {
+        if (mDirectory == null || data.length > mMaxDiskBytes) {
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            CAT.w("could not create directory %s", mDirectory);
+            return;
+        }
+
+        ensureDiskBytesKnown();
+
+        File file = getFile(key);
+        File tempFile = new File(file.getPath() + ".tmp");
+        long oldLength = file.length();
+
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            out.write(data);
+            out.flush();
+        } catch (IOException e) {
+            CAT.w(e);
+            return;
+        } finally {
+            Util.closeQuietly(out);
+        }
+
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+
+        mDiskBytes += data.length - oldLength;
+        if (mDiskBytes > mMaxDiskBytes) {
+            trimDisk(file);
+        }
+    }
+
+    private void ensureDiskBytesKnown() {
+        if (mDiskBytesKnown) {
+            return;
+        }
+
+        mDiskBytes = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                mDiskBytes += file.length();
+            }
+        }
+        mDiskBytesKnown = true;
+    }
+
+    private void trimDisk(File keep) {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long left = lhs.lastModified();
+                long right = rhs.lastModified();
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+
+        // delete a bit more than necessary, so that not every write trims the cache
+        long target = mMaxDiskBytes * 9 / 10;
+        for (File file : files) {
+            if (mDiskBytes <= target) {
+                break;
+            }
+            if (file.equals(keep)) {
+                // the modification dates may be equal, never delete the file which was just written
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                mDiskBytes -= length;
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        try {
+            return new File(mDirectory, EvernoteUtil.bytesToHex(EvernoteUtil.hash(key.getBytes("UTF-8"))));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Load {
+
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private byte[] mData;
+        private Exception mException;
+
+        private void finish(byte[] data, Exception exception) {
+            mData = data;
+            mException = exception;
+            mLatch.countDown();
+        }
+
+        private byte[] await() throws Exception {
+            mLatch.await();
+            if (mException != null) {
+                throw mException;
+            }
+            return mData;
+        }
+    }
+}
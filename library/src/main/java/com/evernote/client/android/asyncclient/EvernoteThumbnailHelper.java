@@ -0,0 +1,159 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Provides helper methods to download the thumbnails of notes and resources from the web API of the
+ * Evernote service. Thumbnails are small images, it's much cheaper to show them in a list than
+ * downloading the resources themselves. The easiest way to create an instance is to call
+ * {@link EvernoteClientFactory#getThumbnailHelperDefault()} for personal notes,
+ * {@link EvernoteClientFactory#getLinkedThumbnailHelper(com.evernote.edam.type.LinkedNotebook)} for
+ * linked notes or {@link EvernoteClientFactory#getThumbnailHelperBusiness()} for business notes.
+ *
+ * <br>
+ * <br>
+ *
+ * The service only renders a few sizes. The requested size is rounded up to the next supported size,
+ * so that the cache can serve similar sizes with the same thumbnail. The returned bytes are an
+ * encoded image, use {@code BitmapFactory.decodeByteArray()} to decode it.
+ */
+@SuppressWarnings("unused")
+public class EvernoteThumbnailHelper extends EvernoteAsyncClient {
+
+    /**
+     * The thumbnail sizes in pixels, which the service renders.
+     */
+    private static final int[] SIZES = {75, 150, 300};
+
+    public static final int MAX_SIZE = SIZES[SIZES.length - 1];
+
+    protected final OkHttpClient mHttpClient;
+    protected final String mWebApiUrlPrefix;
+    protected final String mAuthToken;
+    protected final EvernoteThumbnailCache mCache;
+
+    private final String mAuthHeader;
+
+    /**
+     * @param httpClient The HTTP client executing the GET call.
+     * @param webApiUrlPrefix The web API URL of the user's shard, e.g. {@code https://www.evernote.com/shard/s1/}.
+     * @param authToken The authentication token, which can access the notes.
+     * @param cache Caches downloaded thumbnails. May be {@code null}.
+     * @param executorService The executor running the actions in the background.
+     */
+    public EvernoteThumbnailHelper(@NonNull OkHttpClient httpClient, @NonNull String webApiUrlPrefix, @NonNull String authToken,
+                                   @Nullable EvernoteThumbnailCache cache, @NonNull ExecutorService executorService) {
+        super(executorService);
+        mHttpClient = EvernotePreconditions.checkNotNull(httpClient);
+        mWebApiUrlPrefix = webApiUrlPrefix.endsWith("/") ? webApiUrlPrefix : webApiUrlPrefix + '/';
+        mAuthToken = EvernotePreconditions.checkNotEmpty(authToken);
+        mCache = cache;
+
+        mAuthHeader = "auth=" + mAuthToken;
+    }
+
+    /**
+     * @param noteGuid The desired note.
+     * @param size The size in pixels of the view, which shows the thumbnail.
+     * @return The encoded thumbnail or {@code null}, if the note has no thumbnail.
+     */
+    @Nullable
+    public byte[] getNoteThumbnail(@NonNull String noteGuid, int size) throws Exception {
+        return getThumbnail("thm/note/", noteGuid, size);
+    }
+
+    /**
+     * @see #getNoteThumbnail(String, int)
+     */
+    public Future<byte[]> getNoteThumbnailAsync(@NonNull final String noteGuid, final int size, @Nullable EvernoteCallback<byte[]> callback) {
+        return submitTask(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return getNoteThumbnail(noteGuid, size);
+            }
+        }, callback);
+    }
+
+    /**
+     * @param resourceGuid The desired resource.
+     * @param size The size in pixels of the view, which shows the thumbnail.
+     * @return The encoded thumbnail or {@code null}, if the resource has no thumbnail.
+     */
+    @Nullable
+    public byte[] getResourceThumbnail(@NonNull String resourceGuid, int size) throws Exception {
+        return getThumbnail("thm/res/", resourceGuid, size);
+    }
+
+    /**
+     * @see #getResourceThumbnail(String, int)
+     */
+    public Future<byte[]> getResourceThumbnailAsync(@NonNull final String resourceGuid, final int size, @Nullable EvernoteCallback<byte[]> callback) {
+        return submitTask(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return getResourceThumbnail(resourceGuid, size);
+            }
+        }, callback);
+    }
+
+    /**
+     * @param size The desired size in pixels.
+     * @return The smallest size the service renders, which is at least as large as the desired size.
+     */
+    public static int getRequestSize(int size) {
+        for (int supported : SIZES) {
+            if (size <= supported) {
+                return supported;
+            }
+        }
+        return MAX_SIZE;
+    }
+
+    private byte[] getThumbnail(String path, String guid, int size) throws Exception {
+        final String url = mWebApiUrlPrefix + path + guid + "?size=" + getRequestSize(size);
+        if (mCache == null) {
+            return download(url);
+        }
+
+        // the cache is shared by all users, only serve thumbnails downloaded with the same token
+        return mCache.get(mAuthToken + ' ' + url, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return download(url);
+            }
+        });
+    }
+
+    /**
+     * @param url The URL of the thumbnail.
+     * @return The response body or {@code null}, if the service didn't return a thumbnail.
+     */
+    protected byte[] download(@NonNull String url) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .addHeader("Cookie", mAuthHeader)
+                .get()
+                .build();
+
+        Response response = mHttpClient.newCall(request).execute();
+        try {
+            if (response.code() != 200) {
+                return null;
+            }
+            return response.body().bytes();
+        } finally {
+            response.body().close();
+        }
+    }
+}
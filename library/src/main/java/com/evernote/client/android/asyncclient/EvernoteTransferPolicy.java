@@ -0,0 +1,210 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.thrift.TException;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decides which note store calls may run on the current network. Calls are classified by the data
+ * they download. Metadata is always allowed, resource data and recognition or alternate data are
+ * only downloaded on unmetered networks by default.
+ *
+ * <br>
+ * <br>
+ *
+ * A call, which isn't allowed, fails with a {@link TransferDeferredException} before anything is
+ * sent. Use {@link EvernoteNoteStoreClient#executeWhenAllowed(TransferClass, java.util.concurrent.Callable, EvernoteCallback)}
+ * to queue such calls instead. They run one after another once a suitable network is available.
+ *
+ * <pre class="prettyprint">
+ * new EvernoteClientFactory.Builder(session)
+ *         .setTransferPolicy(new EvernoteTransferPolicy(new AndroidConnectivitySource(context)))
+ *         .build();
+ * </pre>
+ *
+ * @see EvernoteClientFactory.Builder#setTransferPolicy(EvernoteTransferPolicy)
+ */
+@SuppressWarnings("unused")
+public class EvernoteTransferPolicy implements ConnectivitySource.Listener {
+
+    /**
+     * The kind of data a call downloads.
+     */
+    public enum TransferClass {
+        /**
+         * Notes, notebooks, tags, sync chunks and resources without their data.
+         */
+        METADATA,
+        /**
+         * Recognition and alternate data of resources.
+         */
+        RESOURCE_EXTRAS,
+        /**
+         * Resource bodies.
+         */
+        RESOURCE_DATA
+    }
+
+    private final ConnectivitySource mConnectivitySource;
+    private final Set<TransferClass> mAllowedOnMeteredNetwork;
+    private final Object mMonitor;
+
+    private ExecutorService mDeferredExecutor;
+
+    /**
+     * @param connectivitySource Provides the network state.
+     */
+    public EvernoteTransferPolicy(@NonNull ConnectivitySource connectivitySource) {
+        mConnectivitySource = EvernotePreconditions.checkNotNull(connectivitySource);
+        mAllowedOnMeteredNetwork = EnumSet.of(TransferClass.METADATA);
+        mMonitor = new Object();
+
+        mConnectivitySource.setListener(this);
+    }
+
+    /**
+     * @param transferClass The kind of data.
+     * @param allowed Whether this kind of data may be downloaded over a metered network.
+     */
+    public EvernoteTransferPolicy setAllowedOnMeteredNetwork(@NonNull TransferClass transferClass, boolean allowed) {
+        synchronized (this) {
+            if (allowed) {
+                mAllowedOnMeteredNetwork.add(transferClass);
+            } else {
+                mAllowedOnMeteredNetwork.remove(transferClass);
+            }
+        }
+        // outside of the lock, waiting threads hold the monitor while they call isAllowed()
+        onConnectivityChanged();
+        return this;
+    }
+
+    /**
+     * Metadata calls are always allowed, even without a connection. They fail with the usual
+     * network error instead.
+     *
+     * @param transferClass The kind of data.
+     * @return {@code true}, if the data may be downloaded on the current network.
+     */
+    public synchronized boolean isAllowed(@NonNull TransferClass transferClass) {
+        if (transferClass == TransferClass.METADATA) {
+            return true;
+        }
+        if (!mConnectivitySource.isConnected()) {
+            return false;
+        }
+        return !mConnectivitySource.isMetered() || mAllowedOnMeteredNetwork.contains(transferClass);
+    }
+
+    /**
+     * @throws TransferDeferredException If the data may not be downloaded on the current network.
+     */
+    public void checkAllowed(@NonNull TransferClass transferClass) throws TransferDeferredException {
+        if (!isAllowed(transferClass)) {
+            throw new TransferDeferredException(transferClass);
+        }
+    }
+
+    /**
+     * Blocks until the data may be downloaded.
+     */
+    public void awaitAllowed(@NonNull TransferClass transferClass) throws InterruptedException {
+        synchronized (mMonitor) {
+            while (!isAllowed(transferClass)) {
+                mMonitor.wait();
+            }
+        }
+    }
+
+    @Override
+    public void onConnectivityChanged() {
+        synchronized (mMonitor) {
+            mMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * @return The single thread, which runs deferred calls in the order they were queued.
+     */
+    /*package*/ synchronized ExecutorService getDeferredExecutor() {
+        if (mDeferredExecutor == null) {
+            mDeferredExecutor = Executors.newSingleThreadExecutor();
+        }
+        return mDeferredExecutor;
+    }
+
+    /**
+     * Classifies a {@link com.evernote.edam.notestore.NoteStore.Iface} call by its arguments.
+     *
+     * @param methodName The name of the note store method.
+     * @param args The arguments of the call.
+     * @return The heaviest kind of data the call downloads.
+     */
+    @NonNull
+    public static TransferClass classify(@NonNull String methodName, Object[] args) {
+        switch (methodName) {
+            case "getResourceData":
+                return TransferClass.RESOURCE_DATA;
+
+            case "getResourceRecognition":
+            case "getResourceAlternateData":
+                return TransferClass.RESOURCE_EXTRAS;
+
+            case "getNote":
+            case "getNoteVersion":
+                // (token, guid, withContent / updateSequenceNum, withData, withRecognition, withAlternateData)
+                return classify(args, 3, 4, 5);
+
+            case "getResource":
+                // (token, guid, withData, withRecognition, withAttributes, withAlternateData)
+                return classify(args, 2, 3, 5);
+
+            case "getResourceByHash":
+                // (token, noteGuid, contentHash, withData, withRecognition, withAlternateData)
+                return classify(args, 3, 4, 5);
+
+            default:
+                return TransferClass.METADATA;
+        }
+    }
+
+    private static TransferClass classify(Object[] args, int dataIndex, int recognitionIndex, int alternateDataIndex) {
+        if (isTrue(args, dataIndex)) {
+            return TransferClass.RESOURCE_DATA;
+        }
+        if (isTrue(args, recognitionIndex) || isTrue(args, alternateDataIndex)) {
+            return TransferClass.RESOURCE_EXTRAS;
+        }
+        return TransferClass.METADATA;
+    }
+
+    private static boolean isTrue(Object[] args, int index) {
+        return args != null && index < args.length && Boolean.TRUE.equals(args[index]);
+    }
+
+    /**
+     * Thrown if a call downloads data, which isn't allowed on the current network.
+     */
+    public static class TransferDeferredException extends TException {
+
+        private final TransferClass mTransferClass;
+
+        public TransferDeferredException(@NonNull TransferClass transferClass) {
+            super(transferClass + " isn't allowed on the current network");
+            mTransferClass = transferClass;
+        }
+
+        /**
+         * @return The kind of data the call would have downloaded.
+         */
+        public TransferClass getTransferClass() {
+            return mTransferClass;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.EvernoteUtil;
+import com.evernote.client.android.helper.Cat;
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.client.conn.mobile.FileData;
+import com.evernote.client.conn.mobile.FileHashCache;
+import com.evernote.edam.error.EDAMNotFoundException;
+import com.evernote.edam.error.EDAMSystemException;
+import com.evernote.edam.error.EDAMUserException;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Resource;
+import com.evernote.edam.type.ResourceAttributes;
+import com.evernote.thrift.TException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads notes with many or large file attachments. The MD5 hashes of the files are computed in
+ * the background as soon as a file is added to an {@link Upload} and they're remembered in a
+ * {@link FileHashCache}, so that unchanged files aren't read again for another upload or after a
+ * process restart.
+ *
+ * <br>
+ * <br>
+ *
+ * The attachments are sent as {@link FileData} and streamed from disk, the memory usage doesn't
+ * depend on the size of the files. If the connection drops, then the call is retried with an
+ * exponential backoff. A retry only sends the note again, the hashes are kept. A note creation is
+ * only retried, if the request didn't reach the server, otherwise a retry could create a duplicate.
+ *
+ * @see EvernoteClientFactory#getUploadManager()
+ */
+@SuppressWarnings("unused")
+public class EvernoteUploadManager {
+
+    private static final Cat CAT = new Cat("EvernoteUploadManager");
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000L;
+
+    private static final int HASH_THREADS = 2;
+
+    private final FileHashCache mHashCache;
+
+    private ExecutorService mHashExecutorService;
+
+    private int mMaxAttempts;
+    private long mInitialBackoffMillis;
+
+    /**
+     * The hashes are computed by daemon threads, which are started with the first file.
+     *
+     * @param hashCache Remembers the hashes of the uploaded files.
+     */
+    public EvernoteUploadManager(@NonNull FileHashCache hashCache) {
+        mHashCache = EvernotePreconditions.checkNotNull(hashCache);
+        mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+        mInitialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    }
+
+    /**
+     * @param hashCache Remembers the hashes of the uploaded files.
+     * @param hashExecutorService Computes the hashes in the background.
+     */
+    public EvernoteUploadManager(@NonNull FileHashCache hashCache, @NonNull ExecutorService hashExecutorService) {
+        this(hashCache);
+        mHashExecutorService = EvernotePreconditions.checkNotNull(hashExecutorService);
+    }
+
+    /**
+     * @param maxAttempts How often a call is tried, if the connection fails.
+     * @param initialBackoffMillis The delay before the first retry. The delay doubles with each retry.
+     */
+    public synchronized void setRetryPolicy(int maxAttempts, long initialBackoffMillis) {
+        mMaxAttempts = EvernotePreconditions.checkArgumentPositive(maxAttempts, "maxAttempts must be greater or equal 1");
+        mInitialBackoffMillis = EvernotePreconditions.checkArgumentNonnegative(initialBackoffMillis, "initialBackoffMillis must not be negative");
+    }
+
+    @NonNull
+    public FileHashCache getHashCache() {
+        return mHashCache;
+    }
+
+    private synchronized ExecutorService getHashExecutorService() {
+        if (mHashExecutorService == null) {
+            ThreadPoolExecutor executorService = new ThreadPoolExecutor(HASH_THREADS, HASH_THREADS, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "UploadHasher-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executorService.allowCoreThreadTimeOut(true);
+            mHashExecutorService = executorService;
+        }
+        return mHashExecutorService;
+    }
+
+    /**
+     * @param note The note to create or update. Resources already attached to the note are kept.
+     * @return A new upload, add the files with {@link Upload#addFile(File, String, ResourceAttributes)}.
+     */
+    public Upload newUpload(@NonNull Note note) {
+        return new Upload(EvernotePreconditions.checkNotNull(note));
+    }
+
+    /**
+     * A note and the files, which are attached to it. Add all files before calling
+     * {@link #create(EvernoteNoteStoreClient)} or {@link #update(EvernoteNoteStoreClient)}. If the
+     * call fails, then it can be called again without hashing the files again.
+     */
+    public final class Upload {
+
+        private final Note mNote;
+        private final List<PendingResource> mPendingResources;
+
+        private List<Resource> mResources;
+
+        private Upload(Note note) {
+            mNote = note;
+            mPendingResources = new ArrayList<>();
+        }
+
+        /**
+         * Adds the file to the note and starts computing its hash in the background.
+         *
+         * @param file The file to attach.
+         * @param mimeType The MIME type of the file.
+         * @param attributes Optional attributes, e.g. the file name.
+         * @return This upload.
+         */
+        public synchronized Upload addFile(@NonNull final File file, @NonNull String mimeType, @Nullable ResourceAttributes attributes) {
+            if (mResources != null) {
+                throw new IllegalStateException("upload was already prepared");
+            }
+
+            Future<byte[]> hash = getHashExecutorService().submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return mHashCache.getOrCompute(file);
+                }
+            });
+
+            mPendingResources.add(new PendingResource(file, EvernotePreconditions.checkNotEmpty(mimeType), attributes, hash));
+            return this;
+        }
+
+        /**
+         * Waits until all hashes are computed. If the note has no content yet, then the content is
+         * generated with an {@code en-media} tag for each resource. Otherwise the content must
+         * already reference the resources, the returned resources contain the hashes.
+         *
+         * @return The resources for the added files.
+         */
+        public synchronized List<Resource> prepare() throws IOException, InterruptedException {
+            if (mResources != null) {
+                return mResources;
+            }
+
+            List<Resource> resources = new ArrayList<>(mPendingResources.size());
+            for (PendingResource pendingResource : mPendingResources) {
+                byte[] hash;
+                try {
+                    hash = pendingResource.mHash.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+
+                Resource resource = new Resource();
+                resource.setData(new FileData(hash, pendingResource.mFile));
+                resource.setMime(pendingResource.mMimeType);
+                if (pendingResource.mAttributes != null) {
+                    resource.setAttributes(pendingResource.mAttributes);
+                }
+                resources.add(resource);
+            }
+
+            for (Resource resource : resources) {
+                mNote.addToResources(resource);
+            }
+
+            if (!mNote.isSetContent()) {
+                StringBuilder content = new StringBuilder(EvernoteUtil.NOTE_PREFIX);
+                for (Resource resource : resources) {
+                    content.append(EvernoteUtil.createEnMediaTag(resource));
+                }
+                mNote.setContent(content.append(EvernoteUtil.NOTE_SUFFIX).toString());
+            }
+
+            try {
+                mHashCache.save();
+            } catch (IOException e) {
+                CAT.w(e, "Could not persist hash cache");
+            }
+
+            mResources = resources;
+            return mResources;
+        }
+
+        /**
+         * A transport error is only retried, if the request didn't reach the server. Otherwise the
+         * note may already exist and the {@link TException} is thrown.
+         *
+         * @param client The note store, which should contain the new note.
+         * @return The created note from the server.
+         */
+        public Note create(@NonNull final EvernoteNoteStoreClient client) throws IOException, InterruptedException, TException,
+                EDAMUserException, EDAMSystemException, EDAMNotFoundException {
+
+            prepare();
+            return execute(new Callable<Note>() {
+                @Override
+                public Note call() throws Exception {
+                    return client.createNote(mNote);
+                }
+            }, false);
+        }
+
+        /**
+         * @param client The note store, which contains the note.
+         * @return The updated note from the server.
+         */
+        public Note update(@NonNull final EvernoteNoteStoreClient client) throws IOException, InterruptedException, TException,
+                EDAMUserException, EDAMSystemException, EDAMNotFoundException {
+
+            prepare();
+            return execute(new Callable<Note>() {
+                @Override
+                public Note call() throws Exception {
+                    return client.updateNote(mNote);
+                }
+            }, true);
+        }
+
+        /**
+         * @return The note, which is uploaded. The resources are attached after {@link #prepare()}.
+         */
+        public Note getNote() {
+            return mNote;
+        }
+
+        /**
+         * @param idempotent Whether the call may be sent again after the request reached the server.
+         */
+        private Note execute(Callable<Note> callable, boolean idempotent) throws InterruptedException, TException, EDAMUserException,
+                EDAMSystemException, EDAMNotFoundException {
+
+            int maxAttempts;
+            long backoff;
+            synchronized (EvernoteUploadManager.this) {
+                maxAttempts = mMaxAttempts;
+                backoff = mInitialBackoffMillis;
+            }
+
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return callable.call();
+
+                } catch (TException e) {
+                    // transport errors, e.g. a dropped connection
+                    if (attempt >= maxAttempts || (!idempotent && !EvernoteBulkWriter.isRequestNotSent(e))) {
+                        throw e;
+                    }
+                    CAT.d("Upload attempt %d failed, retry in %d ms", attempt, backoff);
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                    backoff *= 2;
+
+                } catch (EDAMUserException | EDAMSystemException | EDAMNotFoundException | RuntimeException e) {
+                    throw e;
+
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private static final class PendingResource {
+        private final File mFile;
+        private final String mMimeType;
+        private final ResourceAttributes mAttributes;
+        private final Future<byte[]> mHash;
+
+        private PendingResource(File file, String mimeType, ResourceAttributes attributes, Future<byte[]> hash) {
+            mFile = file;
+            mMimeType = mimeType;
+            mAttributes = attributes;
+            mHash = hash;
+        }
+    }
+}
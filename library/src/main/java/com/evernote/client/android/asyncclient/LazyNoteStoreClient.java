@@ -0,0 +1,98 @@
+package com.evernote.client.android.asyncclient;
+
+import com.evernote.client.conn.mobile.LazyNote;
+import com.evernote.edam.error.EDAMNotFoundException;
+import com.evernote.edam.error.EDAMSystemException;
+import com.evernote.edam.error.EDAMUserException;
+import com.evernote.edam.notestore.NoteStore;
+import com.evernote.edam.type.Note;
+import com.evernote.thrift.TApplicationException;
+import com.evernote.thrift.TException;
+import com.evernote.thrift.protocol.TField;
+import com.evernote.thrift.protocol.TMessage;
+import com.evernote.thrift.protocol.TMessageType;
+import com.evernote.thrift.protocol.TProtocol;
+import com.evernote.thrift.protocol.TProtocolUtil;
+import com.evernote.thrift.protocol.TType;
+
+/**
+ * A {@link NoteStore.Client}, which can decode the result of {@code getNote} as {@link LazyNote}.
+ * Lazy decoding is enabled per call with {@link #setDecodeLazily(boolean)}.
+ */
+/*package*/ class LazyNoteStoreClient extends NoteStore.Client {
+
+    private boolean mDecodeLazily;
+
+    public LazyNoteStoreClient(TProtocol prot) {
+        super(prot);
+    }
+
+    public void setDecodeLazily(boolean decodeLazily) {
+        mDecodeLazily = decodeLazily;
+    }
+
+    @Override
+    public Note recv_getNote() throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException {
+        if (!mDecodeLazily) {
+            return super.recv_getNote();
+        }
+
+        TMessage message = iprot_.readMessageBegin();
+        if (message.type == TMessageType.EXCEPTION) {
+            TApplicationException exception = TApplicationException.read(iprot_);
+            iprot_.readMessageEnd();
+            throw exception;
+        }
+        if (message.seqid != seqid_) {
+            throw new TApplicationException(TApplicationException.BAD_SEQUENCE_ID, "getNote failed: out of sequence response");
+        }
+
+        LazyNote note = null;
+        EDAMUserException userException = null;
+        EDAMSystemException systemException = null;
+        EDAMNotFoundException notFoundException = null;
+
+        iprot_.readStructBegin();
+        while (true) {
+            TField field = iprot_.readFieldBegin();
+            if (field.type == TType.STOP) {
+                break;
+            }
+
+            if (field.type != TType.STRUCT) {
+                TProtocolUtil.skip(iprot_, field.type);
+            } else if (field.id == 0) {
+                note = new LazyNote();
+                note.read(iprot_);
+            } else if (field.id == 1) {
+                userException = new EDAMUserException();
+                userException.read(iprot_);
+            } else if (field.id == 2) {
+                systemException = new EDAMSystemException();
+                systemException.read(iprot_);
+            } else if (field.id == 3) {
+                notFoundException = new EDAMNotFoundException();
+                notFoundException.read(iprot_);
+            } else {
+                TProtocolUtil.skip(iprot_, field.type);
+            }
+            iprot_.readFieldEnd();
+        }
+        iprot_.readStructEnd();
+        iprot_.readMessageEnd();
+
+        if (note != null) {
+            return note;
+        }
+        if (userException != null) {
+            throw userException;
+        }
+        if (systemException != null) {
+            throw systemException;
+        }
+        if (notFoundException != null) {
+            throw notFoundException;
+        }
+        throw new TApplicationException(TApplicationException.MISSING_RESULT, "getNote failed: unknown result");
+    }
+}
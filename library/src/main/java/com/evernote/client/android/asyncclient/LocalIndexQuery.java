@@ -0,0 +1,144 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.Nullable;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.type.NoteSortOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates a {@link NoteFilter} into a query of the {@link EvernoteLocalIndex}. Only a subset of
+ * the Evernote search grammar can be answered locally, all other searches must be sent to the server.
+ */
+/*package*/ final class LocalIndexQuery {
+
+    private LocalIndexQuery() {
+        // no op
+    }
+
+    /**
+     * @return {@code true}, if the local index stores all fields of the result spec and can evaluate
+     * the filter.
+     */
+    public static boolean isSupported(NoteFilter noteFilter, NotesMetadataResultSpec resultSpec) {
+        if (noteFilter.isSetTagGuids() || noteFilter.isInactive() || noteFilter.isSetEmphasized()) {
+            return false;
+        }
+        if (getOrderColumn(noteFilter) == null || toMatchQuery(noteFilter.getWords()) == null) {
+            return false;
+        }
+
+        return !resultSpec.isIncludeContentLength()
+                && !resultSpec.isIncludeDeleted()
+                && !resultSpec.isIncludeTagGuids()
+                && !resultSpec.isIncludeAttributes()
+                && !resultSpec.isIncludeLargestResourceMime()
+                && !resultSpec.isIncludeLargestResourceSize();
+    }
+
+    /**
+     * Converts plain search words, quoted phrases and prefix searches like {@code meet*} into an FTS
+     * match expression. All terms must match, like on the server.
+     *
+     * @return The match expression, an empty string if there are no search words or {@code null}, if
+     * the words use grammar the local index doesn't understand, e.g. {@code tag:} or negations.
+     */
+    @Nullable
+    public static String toMatchQuery(@Nullable String words) {
+        if (words == null) {
+            return "";
+        }
+
+        List<String> terms = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < words.length(); i++) {
+            char c = words.charAt(i);
+            if (c == '"') {
+                if (quoted || term.length() == 0) {
+                    addTerm(terms, term);
+                    quoted = !quoted;
+                    continue;
+                }
+            }
+            if (Character.isWhitespace(c) && !quoted) {
+                addTerm(terms, term);
+                continue;
+            }
+            if (c == '"') {
+                // a quote inside of a term
+                return null;
+            }
+            term.append(c);
+        }
+
+        if (quoted) {
+            return null;
+        }
+        addTerm(terms, term);
+
+        StringBuilder builder = new StringBuilder();
+        for (String value : terms) {
+            boolean prefix = value.endsWith("*");
+            if (prefix) {
+                value = value.substring(0, value.length() - 1);
+            }
+            if (value.isEmpty() || value.startsWith("-") || value.indexOf(':') >= 0 || value.indexOf('*') >= 0) {
+                return null;
+            }
+
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append('"').append(value).append(prefix ? "*\"" : "\"");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The column and direction to sort the notes or {@code null}, if the order isn't stored
+     * locally.
+     */
+    @Nullable
+    public static String getOrderColumn(NoteFilter noteFilter) {
+        if (!noteFilter.isSetOrder()) {
+            return null;
+        }
+
+        String column;
+        NoteSortOrder order = NoteSortOrder.findByValue(noteFilter.getOrder());
+        if (order == null) {
+            return null;
+        }
+        switch (order) {
+            case CREATED:
+                column = "n.created";
+                break;
+            case UPDATED:
+                column = "n.updated";
+                break;
+            case TITLE:
+                column = "n.title COLLATE NOCASE";
+                break;
+            case UPDATE_SEQUENCE_NUMBER:
+                column = "n.usn";
+                break;
+            default:
+                // relevance is computed by the server
+                return null;
+        }
+        return column + (noteFilter.isAscending() ? " ASC" : " DESC");
+    }
+
+    private static void addTerm(List<String> terms, StringBuilder term) {
+        String value = term.toString().trim();
+        if (!value.isEmpty()) {
+            terms.add(value);
+        }
+        term.setLength(0);
+    }
+}
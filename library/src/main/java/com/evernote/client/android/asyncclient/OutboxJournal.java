@@ -0,0 +1,435 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+
+import com.evernote.client.android.helper.Cat;
+import com.evernote.client.conn.mobile.FileData;
+import com.evernote.client.conn.mobile.TStreamTransport;
+import com.evernote.edam.type.Data;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Resource;
+import com.evernote.thrift.TException;
+import com.evernote.thrift.protocol.TBinaryProtocol;
+import com.evernote.thrift.protocol.TProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The files of the {@link EvernoteOutbox}. Each entry is stored in its own journal file named after
+ * its id, which defines the replay order. Resources backed by a {@link FileData} are copied into the
+ * directory. This class isn't thread safe, the outbox synchronizes all calls.
+ */
+/*package*/ final class OutboxJournal {
+
+    private static final Cat CAT = new Cat("OutboxJournal");
+
+    private static final int VERSION = 1;
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String RESOURCE_SUFFIX = ".res";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final LinkedList<Entry> mEntries;
+
+    private boolean mLoaded;
+    private long mNextId;
+
+    /*package*/ OutboxJournal(@NonNull File directory) {
+        mDirectory = directory;
+        mEntries = new LinkedList<>();
+    }
+
+    /**
+     * @return The pending entries in their replay order. The list must not be modified.
+     */
+    /*package*/ LinkedList<Entry> getEntries() throws IOException {
+        ensureLoaded();
+        return mEntries;
+    }
+
+    /*package*/ Entry append(String url, String authenticationToken, EvernoteBulkWriter.Operation operation) throws IOException {
+        ensureLoaded();
+        Entry entry = writeEntry(mNextId++, url, authenticationToken, operation);
+        mEntries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Replaces a pending entry and keeps its position in the replay order.
+     */
+    /*package*/ Entry replace(Entry pending, String url, String authenticationToken, EvernoteBulkWriter.Operation operation) throws IOException {
+        ensureLoaded();
+        Entry entry = writeEntry(pending.mId, url, authenticationToken, operation);
+        mEntries.set(mEntries.indexOf(pending), entry);
+        deleteResourceFiles(pending);
+        return entry;
+    }
+
+    /**
+     * Merges a newer update into a pending update of the same note and keeps the position in the
+     * replay order. Updating a note leaves unset fields unchanged, so fields only set by the pending
+     * update must still be sent.
+     */
+    /*package*/ Entry coalesce(Entry pending, String url, String authenticationToken, EvernoteBulkWriter.Operation operation)
+            throws IOException, TException {
+
+        ensureLoaded();
+        if (pending.mType != EvernoteBulkWriter.Type.UPDATE_NOTE || operation.getType() != EvernoteBulkWriter.Type.UPDATE_NOTE) {
+            throw new IllegalArgumentException("only updates can be coalesced");
+        }
+
+        Note merged = readOperation(pending).getNote();
+        mergeNote(merged, operation.getNote());
+        return replace(pending, url, authenticationToken, EvernoteBulkWriter.Operation.updateNote(merged));
+    }
+
+    /**
+     * Copies all fields set in {@code newer} to {@code target}.
+     */
+    /*package*/ static void mergeNote(Note target, Note newer) {
+        if (newer.isSetGuid()) {
+            target.setGuid(newer.getGuid());
+        }
+        if (newer.isSetTitle()) {
+            target.setTitle(newer.getTitle());
+        }
+        if (newer.isSetContent()) {
+            // the hash and length describe the old content
+            target.setContent(newer.getContent());
+            target.unsetContentHash();
+            target.unsetContentLength();
+        }
+        if (newer.isSetContentHash()) {
+            target.setContentHash(newer.getContentHash());
+        }
+        if (newer.isSetContentLength()) {
+            target.setContentLength(newer.getContentLength());
+        }
+        if (newer.isSetCreated()) {
+            target.setCreated(newer.getCreated());
+        }
+        if (newer.isSetUpdated()) {
+            target.setUpdated(newer.getUpdated());
+        }
+        if (newer.isSetDeleted()) {
+            target.setDeleted(newer.getDeleted());
+        }
+        if (newer.isSetActive()) {
+            target.setActive(newer.isActive());
+        }
+        if (newer.isSetUpdateSequenceNum()) {
+            target.setUpdateSequenceNum(newer.getUpdateSequenceNum());
+        }
+        if (newer.isSetNotebookGuid()) {
+            target.setNotebookGuid(newer.getNotebookGuid());
+        }
+        if (newer.isSetTagGuids()) {
+            target.setTagGuids(newer.getTagGuids());
+        }
+        if (newer.isSetResources()) {
+            target.setResources(newer.getResources());
+        }
+        if (newer.isSetAttributes()) {
+            target.setAttributes(newer.getAttributes());
+        }
+        if (newer.isSetTagNames()) {
+            target.setTagNames(newer.getTagNames());
+        }
+    }
+
+    /*package*/ void remove(Entry entry) {
+        mEntries.remove(entry);
+        if (!entry.mFile.delete()) {
+            CAT.w("Could not delete %s", entry.mFile);
+        }
+        deleteResourceFiles(entry);
+    }
+
+    private void deleteResourceFiles(Entry entry) {
+        for (String name : entry.mResourceFiles) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, name).delete();
+        }
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (mLoaded) {
+            return;
+        }
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create directory " + mDirectory);
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Could not read directory " + mDirectory);
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        Set<String> referencedFiles = new HashSet<>();
+        long maxId = -1;
+
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(ENTRY_SUFFIX)) {
+                continue;
+            }
+
+            try {
+                Entry entry = readHeader(file);
+                entries.add(entry);
+                referencedFiles.addAll(entry.mResourceFiles);
+                maxId = Math.max(maxId, entry.mId);
+
+            } catch (IOException | TException | RuntimeException e) {
+                CAT.e(e, "Dropping corrupted journal file %s", file);
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        // left overs from interrupted writes or removed entries
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX) || (name.endsWith(RESOURCE_SUFFIX) && !referencedFiles.contains(name))) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+        Arrays.sort(sorted);
+        mEntries.addAll(Arrays.asList(sorted));
+
+        mNextId = maxId + 1;
+        mLoaded = true;
+    }
+
+    private Entry writeEntry(long id, String url, String authenticationToken, EvernoteBulkWriter.Operation operation) throws IOException {
+        // resource file names are independent of the entry ids, a coalesced entry keeps its id but needs
+        // new files and ids are reused after a restart
+        String writeId = UUID.randomUUID().toString();
+
+        Note note = operation.getNote();
+        List<String> resourceFiles = new ArrayList<>();
+        List<Integer> resourceIndices = new ArrayList<>();
+
+        if (note != null) {
+            note = new Note(note);
+
+            List<Resource> resources = operation.getNote().getResources();
+            for (int i = 0; resources != null && i < resources.size(); i++) {
+                Data data = resources.get(i).getData();
+                if (!(data instanceof FileData) || ((FileData) data).getBodyFile() == null) {
+                    continue;
+                }
+
+                String name = writeId + "-" + i + RESOURCE_SUFFIX;
+                copy(((FileData) data).getBodyFile(), new File(mDirectory, name));
+                resourceFiles.add(name);
+                resourceIndices.add(i);
+
+                // the copy constructor doesn't know the file, only keep the hash and size
+                Data placeholder = new Data();
+                placeholder.setBodyHash(data.getBodyHash());
+                placeholder.setSize(data.getSize());
+                note.getResources().get(i).setData(placeholder);
+            }
+        }
+
+        File tempFile = new File(mDirectory, id + ENTRY_SUFFIX + TEMP_SUFFIX);
+        File file = new File(mDirectory, id + ENTRY_SUFFIX);
+
+        OutputStream outputStream = null;
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(tempFile));
+            TProtocol protocol = new TBinaryProtocol(new TStreamTransport(null, outputStream));
+
+            protocol.writeI32(VERSION);
+            protocol.writeString(operation.getType().name());
+            protocol.writeString(url);
+            protocol.writeString(authenticationToken);
+            protocol.writeString(operation.getGuid() == null ? "" : operation.getGuid());
+            protocol.writeI32(resourceFiles.size());
+            for (int i = 0; i < resourceFiles.size(); i++) {
+                protocol.writeI32(resourceIndices.get(i));
+                protocol.writeString(resourceFiles.get(i));
+            }
+            protocol.writeBool(note != null);
+            if (note != null) {
+                note.write(protocol);
+            }
+            outputStream.flush();
+
+        } catch (TException e) {
+            throw new IOException(e);
+
+        } finally {
+            closeQuietly(outputStream);
+        }
+
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Could not write journal file " + file);
+        }
+
+        return new Entry(id, file, operation.getType(), url, authenticationToken, operation.getGuid(), resourceFiles);
+    }
+
+    private Entry readHeader(File file) throws IOException, TException {
+        InputStream inputStream = null;
+        try {
+            inputStream = new BufferedInputStream(new FileInputStream(file));
+            return readHeader(file, new TBinaryProtocol(new TStreamTransport(inputStream, null)), null);
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    private Entry readHeader(File file, TProtocol protocol, List<Integer> resourceIndices) throws IOException, TException {
+        String name = file.getName();
+        long id = Long.parseLong(name.substring(0, name.length() - ENTRY_SUFFIX.length()));
+
+        int version = protocol.readI32();
+        if (version != VERSION) {
+            throw new IOException("Unknown journal version " + version);
+        }
+
+        EvernoteBulkWriter.Type type = EvernoteBulkWriter.Type.valueOf(protocol.readString());
+        String url = protocol.readString();
+        String authenticationToken = protocol.readString();
+        String guid = protocol.readString();
+
+        int resourceCount = protocol.readI32();
+        List<String> resourceFiles = new ArrayList<>(resourceCount);
+        for (int i = 0; i < resourceCount; i++) {
+            int index = protocol.readI32();
+            if (resourceIndices != null) {
+                resourceIndices.add(index);
+            }
+            resourceFiles.add(protocol.readString());
+        }
+
+        return new Entry(id, file, type, url, authenticationToken, guid.isEmpty() ? null : guid, resourceFiles);
+    }
+
+    /**
+     * Only reads the entry's own files, so it may be called without holding the outbox lock.
+     */
+    /*package*/ EvernoteBulkWriter.Operation readOperation(Entry entry) throws IOException, TException {
+        InputStream inputStream = null;
+        try {
+            inputStream = new BufferedInputStream(new FileInputStream(entry.mFile));
+            TProtocol protocol = new TBinaryProtocol(new TStreamTransport(inputStream, null));
+
+            List<Integer> resourceIndices = new ArrayList<>();
+            readHeader(entry.mFile, protocol, resourceIndices);
+
+            Note note = null;
+            if (protocol.readBool()) {
+                note = new Note();
+                note.read(protocol);
+
+                for (int i = 0; i < resourceIndices.size(); i++) {
+                    File resourceFile = new File(mDirectory, entry.mResourceFiles.get(i));
+                    if (!resourceFile.isFile()) {
+                        throw new IOException("Missing resource file " + resourceFile);
+                    }
+
+                    Resource resource = note.getResources().get(resourceIndices.get(i));
+                    resource.setData(new FileData(resource.getData().getBodyHash(), resourceFile));
+                }
+            }
+
+            switch (entry.mType) {
+                case CREATE_NOTE:
+                    return EvernoteBulkWriter.Operation.createNote(note);
+                case UPDATE_NOTE:
+                    return EvernoteBulkWriter.Operation.updateNote(note);
+                case DELETE_NOTE:
+                    return EvernoteBulkWriter.Operation.deleteNote(entry.mGuid);
+                case EXPUNGE_NOTE:
+                    return EvernoteBulkWriter.Operation.expungeNote(entry.mGuid);
+                default:
+                    throw new IllegalStateException("not implemented");
+            }
+
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            inputStream = new FileInputStream(source);
+            outputStream = new FileOutputStream(target);
+
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+
+        } finally {
+            closeQuietly(inputStream);
+            closeQuietly(outputStream);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /*package*/ static final class Entry implements Comparable<Entry> {
+
+        /*package*/ final long mId;
+        /*package*/ final File mFile;
+        /*package*/ final EvernoteBulkWriter.Type mType;
+        /*package*/ final String mUrl;
+        /*package*/ final String mAuthenticationToken;
+        /*package*/ final String mGuid;
+        /*package*/ final List<String> mResourceFiles;
+
+        private Entry(long id, File file, EvernoteBulkWriter.Type type, String url, String authenticationToken, String guid,
+                      List<String> resourceFiles) {
+            mId = id;
+            mFile = file;
+            mType = type;
+            mUrl = url;
+            mAuthenticationToken = authenticationToken;
+            mGuid = guid;
+            mResourceFiles = Collections.unmodifiableList(resourceFiles);
+        }
+
+        @Override
+        public int compareTo(@NonNull Entry another) {
+            return mId < another.mId ? -1 : (mId == another.mId ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.edam.error.EDAMErrorCode;
+import com.evernote.edam.error.EDAMSystemException;
+import com.evernote.edam.notestore.NoteStore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Routes all calls of a {@link NoteStore.Iface} through an {@link EvernoteRateLimiter}.
+ */
+/*package*/ final class RateLimitedNoteStore implements InvocationHandler {
+
+    /**
+     * These calls are always part of a bulk operation and never use the foreground reserve.
+     */
+    private static final Set<String> BACKGROUND_METHODS = new HashSet<>(Arrays.asList(
+            "getSyncChunk",
+            "getFilteredSyncChunk",
+            "getLinkedNotebookSyncChunk"
+    ));
+
+    public static NoteStore.Iface wrap(@NonNull NoteStore.Iface client, @NonNull EvernoteRateLimiter rateLimiter,
+                                       @NonNull EvernoteRateLimiter.Priority priority) {
+
+        return (NoteStore.Iface) Proxy.newProxyInstance(NoteStore.Iface.class.getClassLoader(), new Class<?>[]{NoteStore.Iface.class},
+                new RateLimitedNoteStore(client, rateLimiter, priority));
+    }
+
+    private final NoteStore.Iface mDelegate;
+    private final EvernoteRateLimiter mRateLimiter;
+    private final EvernoteRateLimiter.Priority mPriority;
+
+    private RateLimitedNoteStore(NoteStore.Iface delegate, EvernoteRateLimiter rateLimiter, EvernoteRateLimiter.Priority priority) {
+        mDelegate = EvernotePreconditions.checkNotNull(delegate);
+        mRateLimiter = EvernotePreconditions.checkNotNull(rateLimiter);
+        mPriority = EvernotePreconditions.checkNotNull(priority);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeDelegate(method, args);
+        }
+
+        mRateLimiter.acquire(BACKGROUND_METHODS.contains(method.getName()) ? EvernoteRateLimiter.Priority.BACKGROUND : mPriority);
+
+        try {
+            Object result = invokeDelegate(method, args);
+            mRateLimiter.onSuccess();
+            return result;
+
+        } catch (EDAMSystemException e) {
+            if (EDAMErrorCode.RATE_LIMIT_REACHED.equals(e.getErrorCode())) {
+                mRateLimiter.onRateLimitReached(e.getRateLimitDuration());
+            }
+            throw e;
+        }
+    }
+
+    private Object invokeDelegate(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(mDelegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
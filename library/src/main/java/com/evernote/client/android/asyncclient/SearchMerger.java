@@ -0,0 +1,260 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.type.LinkedNotebook;
+import com.evernote.edam.type.NoteSortOrder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the sorted notes of several note stores into a single list. Each store is queried page by
+ * page and only while its next note belongs to the requested notes.
+ *
+ * @see EvernoteSearchHelper#executeMerged(EvernoteSearchHelper.Search)
+ */
+/*package*/ class SearchMerger {
+
+    private final NoteFilter mNoteFilter;
+    private final Comparator<NoteMetadata> mComparator;
+    private final NotesMetadataResultSpec mResultSpec;
+    private final boolean mIgnoreExceptions;
+    private final List<Source> mSources;
+
+    /**
+     * @param noteFilter The filter of the search. The order must be {@link NoteSortOrder#CREATED},
+     *                   {@link NoteSortOrder#UPDATED} or {@link NoteSortOrder#TITLE}, if it isn't set,
+     *                   then notes are sorted by {@link NoteSortOrder#UPDATED}.
+     * @param resultSpec The result spec of the search, the sort key of each note is always included.
+     * @param ignoreExceptions Whether a failing note store is skipped.
+     */
+    /*package*/ SearchMerger(@NonNull NoteFilter noteFilter, @NonNull NotesMetadataResultSpec resultSpec, boolean ignoreExceptions) {
+        NoteSortOrder order = noteFilter.isSetOrder() ? NoteSortOrder.findByValue(noteFilter.getOrder()) : NoteSortOrder.UPDATED;
+        if (order == null) {
+            throw new IllegalArgumentException("unknown order " + noteFilter.getOrder());
+        }
+
+        // each note store must sort exactly like the comparator, don't rely on the server's default order
+        mNoteFilter = new NoteFilter(noteFilter);
+        mNoteFilter.setOrder(order.getValue());
+        mNoteFilter.setAscending(noteFilter.isAscending());
+
+        mComparator = createComparator(order, noteFilter.isAscending());
+        mResultSpec = createResultSpec(resultSpec, order);
+        mIgnoreExceptions = ignoreExceptions;
+        mSources = new ArrayList<>();
+    }
+
+    /**
+     * @param notebookGuid The notebook of a linked note store or {@code null} to keep the notebook of
+     *                     the search.
+     * @return A copy of the filter with an explicit order for one note store.
+     */
+    /*package*/ NoteFilter createNoteFilter(@Nullable String notebookGuid) {
+        NoteFilter noteFilter = new NoteFilter(mNoteFilter);
+        if (notebookGuid != null) {
+            noteFilter.setNotebookGuid(notebookGuid);
+        }
+        return noteFilter;
+    }
+
+    /**
+     * @param source The notes of one note store. Sources added first win for equal notes.
+     */
+    /*package*/ void addSource(@NonNull Source source) {
+        source.mIndex = mSources.size();
+        mSources.add(source);
+    }
+
+    /**
+     * @param offset The number of merged notes to skip.
+     * @param maxNotes The position after the last returned note in the merged list.
+     * @param pageSize The maximum number of notes loaded with one call.
+     */
+    /*package*/ EvernoteSearchHelper.MergedResult merge(int offset, int maxNotes, int pageSize) throws Exception {
+        pageSize = Math.max(1, Math.min(pageSize, maxNotes));
+
+        PriorityQueue<Source> queue = new PriorityQueue<>(Math.max(1, mSources.size()), new SourceComparator(mComparator));
+        for (Source source : mSources) {
+            try {
+                if (source.fill(mResultSpec, pageSize)) {
+                    queue.add(source);
+                }
+            } catch (Exception e) {
+                maybeRethrow(e);
+            }
+        }
+
+        EvernoteSearchHelper.MergedResult result = new EvernoteSearchHelper.MergedResult();
+
+        int index = 0;
+        while (index < maxNotes && !queue.isEmpty()) {
+            Source source = queue.poll();
+            NoteMetadata note = source.next();
+            if (index >= offset) {
+                result.add(note, source.mScope, source.mLinkedNotebook);
+            }
+            index++;
+
+            if (index < maxNotes) {
+                try {
+                    // a store never contributes more than the remaining notes
+                    if (source.fill(mResultSpec, Math.min(pageSize, maxNotes - index))) {
+                        queue.add(source);
+                    }
+                } catch (Exception e) {
+                    maybeRethrow(e);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void maybeRethrow(Exception e) throws Exception {
+        if (!mIgnoreExceptions) {
+            throw e;
+        }
+    }
+
+    /*package*/ static Comparator<NoteMetadata> createComparator(NoteSortOrder order, final boolean ascending) {
+        switch (order) {
+            case CREATED:
+                return new Comparator<NoteMetadata>() {
+                    @Override
+                    public int compare(NoteMetadata lhs, NoteMetadata rhs) {
+                        int result = compareLongs(lhs.getCreated(), rhs.getCreated());
+                        return ascending ? result : -result;
+                    }
+                };
+
+            case UPDATED:
+                return new Comparator<NoteMetadata>() {
+                    @Override
+                    public int compare(NoteMetadata lhs, NoteMetadata rhs) {
+                        int result = compareLongs(lhs.getUpdated(), rhs.getUpdated());
+                        return ascending ? result : -result;
+                    }
+                };
+
+            case TITLE:
+                return new Comparator<NoteMetadata>() {
+                    @Override
+                    public int compare(NoteMetadata lhs, NoteMetadata rhs) {
+                        String left = lhs.getTitle() == null ? "" : lhs.getTitle();
+                        String right = rhs.getTitle() == null ? "" : rhs.getTitle();
+                        int result = String.CASE_INSENSITIVE_ORDER.compare(left, right);
+                        return ascending ? result : -result;
+                    }
+                };
+
+            default:
+                throw new IllegalArgumentException("order " + order + " can't be merged across note stores");
+        }
+    }
+
+    private static int compareLongs(long lhs, long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+
+    private static NotesMetadataResultSpec createResultSpec(NotesMetadataResultSpec resultSpec, NoteSortOrder order) {
+        // the merge needs the sort key of each note
+        NotesMetadataResultSpec result = new NotesMetadataResultSpec(resultSpec);
+        if (order == NoteSortOrder.CREATED) {
+            result.setIncludeCreated(true);
+        } else if (order == NoteSortOrder.UPDATED) {
+            result.setIncludeUpdated(true);
+        } else if (order == NoteSortOrder.TITLE) {
+            result.setIncludeTitle(true);
+        }
+        return result;
+    }
+
+    /**
+     * The notes of one note store, which are received page by page.
+     */
+    /*package*/ static class Source {
+
+        private final EvernoteSearchHelper.Scope mScope;
+        private final LinkedNotebook mLinkedNotebook;
+        private final EvernoteNoteStoreClient mClient;
+        private final NoteFilter mNoteFilter;
+
+        private int mIndex;
+        private List<NoteMetadata> mPage;
+        private int mPagePosition;
+        private int mOffset;
+        private int mTotalNotes;
+
+        /**
+         * @param noteFilter The filter created with {@link SearchMerger#createNoteFilter(String)}.
+         */
+        /*package*/ Source(EvernoteSearchHelper.Scope scope, LinkedNotebook linkedNotebook, EvernoteNoteStoreClient client, NoteFilter noteFilter) {
+            mScope = scope;
+            mLinkedNotebook = linkedNotebook;
+            mClient = client;
+            mNoteFilter = noteFilter;
+            mTotalNotes = -1;
+        }
+
+        /**
+         * @return {@code true} if a note is available, loads the next page if necessary.
+         */
+        /*package*/ boolean fill(NotesMetadataResultSpec resultSpec, int maxNotes) throws Exception {
+            if (mPage != null && mPagePosition < mPage.size()) {
+                return true;
+            }
+            if (mTotalNotes >= 0 && mOffset >= mTotalNotes) {
+                return false;
+            }
+
+            NotesMetadataList notesMetadataList = loadPage(mNoteFilter, mOffset, maxNotes, resultSpec);
+            mTotalNotes = notesMetadataList.getTotalNotes();
+            mPage = notesMetadataList.getNotes();
+            mPagePosition = 0;
+            if (mPage == null || mPage.isEmpty()) {
+                mTotalNotes = mOffset;
+                return false;
+            }
+
+            mOffset += mPage.size();
+            return true;
+        }
+
+        protected NotesMetadataList loadPage(NoteFilter noteFilter, int offset, int maxNotes, NotesMetadataResultSpec resultSpec) throws Exception {
+            return mClient.findNotesMetadata(noteFilter, offset, maxNotes, resultSpec);
+        }
+
+        /*package*/ NoteMetadata peek() {
+            return mPage.get(mPagePosition);
+        }
+
+        /*package*/ NoteMetadata next() {
+            return mPage.get(mPagePosition++);
+        }
+    }
+
+    private static final class SourceComparator implements Comparator<Source> {
+
+        private final Comparator<NoteMetadata> mComparator;
+
+        private SourceComparator(Comparator<NoteMetadata> comparator) {
+            mComparator = comparator;
+        }
+
+        @Override
+        public int compare(Source lhs, Source rhs) {
+            int result = mComparator.compare(lhs.peek(), rhs.peek());
+            // keep the order of the scopes for equal notes
+            return result != 0 ? result : (lhs.mIndex < rhs.mIndex ? -1 : (lhs.mIndex == rhs.mIndex ? 0 : 1));
+        }
+    }
+}
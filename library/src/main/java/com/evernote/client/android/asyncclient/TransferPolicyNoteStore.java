@@ -0,0 +1,44 @@
+package com.evernote.client.android.asyncclient;
+
+import android.support.annotation.NonNull;
+
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.edam.notestore.NoteStore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Rejects calls of a {@link NoteStore.Iface}, which the {@link EvernoteTransferPolicy} doesn't allow
+ * on the current network, before they're sent.
+ */
+/*package*/ final class TransferPolicyNoteStore implements InvocationHandler {
+
+    public static NoteStore.Iface wrap(@NonNull NoteStore.Iface client, @NonNull EvernoteTransferPolicy transferPolicy) {
+        return (NoteStore.Iface) Proxy.newProxyInstance(NoteStore.Iface.class.getClassLoader(), new Class<?>[]{NoteStore.Iface.class},
+                new TransferPolicyNoteStore(client, transferPolicy));
+    }
+
+    private final NoteStore.Iface mDelegate;
+    private final EvernoteTransferPolicy mTransferPolicy;
+
+    private TransferPolicyNoteStore(NoteStore.Iface delegate, EvernoteTransferPolicy transferPolicy) {
+        mDelegate = EvernotePreconditions.checkNotNull(delegate);
+        mTransferPolicy = EvernotePreconditions.checkNotNull(transferPolicy);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() != Object.class) {
+            mTransferPolicy.checkAllowed(EvernoteTransferPolicy.classify(method.getName(), args));
+        }
+
+        try {
+            return method.invoke(mDelegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
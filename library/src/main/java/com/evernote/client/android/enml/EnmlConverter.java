@@ -0,0 +1,535 @@
+package com.evernote.client.android.enml;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Xml;
+
+import com.evernote.client.android.asyncclient.EvernoteHtmlHelper;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Converts ENML note content into HTML or plain text on the device. The content is read with a pull
+ * parser and written while it's parsed, the memory usage doesn't depend on the size of the note.
+ * Combined with locally cached note content and resources this avoids downloading the rendered note
+ * with {@link EvernoteHtmlHelper}.
+ *
+ * <br>
+ * <br>
+ *
+ * {@code en-media} elements are resolved with a {@link MediaResolver}, e.g. a
+ * {@link DirectoryMediaResolver} pointing to the directory, which contains the resource files.
+ *
+ * <br>
+ * <br>
+ *
+ * Note content isn't trusted. The HTML output only contains elements and attributes allowed in
+ * ENML, links and images are restricted to a few URL schemes and styles can't load anything.
+ */
+@SuppressWarnings("unused")
+public class EnmlConverter {
+
+    private static final Set<String> VOID_ELEMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "area", "br", "col", "hr", "img"
+    )));
+
+    private static final Set<String> BLOCK_ELEMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "address", "blockquote", "br", "caption", "center", "dd", "div", "dl", "dt", "h1", "h2", "h3", "h4", "h5", "h6",
+            "hr", "li", "ol", "p", "pre", "table", "tr", "ul", "xmp"
+    )));
+
+    /**
+     * The attributes of the ENML DTD, event handlers, {@code id} and {@code class} aren't allowed.
+     */
+    private static final Set<String> ALLOWED_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "abbr", "align", "alt", "axis", "bgcolor", "border", "cellpadding", "cellspacing", "char", "charoff", "charset",
+            "checked", "cite", "clear", "color", "colspan", "compact", "coords", "datetime", "dir", "face", "frame", "hash",
+            "headers", "height", "href", "hreflang", "hspace", "lang", "longdesc", "name", "nohref", "noshade", "nowrap",
+            "rel", "rev", "rowspan", "rules", "scope", "shape", "size", "span", "src", "start", "style", "summary", "target",
+            "title", "type", "usemap", "valign", "value", "vspace", "width", "xml:lang"
+    )));
+
+    private static final Set<String> URL_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "cite", "href", "longdesc", "src", "usemap"
+    )));
+
+    private static final Set<String> ALLOWED_SCHEMES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "evernote", "http", "https", "mailto"
+    )));
+
+    /**
+     * HTML entities, which are valid in ENML because of the DTD, but unknown to a non validating parser.
+     */
+    private static final String[][] ENTITIES = {
+            {"nbsp", "\u00a0"}, {"iexcl", "\u00a1"}, {"cent", "\u00a2"}, {"pound", "\u00a3"}, {"curren", "\u00a4"},
+            {"yen", "\u00a5"}, {"brvbar", "\u00a6"}, {"sect", "\u00a7"}, {"uml", "\u00a8"}, {"copy", "\u00a9"},
+            {"ordf", "\u00aa"}, {"laquo", "\u00ab"}, {"not", "\u00ac"}, {"shy", "\u00ad"}, {"reg", "\u00ae"},
+            {"macr", "\u00af"}, {"deg", "\u00b0"}, {"plusmn", "\u00b1"}, {"sup2", "\u00b2"}, {"sup3", "\u00b3"},
+            {"acute", "\u00b4"}, {"micro", "\u00b5"}, {"para", "\u00b6"}, {"middot", "\u00b7"}, {"cedil", "\u00b8"},
+            {"sup1", "\u00b9"}, {"ordm", "\u00ba"}, {"raquo", "\u00bb"}, {"frac14", "\u00bc"}, {"frac12", "\u00bd"},
+            {"frac34", "\u00be"}, {"iquest", "\u00bf"}, {"times", "\u00d7"}, {"divide", "\u00f7"}, {"ndash", "\u2013"},
+            {"mdash", "\u2014"}, {"lsquo", "\u2018"}, {"rsquo", "\u2019"}, {"sbquo", "\u201a"}, {"ldquo", "\u201c"},
+            {"rdquo", "\u201d"}, {"bdquo", "\u201e"}, {"dagger", "\u2020"}, {"Dagger", "\u2021"}, {"bull", "\u2022"},
+            {"hellip", "\u2026"}, {"permil", "\u2030"}, {"lsaquo", "\u2039"}, {"rsaquo", "\u203a"}, {"euro", "\u20ac"},
+            {"trade", "\u2122"}, {"larr", "\u2190"}, {"uarr", "\u2191"}, {"rarr", "\u2192"}, {"darr", "\u2193"},
+            {"ensp", "\u2002"}, {"emsp", "\u2003"}, {"thinsp", "\u2009"}, {"zwnj", "\u200c"}, {"zwj", "\u200d"}
+    };
+
+    private final MediaResolver mMediaResolver;
+
+    /**
+     * @param mediaResolver Resolves {@code en-media} elements. May be {@code null}, then images are
+     *                      omitted in the HTML output.
+     */
+    public EnmlConverter(@Nullable MediaResolver mediaResolver) {
+        mMediaResolver = mediaResolver;
+    }
+
+    /**
+     * Writes an HTML fragment. The {@code en-note} element becomes a {@code div}.
+     *
+     * @param enml The ENML note content. The reader isn't closed.
+     * @param html The target of the HTML. The writer is flushed, but not closed.
+     */
+    public void toHtml(@NonNull Reader enml, @NonNull Writer html) throws IOException {
+        XmlPullParser parser = createParser(enml);
+        try {
+            for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                switch (event) {
+                    case XmlPullParser.START_TAG:
+                        writeHtmlStartTag(parser, html);
+                        break;
+
+                    case XmlPullParser.END_TAG:
+                        writeHtmlEndTag(parser.getName(), html);
+                        break;
+
+                    case XmlPullParser.TEXT:
+                        writeEscaped(parser.getText(), html);
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+
+        } catch (XmlPullParserException e) {
+            throw new IOException(e);
+        }
+
+        html.flush();
+    }
+
+    /**
+     * @see #toHtml(Reader, Writer)
+     */
+    public void toHtml(@NonNull InputStream enml, @NonNull OutputStream html) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(html, "UTF-8"));
+        toHtml(new BufferedReader(new InputStreamReader(enml, "UTF-8")), writer);
+    }
+
+    /**
+     * Writes the text of the note. Block elements end with a line break, check boxes are written as
+     * {@code [ ]} or {@code [x]} and other media as its MIME type in brackets.
+     *
+     * @param enml The ENML note content. The reader isn't closed.
+     * @param text The target of the text. The writer is flushed, but not closed.
+     */
+    public void toPlainText(@NonNull Reader enml, @NonNull Writer text) throws IOException {
+        XmlPullParser parser = createParser(enml);
+        PlainTextWriter writer = new PlainTextWriter(text);
+
+        try {
+            for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                switch (event) {
+                    case XmlPullParser.START_TAG:
+                        String name = parser.getName();
+                        if ("pre".equals(name) || "xmp".equals(name)) {
+                            writer.mPreformatted++;
+                        } else if ("li".equals(name)) {
+                            writer.lineBreak();
+                            writer.write("- ");
+                        } else if ("en-todo".equals(name)) {
+                            writer.write("true".equalsIgnoreCase(parser.getAttributeValue(null, "checked")) ? "[x] " : "[ ] ");
+                        } else if ("en-media".equals(name)) {
+                            writer.write("[" + parser.getAttributeValue(null, "type") + "]");
+                        } else if ("en-crypt".equals(name)) {
+                            writer.write("[encrypted]");
+                            skipElement(parser);
+                        } else if ("td".equals(name) || "th".equals(name)) {
+                            writer.space();
+                        }
+                        break;
+
+                    case XmlPullParser.END_TAG:
+                        String endName = parser.getName();
+                        if ("pre".equals(endName) || "xmp".equals(endName)) {
+                            writer.mPreformatted--;
+                        }
+                        if (BLOCK_ELEMENTS.contains(endName)) {
+                            writer.lineBreak();
+                        }
+                        break;
+
+                    case XmlPullParser.TEXT:
+                        writer.text(parser.getText());
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+
+        } catch (XmlPullParserException e) {
+            throw new IOException(e);
+        }
+
+        text.flush();
+    }
+
+    /**
+     * @see #toPlainText(Reader, Writer)
+     */
+    public void toPlainText(@NonNull InputStream enml, @NonNull OutputStream text) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(text, "UTF-8"));
+        toPlainText(new BufferedReader(new InputStreamReader(enml, "UTF-8")), writer);
+    }
+
+    protected XmlPullParser createParser(Reader reader) throws IOException {
+        try {
+            XmlPullParser parser = newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            parser.setInput(reader);
+            for (String[] entity : ENTITIES) {
+                parser.defineEntityReplacementText(entity[0], entity[1]);
+            }
+            return parser;
+
+        } catch (XmlPullParserException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /*package*/ XmlPullParser newPullParser() throws XmlPullParserException {
+        return Xml.newPullParser();
+    }
+
+    private void writeHtmlStartTag(XmlPullParser parser, Writer html) throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        if (!EnmlWriter.ALLOWED_ELEMENTS.contains(name) && !"en-note".equals(name)) {
+            // e.g. script or iframe, the content isn't shown either
+            skipElement(parser);
+            return;
+        }
+
+        switch (name) {
+            case "en-note":
+                writeStartTag("div", parser, html, false);
+                break;
+
+            case "en-todo":
+                boolean checked = "true".equalsIgnoreCase(parser.getAttributeValue(null, "checked"));
+                html.write(checked ? "<input type=\"checkbox\" disabled=\"disabled\" checked=\"checked\"/>"
+                        : "<input type=\"checkbox\" disabled=\"disabled\"/>");
+                break;
+
+            case "en-crypt":
+                html.write("<span>[encrypted]</span>");
+                skipElement(parser);
+                break;
+
+            case "en-media":
+                writeMedia(parser, html);
+                break;
+
+            default:
+                writeStartTag(name, parser, html, VOID_ELEMENTS.contains(name));
+                break;
+        }
+    }
+
+    private void writeHtmlEndTag(String name, Writer html) throws IOException {
+        switch (name) {
+            case "en-note":
+                html.write("</div>");
+                break;
+
+            case "en-todo":
+            case "en-crypt":
+            case "en-media":
+                break;
+
+            default:
+                if (!VOID_ELEMENTS.contains(name)) {
+                    html.write("</");
+                    html.write(name);
+                    html.write('>');
+                }
+                break;
+        }
+    }
+
+    private void writeMedia(XmlPullParser parser, Writer html) throws IOException {
+        String hash = parser.getAttributeValue(null, "hash");
+        String type = parser.getAttributeValue(null, "type");
+        // the hash is used as file name by resolvers, anything but an MD5 hash could escape the directory
+        String url = mMediaResolver == null || !isValidHash(hash) ? null : mMediaResolver.resolve(hash, type);
+        if (url == null) {
+            return;
+        }
+
+        if (type != null && type.startsWith("image/")) {
+            html.write("<img src=\"");
+            writeEscaped(url, html);
+            html.write('"');
+            writeAttributes(parser, html, "hash", "type");
+            html.write("/>");
+
+        } else {
+            html.write("<a href=\"");
+            writeEscaped(url, html);
+            html.write("\">");
+            writeEscaped(type == null ? url : type, html);
+            html.write("</a>");
+        }
+    }
+
+    private void writeStartTag(String name, XmlPullParser parser, Writer html, boolean empty) throws IOException {
+        html.write('<');
+        html.write(name);
+        writeAttributes(parser, html);
+        html.write(empty ? "/>" : ">");
+    }
+
+    private void writeAttributes(XmlPullParser parser, Writer html, String... skipped) throws IOException {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            String name = parser.getAttributeName(i).toLowerCase(Locale.US);
+            if (!ALLOWED_ATTRIBUTES.contains(name) || Arrays.asList(skipped).contains(name)) {
+                continue;
+            }
+
+            String value = parser.getAttributeValue(i);
+            if (URL_ATTRIBUTES.contains(name) && !isAllowedUrl(value)) {
+                continue;
+            }
+            if ("style".equals(name) && !isAllowedStyle(value)) {
+                continue;
+            }
+
+            html.write(' ');
+            html.write(name);
+            html.write("=\"");
+            writeEscaped(value, html);
+            html.write('"');
+        }
+    }
+
+    /**
+     * @return {@code true}, if the URL is relative or uses one of the {@link #ALLOWED_SCHEMES}.
+     */
+    /*package*/ static boolean isAllowedUrl(String url) {
+        // browsers ignore white space and control characters in the scheme, e.g. "java\tscript:"
+        StringBuilder scheme = new StringBuilder();
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                return ALLOWED_SCHEMES.contains(scheme.toString().toLowerCase(Locale.US));
+            } else if (c == '/' || c == '?' || c == '#') {
+                return true;
+            } else if (c > ' ') {
+                scheme.append(c);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true}, if the value is a hexadecimal MD5 hash with 32 characters.
+     */
+    /*package*/ static boolean isValidHash(String hashHex) {
+        if (hashHex == null || hashHex.length() != 32) {
+            return false;
+        }
+        for (int i = 0; i < hashHex.length(); i++) {
+            char c = hashHex.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f') && (c < 'A' || c > 'F')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code false}, if the style could load a resource or run a script.
+     */
+    /*package*/ static boolean isAllowedStyle(String style) {
+        StringBuilder normalized = new StringBuilder(style.length());
+        for (int i = 0; i < style.length(); i++) {
+            char c = style.charAt(i);
+            if (c > ' ') {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+
+        // escapes and comments could hide the keywords
+        String value = normalized.toString();
+        return !value.contains("url(") && !value.contains("expression(") && !value.contains("javascript:")
+                && !value.contains("@import") && !value.contains("\\") && !value.contains("/*");
+    }
+
+    private static void skipElement(XmlPullParser parser) throws IOException, XmlPullParserException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = parser.next();
+            if (event == XmlPullParser.START_TAG) {
+                depth++;
+            } else if (event == XmlPullParser.END_TAG) {
+                depth--;
+            } else if (event == XmlPullParser.END_DOCUMENT) {
+                return;
+            }
+        }
+    }
+
+    private static void writeEscaped(String text, Writer writer) throws IOException {
+        int runStart = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String replacement;
+            switch (text.charAt(i)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                default:
+                    continue;
+            }
+
+            writer.write(text, runStart, i - runStart);
+            writer.write(replacement);
+            runStart = i + 1;
+        }
+        writer.write(text, runStart, text.length() - runStart);
+    }
+
+    /**
+     * Collapses white space outside of preformatted elements and avoids duplicate line breaks.
+     */
+    private static final class PlainTextWriter {
+
+        private final Writer mWriter;
+        private int mPreformatted;
+        private boolean mLineStart = true;
+        private boolean mPendingSpace;
+
+        private PlainTextWriter(Writer writer) {
+            mWriter = writer;
+        }
+
+        private void text(String text) throws IOException {
+            if (mPreformatted > 0) {
+                write(text);
+                mLineStart = text.endsWith("\n");
+                return;
+            }
+
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    mPendingSpace = !mLineStart;
+                } else {
+                    if (mPendingSpace) {
+                        mWriter.write(' ');
+                        mPendingSpace = false;
+                    }
+                    mWriter.write(c);
+                    mLineStart = false;
+                }
+            }
+        }
+
+        private void write(String text) throws IOException {
+            if (mPendingSpace) {
+                mWriter.write(' ');
+                mPendingSpace = false;
+            }
+            mWriter.write(text);
+            mLineStart = false;
+        }
+
+        private void space() {
+            mPendingSpace = !mLineStart;
+        }
+
+        private void lineBreak() throws IOException {
+            mPendingSpace = false;
+            if (!mLineStart) {
+                mWriter.write('\n');
+                mLineStart = true;
+            }
+        }
+    }
+
+    /**
+     * Resolves the resources referenced by {@code en-media} elements to local URLs.
+     */
+    public interface MediaResolver {
+        /**
+         * @param hashHex The body hash of the resource as hexadecimal string with 32 characters.
+         * @param mimeType The MIME type of the resource, may be {@code null}.
+         * @return The URL of the locally available resource or {@code null}, if it isn't available.
+         */
+        @Nullable
+        String resolve(@NonNull String hashHex, @Nullable String mimeType);
+    }
+
+    /**
+     * Resolves resources to files in one directory, which are named after the hexadecimal body hash.
+     */
+    public static class DirectoryMediaResolver implements MediaResolver {
+
+        private final File mDirectory;
+
+        /**
+         * @param directory The directory containing the resource files.
+         */
+        public DirectoryMediaResolver(@NonNull File directory) {
+            mDirectory = directory;
+        }
+
+        @Nullable
+        @Override
+        public String resolve(@NonNull String hashHex, @Nullable String mimeType) {
+            if (!isValidHash(hashHex)) {
+                return null;
+            }
+            File file = new File(mDirectory, hashHex);
+            return file.isFile() ? Uri.fromFile(file).toString() : null;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.evernote.client.android.enml;
+
+import android.support.annotation.NonNull;
+
+import com.evernote.client.android.EvernoteUtil;
+import com.evernote.client.conn.mobile.FileData;
+import com.evernote.edam.type.Data;
+import com.evernote.edam.type.Resource;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Writes ENML note content directly into a {@link Writer} or {@link OutputStream}, e.g. a
+ * {@link com.evernote.client.conn.mobile.ByteStore} or a file. Text and attribute values are
+ * escaped while they're written, no intermediate strings of the whole content are created.
+ *
+ * <br>
+ * <br>
+ *
+ * In validating mode the writer rejects elements, which aren't allowed in ENML, prohibited
+ * attributes like {@code id}, {@code class} or event handlers and wrongly nested calls. The checks
+ * only look at the current element, this is much cheaper than parsing the result against the DTD.
+ *
+ * <pre class="prettyprint">
+ * StringWriter content = new StringWriter();
+ * new EnmlWriter(content)
+ *         .startNote()
+ *         .startElement("p").text(userInput).endElement()
+ *         .media(resource)
+ *         .endNote();
+ *
+ * note.setContent(content.toString());
+ * </pre>
+ */
+@SuppressWarnings("unused")
+public class EnmlWriter implements Closeable, Flushable {
+
+    /*package*/ static final Set<String> ALLOWED_ELEMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "a", "abbr", "acronym", "address", "area", "b", "bdo", "big", "blockquote", "br", "caption", "center", "cite", "code",
+            "col", "colgroup", "dd", "del", "dfn", "div", "dl", "dt", "em", "en-crypt", "en-media", "en-todo", "font", "h1", "h2",
+            "h3", "h4", "h5", "h6", "hr", "i", "img", "ins", "kbd", "li", "map", "ol", "p", "pre", "q", "s", "samp", "small", "span",
+            "strike", "strong", "sub", "sup", "table", "tbody", "td", "tfoot", "th", "thead", "title", "tr", "tt", "u", "ul", "var",
+            "xmp"
+    )));
+
+    private static final Set<String> PROHIBITED_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "id", "class", "accesskey", "data", "dynsrc", "tabindex"
+    )));
+
+    private static final int TEXT_BUFFER_SIZE = 8 * 1024;
+
+    private final Writer mWriter;
+    private final boolean mValidating;
+    private final List<String> mOpenElements;
+
+    private boolean mNoteStarted;
+    private boolean mNoteEnded;
+    private boolean mStartTagOpen;
+    private char[] mTextBuffer;
+
+    /**
+     * Creates a validating writer.
+     *
+     * @param writer The target of the ENML content.
+     */
+    public EnmlWriter(@NonNull Writer writer) {
+        this(writer, true);
+    }
+
+    /**
+     * @param writer The target of the ENML content.
+     * @param validating If {@code true}, then invalid ENML throws an {@link IllegalArgumentException}.
+     */
+    public EnmlWriter(@NonNull Writer writer, boolean validating) {
+        mWriter = writer;
+        mValidating = validating;
+        mOpenElements = new ArrayList<>();
+    }
+
+    /**
+     * @param outputStream The target of the UTF-8 encoded ENML content.
+     * @param validating If {@code true}, then invalid ENML throws an {@link IllegalArgumentException}.
+     */
+    public EnmlWriter(@NonNull OutputStream outputStream, boolean validating) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8")), validating);
+    }
+
+    /**
+     * Writes the XML declaration, the doctype and the {@code en-note} start tag.
+     */
+    public EnmlWriter startNote() throws IOException {
+        if (mNoteStarted) {
+            throw new IllegalStateException("note already started");
+        }
+        mNoteStarted = true;
+        mWriter.write(EvernoteUtil.NOTE_PREFIX);
+        return this;
+    }
+
+    /**
+     * Closes all open elements and writes the {@code en-note} end tag. The underlying writer is
+     * flushed, but not closed.
+     */
+    public EnmlWriter endNote() throws IOException {
+        checkInNote();
+        while (!mOpenElements.isEmpty()) {
+            endElement();
+        }
+
+        mWriter.write(EvernoteUtil.NOTE_SUFFIX);
+        mWriter.flush();
+        mNoteEnded = true;
+        return this;
+    }
+
+    /**
+     * @param name The element's name, e.g. {@code div}.
+     */
+    public EnmlWriter startElement(@NonNull String name) throws IOException {
+        checkInNote();
+        if (mValidating && !ALLOWED_ELEMENTS.contains(name)) {
+            throw new IllegalArgumentException("element not allowed in ENML: " + name);
+        }
+
+        closeStartTag();
+        mWriter.write('<');
+        mWriter.write(name);
+        mOpenElements.add(name);
+        mStartTagOpen = true;
+        return this;
+    }
+
+    /**
+     * Adds an attribute to the element, which was started last. Must be called before any content
+     * of the element is written.
+     *
+     * @param name The attribute's name.
+     * @param value The unescaped value.
+     */
+    public EnmlWriter attribute(@NonNull String name, @NonNull CharSequence value) throws IOException {
+        if (!mStartTagOpen) {
+            throw new IllegalStateException("attributes must follow startElement()");
+        }
+        if (mValidating) {
+            checkAttributeName(name);
+        }
+
+        mWriter.write(' ');
+        mWriter.write(name);
+        mWriter.write("=\"");
+        writeEscaped(value, 0, value.length(), true);
+        mWriter.write('"');
+        return this;
+    }
+
+    /**
+     * Ends the element, which was started last. Elements without content are written as empty tags.
+     */
+    public EnmlWriter endElement() throws IOException {
+        checkInNote();
+        if (mOpenElements.isEmpty()) {
+            throw new IllegalStateException("no open element");
+        }
+
+        String name = mOpenElements.remove(mOpenElements.size() - 1);
+        if (mStartTagOpen) {
+            mWriter.write("/>");
+            mStartTagOpen = false;
+        } else {
+            mWriter.write("</");
+            mWriter.write(name);
+            mWriter.write('>');
+        }
+        return this;
+    }
+
+    /**
+     * Writes escaped text.
+     *
+     * @param text The unescaped text.
+     */
+    public EnmlWriter text(@NonNull CharSequence text) throws IOException {
+        checkInNote();
+        closeStartTag();
+        writeEscaped(text, 0, text.length(), false);
+        return this;
+    }
+
+    /**
+     * Streams escaped text from the reader with a small constant buffer. The reader isn't closed.
+     *
+     * @param reader The source of the unescaped text.
+     */
+    public EnmlWriter text(@NonNull Reader reader) throws IOException {
+        checkInNote();
+        closeStartTag();
+
+        if (mTextBuffer == null) {
+            mTextBuffer = new char[TEXT_BUFFER_SIZE];
+        }
+
+        int read;
+        while ((read = reader.read(mTextBuffer)) != -1) {
+            writeEscaped(CharBuffer.wrap(mTextBuffer, 0, read), 0, read, false);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a {@code br} element.
+     */
+    public EnmlWriter lineBreak() throws IOException {
+        return startElement("br").endElement();
+    }
+
+    /**
+     * Writes an {@code en-media} element referencing the resource.
+     *
+     * @param resource The resource, which must contain the data's body hash and the MIME type.
+     */
+    public EnmlWriter media(@NonNull Resource resource) throws IOException {
+        Data data = resource.getData();
+        String hash = data instanceof FileData ? ((FileData) data).getBodyHashHex() : EvernoteUtil.bytesToHex(data.getBodyHash());
+        return media(hash, resource.getMime());
+    }
+
+    /**
+     * @param hashHex The body hash of the resource as hexadecimal string.
+     * @param mimeType The resource's MIME type.
+     */
+    public EnmlWriter media(@NonNull String hashHex, @NonNull String mimeType) throws IOException {
+        return startElement("en-media").attribute("hash", hashHex).attribute("type", mimeType).endElement();
+    }
+
+    /**
+     * Writes an {@code en-todo} check box.
+     *
+     * @param checked Whether the check box is checked.
+     */
+    public EnmlWriter todo(boolean checked) throws IOException {
+        return startElement("en-todo").attribute("checked", checked ? "true" : "false").endElement();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mWriter.flush();
+    }
+
+    /**
+     * Closes the underlying writer. If the note wasn't ended yet, then {@link #endNote()} is called first.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mNoteStarted && !mNoteEnded) {
+                endNote();
+            }
+        } finally {
+            mWriter.close();
+        }
+    }
+
+    private void checkInNote() {
+        if (!mNoteStarted) {
+            throw new IllegalStateException("startNote() wasn't called");
+        }
+        if (mNoteEnded) {
+            throw new IllegalStateException("note already ended");
+        }
+    }
+
+    private void checkAttributeName(String name) {
+        String lowerCase = name.toLowerCase(Locale.US);
+        if (PROHIBITED_ATTRIBUTES.contains(lowerCase) || lowerCase.startsWith("on")) {
+            throw new IllegalArgumentException("attribute not allowed in ENML: " + name);
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+                    || (i > 0 && ((c >= '0' && c <= '9') || c == '-' || c == '.'));
+            if (!valid) {
+                throw new IllegalArgumentException("invalid attribute name: " + name);
+            }
+        }
+    }
+
+    private void closeStartTag() throws IOException {
+        if (mStartTagOpen) {
+            mWriter.write('>');
+            mStartTagOpen = false;
+        }
+    }
+
+    /**
+     * Writes unescaped runs in one call and replaces characters, which must be escaped. Control
+     * characters, which are invalid in XML, are dropped.
+     */
+    private void writeEscaped(CharSequence text, int start, int end, boolean attribute) throws IOException {
+        int runStart = start;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+
+            String replacement;
+            switch (c) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = attribute ? "&quot;" : null;
+                    break;
+                case '\t':
+                case '\n':
+                case '\r':
+                    replacement = null;
+                    break;
+                default:
+                    replacement = c < 0x20 ? "" : null;
+                    break;
+            }
+
+            if (replacement != null) {
+                if (i > runStart) {
+                    mWriter.append(text, runStart, i);
+                }
+                mWriter.write(replacement);
+                runStart = i + 1;
+            }
+        }
+
+        if (end > runStart) {
+            mWriter.append(text, runStart, end);
+        }
+    }
+}
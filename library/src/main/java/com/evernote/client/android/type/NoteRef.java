@@ -18,7 +18,8 @@ import com.evernote.edam.type.Note;
 import com.evernote.edam.type.Notebook;
 import com.evernote.thrift.TException;
 
-import java.util.List;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * A reference to a note on the server. This class provides several helper methods to receive the note
@@ -134,6 +135,9 @@ public class NoteRef implements Parcelable {
 
         if (mLinked) {
             LinkedNotebook linkedNotebook = NoteRefHelper.getLinkedNotebook(mNotebookGuid);
+            if (linkedNotebook == null) {
+                return null;
+            }
             return NoteRefHelper.getSession().getEvernoteClientFactory().getLinkedNotebookHelper(linkedNotebook).getCorrespondingNotebook();
         }
 
@@ -154,19 +158,82 @@ public class NoteRef implements Parcelable {
             return null;
         }
 
-        EvernoteNoteStoreClient noteStore = NoteRefHelper.getSession().getEvernoteClientFactory().getNoteStoreClient();
-        if (noteStore == null) {
-            return null;
-        }
+        return NoteRefHelper.getLinkedNotebook(mNotebookGuid);
+    }
 
-        List<LinkedNotebook> linkedNotebooks = noteStore.listLinkedNotebooks();
-        for (LinkedNotebook linkedNotebook : linkedNotebooks) {
-            if (linkedNotebook.getGuid().equals(mNotebookGuid)) {
-                return linkedNotebook;
-            }
+    /**
+     * Loads the notes of all references. The references are grouped by their note store, personal
+     * notes, business notes and the notes of each linked notebook, and the stores are queried in
+     * parallel. Each linked notebook is only resolved once.
+     *
+     * @param noteRefs The references of the notes, which should be loaded.
+     * @param withContent If {@code true} the returned notes contain their content.
+     * @param withResourcesData If {@code true} the returned notes contain their resources.
+     * @param withResourcesRecognition If {@code true} the returned notes contain in their resources
+     *                                 the recognition data.
+     * @param withResourcesAlternateData If {@code true} the returned notes contain in their resources
+     *                                   the alternate data.
+     * @return The loaded notes in the order of the given references. References of deleted notes or
+     * of linked notebooks, which aren't available anymore, are missing.
+     * @see #loadNote(boolean, boolean, boolean, boolean)
+     */
+    public static Map<NoteRef, Note> loadNotes(@NonNull Collection<? extends NoteRef> noteRefs, boolean withContent, boolean withResourcesData,
+                                               boolean withResourcesRecognition, boolean withResourcesAlternateData)
+            throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException, InterruptedException {
+
+        return NoteRefHelper.loadNotes(noteRefs, withContent, withResourcesData, withResourcesRecognition, withResourcesAlternateData);
+    }
+
+    /**
+     * @return The notes from the server without their content or resources.
+     * @see #loadNotes(Collection, boolean, boolean, boolean, boolean)
+     */
+    public static Map<NoteRef, Note> loadNotesPartial(@NonNull Collection<? extends NoteRef> noteRefs)
+            throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException, InterruptedException {
+
+        return loadNotes(noteRefs, false, false, false, false);
+    }
+
+    /**
+     * Loads the notebooks of all references. Each notebook is only loaded once, no matter how many
+     * references point to it. Multiple personal notebooks are loaded with a single call, linked
+     * notebooks are loaded in parallel.
+     *
+     * @param noteRefs The references, whose notebooks should be loaded.
+     * @return The notebooks mapped by the {@link #getNotebookGuid() notebook GUID} of the references.
+     * For linked notes the value is the corresponding notebook of the linked notebook. Notebooks, which
+     * couldn't be found, are missing.
+     * @see #loadNotebook()
+     */
+    public static Map<String, Notebook> loadNotebooks(@NonNull Collection<? extends NoteRef> noteRefs)
+            throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException, InterruptedException {
+
+        return NoteRefHelper.loadNotebooks(noteRefs);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
         }
 
-        return null;
+        NoteRef noteRef = (NoteRef) o;
+        return mLinked == noteRef.mLinked
+                && mNoteGuid.equals(noteRef.mNoteGuid)
+                && (mNotebookGuid != null ? mNotebookGuid.equals(noteRef.mNotebookGuid) : noteRef.mNotebookGuid == null)
+                && (mTitle != null ? mTitle.equals(noteRef.mTitle) : noteRef.mTitle == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mNoteGuid.hashCode();
+        result = 31 * result + (mNotebookGuid != null ? mNotebookGuid.hashCode() : 0);
+        result = 31 * result + (mTitle != null ? mTitle.hashCode() : 0);
+        result = 31 * result + (mLinked ? 1 : 0);
+        return result;
     }
 
     @Override
@@ -0,0 +1,401 @@
+package com.evernote.client.android.type;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.asyncclient.EvernoteSearchHelper;
+import com.squareup.okhttp.internal.Util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for lists of {@link NoteRef}s. Notebook GUIDs are only written once per
+ * list, all lengths and indices are varints and all strings are UTF-8 encoded. A list of notes in a
+ * single notebook needs roughly the bytes of the note GUIDs and titles.
+ *
+ * <br>
+ * <br>
+ *
+ * {@link #writeList(OutputStream, List)} and {@link #readList(InputStream)} write and read a single
+ * list without any header, they're the building block for other formats like
+ * {@link EvernoteSearchHelper.Result#writeTo(OutputStream)}. {@link #encode(List)} and
+ * {@link #writeToFile(File, List)} add a header with a version, so that persisted lists can be
+ * restored after an app update, e.g. to show the last search result immediately after the process
+ * was killed.
+ */
+@SuppressWarnings("unused")
+public final class NoteRefCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x4e52; // NR
+    private static final int VERSION = 1;
+
+    private NoteRefCodec() {
+        // no op
+    }
+
+    /**
+     * @param noteRefs The references, which should be encoded.
+     * @return The references with a header.
+     * @see #decode(byte[])
+     */
+    @NonNull
+    public static byte[] encode(@NonNull List<? extends NoteRef> noteRefs) {
+        Encoder encoder = new Encoder(64 + noteRefs.size() * 64);
+        encoder.writeHeader();
+        encoder.writeList(noteRefs);
+        return encoder.toByteArray();
+    }
+
+    /**
+     * @param data The bytes created by {@link #encode(List)}.
+     * @return The decoded references.
+     * @throws IOException If the data is corrupted or was written by an unknown version.
+     */
+    @NonNull
+    public static NoteRefList decode(@NonNull byte[] data) throws IOException {
+        Decoder decoder = new Decoder(data, 0, data.length);
+        decoder.readHeader();
+        NoteRefList result = decoder.readList();
+        decoder.checkConsumed();
+        return result;
+    }
+
+    /**
+     * Writes the references without a header. The list is prefixed with its length in bytes.
+     *
+     * @param out The target stream, it isn't closed.
+     * @param noteRefs The references, which should be written.
+     * @see #readList(InputStream)
+     */
+    public static void writeList(@NonNull OutputStream out, @Nullable List<? extends NoteRef> noteRefs) throws IOException {
+        Encoder body = new Encoder(16 + (noteRefs == null ? 0 : noteRefs.size() * 64));
+        if (noteRefs == null) {
+            body.writeVarint(0);
+        } else {
+            body.writeVarint(1);
+            body.writeList(noteRefs);
+        }
+
+        Encoder prefix = new Encoder(5);
+        prefix.writeVarint(body.mSize);
+        out.write(prefix.mBuffer, 0, prefix.mSize);
+        out.write(body.mBuffer, 0, body.mSize);
+    }
+
+    /**
+     * @param in The source stream, it isn't closed.
+     * @return The references written by {@link #writeList(OutputStream, List)}, {@code null} if
+     * {@code null} was written.
+     */
+    @Nullable
+    public static NoteRefList readList(@NonNull InputStream in) throws IOException {
+        int length = readVarint(in);
+        byte[] data = new byte[length];
+        readFully(in, data);
+
+        Decoder decoder = new Decoder(data, 0, length);
+        NoteRefList result = decoder.readVarint() == 0 ? null : decoder.readList();
+        decoder.checkConsumed();
+        return result;
+    }
+
+    /**
+     * Writes the references to a temporary file first, which then replaces the given file. If the
+     * write fails, then the old file is still intact.
+     *
+     * @param file The target file.
+     * @param noteRefs The references, which should be persisted.
+     * @see #readFromFile(File)
+     */
+    public static void writeToFile(@NonNull File file, @NonNull List<? extends NoteRef> noteRefs) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("could not create directory " + parent);
+        }
+
+        byte[] data = encode(noteRefs);
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            out.write(data);
+            out.flush();
+        } finally {
+            Util.closeQuietly(out);
+        }
+
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("could not write " + file);
+        }
+    }
+
+    /**
+     * @param file The file written by {@link #writeToFile(File, List)}.
+     * @return The persisted references or {@code null}, if the file doesn't exist.
+     * @throws IOException If the file couldn't be read or is corrupted.
+     */
+    @Nullable
+    public static NoteRefList readFromFile(@NonNull File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("file too large " + file);
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] data = new byte[(int) length];
+            readFully(in, data);
+            return decode(data);
+        } finally {
+            Util.closeQuietly(in);
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] data) throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            int read = in.read(data, offset, data.length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    /*package*/ static final class Encoder {
+
+        private byte[] mBuffer;
+        private int mSize;
+
+        /*package*/ Encoder(int capacity) {
+            mBuffer = new byte[Math.max(capacity, 16)];
+        }
+
+        private void ensureCapacity(int additional) {
+            if (mSize + additional > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mSize + additional));
+            }
+        }
+
+        /*package*/ void writeHeader() {
+            writeVarint(MAGIC);
+            writeVarint(VERSION);
+        }
+
+        /*package*/ void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7f) != 0) {
+                mBuffer[mSize++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mSize++] = (byte) value;
+        }
+
+        /*package*/ void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, mBuffer, mSize, bytes.length);
+            mSize += bytes.length;
+        }
+
+        /*package*/ void writeNullableString(String value) {
+            if (value == null) {
+                writeVarint(0);
+            } else {
+                byte[] bytes = value.getBytes(UTF_8);
+                writeVarint(bytes.length + 1);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, mBuffer, mSize, bytes.length);
+                mSize += bytes.length;
+            }
+        }
+
+        /*package*/ void writeList(List<? extends NoteRef> noteRefs) {
+            int size = noteRefs.size();
+
+            // collect the distinct notebooks first, the notes only store an index
+            Map<String, Integer> notebookPool = new HashMap<>();
+            int[] notebookIndices = new int[size];
+            for (int i = 0; i < size; i++) {
+                String notebookGuid = getNotebookGuid(noteRefs, i);
+                if (notebookGuid == null) {
+                    notebookIndices[i] = -1;
+                } else {
+                    Integer index = notebookPool.get(notebookGuid);
+                    if (index == null) {
+                        index = notebookPool.size();
+                        notebookPool.put(notebookGuid, index);
+                    }
+                    notebookIndices[i] = index;
+                }
+            }
+
+            String[] notebookGuids = new String[notebookPool.size()];
+            for (Map.Entry<String, Integer> entry : notebookPool.entrySet()) {
+                notebookGuids[entry.getValue()] = entry.getKey();
+            }
+
+            writeVarint(size);
+            writeVarint(notebookGuids.length);
+            for (String notebookGuid : notebookGuids) {
+                writeString(notebookGuid);
+            }
+
+            for (int i = 0; i < size; i++) {
+                boolean linked = isLinked(noteRefs, i);
+                writeVarint(((notebookIndices[i] + 1) << 1) | (linked ? 1 : 0));
+                writeString(getGuid(noteRefs, i));
+                writeNullableString(getTitle(noteRefs, i));
+            }
+        }
+
+        /*package*/ byte[] toByteArray() {
+            return Arrays.copyOf(mBuffer, mSize);
+        }
+
+        // avoid creating a NoteRef for each entry of a NoteRefList
+
+        private static String getGuid(List<? extends NoteRef> noteRefs, int index) {
+            return noteRefs instanceof NoteRefList ? ((NoteRefList) noteRefs).getGuid(index) : noteRefs.get(index).getGuid();
+        }
+
+        private static String getNotebookGuid(List<? extends NoteRef> noteRefs, int index) {
+            return noteRefs instanceof NoteRefList ? ((NoteRefList) noteRefs).getNotebookGuid(index) : noteRefs.get(index).getNotebookGuid();
+        }
+
+        private static String getTitle(List<? extends NoteRef> noteRefs, int index) {
+            return noteRefs instanceof NoteRefList ? ((NoteRefList) noteRefs).getTitle(index) : noteRefs.get(index).getTitle();
+        }
+
+        private static boolean isLinked(List<? extends NoteRef> noteRefs, int index) {
+            return noteRefs instanceof NoteRefList ? ((NoteRefList) noteRefs).isLinked(index) : noteRefs.get(index).isLinked();
+        }
+    }
+
+    /*package*/ static final class Decoder {
+
+        private final byte[] mData;
+        private final int mLimit;
+        private int mPosition;
+
+        /*package*/ Decoder(byte[] data, int offset, int length) {
+            mData = data;
+            mPosition = offset;
+            mLimit = offset + length;
+        }
+
+        /*package*/ void readHeader() throws IOException {
+            if (readVarint() != MAGIC) {
+                throw new IOException("not a note reference list");
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IOException("unknown version " + version);
+            }
+        }
+
+        /*package*/ int readVarint() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (mPosition >= mLimit) {
+                    throw new EOFException();
+                }
+                int b = mData[mPosition++];
+                result |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("malformed varint");
+        }
+
+        /*package*/ String readString() throws IOException {
+            return readString(readVarint());
+        }
+
+        /*package*/ String readNullableString() throws IOException {
+            int length = readVarint();
+            return length == 0 ? null : readString(length - 1);
+        }
+
+        private String readString(int length) throws IOException {
+            if (length < 0 || length > mLimit - mPosition) {
+                throw new EOFException();
+            }
+            String result = new String(mData, mPosition, length, UTF_8);
+            mPosition += length;
+            return result;
+        }
+
+        /*package*/ NoteRefList readList() throws IOException {
+            int size = readVarint();
+            int notebookCount = readVarint();
+            if (size < 0 || notebookCount < 0 || size > mLimit - mPosition) {
+                // every note needs at least two bytes, a huge size means corrupted data
+                throw new IOException("malformed list");
+            }
+
+            String[] notebookGuids = new String[notebookCount];
+            for (int i = 0; i < notebookCount; i++) {
+                notebookGuids[i] = readString();
+            }
+
+            NoteRefList.Builder builder = new NoteRefList.Builder(size);
+            for (int i = 0; i < size; i++) {
+                int flags = readVarint();
+                int notebookIndex = (flags >>> 1) - 1;
+                if (notebookIndex >= notebookCount) {
+                    throw new IOException("malformed notebook index " + notebookIndex);
+                }
+
+                String guid = readString();
+                String title = readNullableString();
+                builder.add(guid, notebookIndex < 0 ? null : notebookGuids[notebookIndex], title, (flags & 1) != 0);
+            }
+            return builder.build();
+        }
+
+        /*package*/ void checkConsumed() throws IOException {
+            if (mPosition != mLimit) {
+                throw new IOException("unexpected trailing data");
+            }
+        }
+    }
+}
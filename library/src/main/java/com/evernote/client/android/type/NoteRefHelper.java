@@ -1,23 +1,44 @@
 package com.evernote.client.android.type;
 
+import android.support.annotation.NonNull;
+
 import com.evernote.client.android.EvernoteSession;
+import com.evernote.client.android.asyncclient.EvernoteLinkedNotebookCache;
 import com.evernote.client.android.asyncclient.EvernoteNoteStoreClient;
 import com.evernote.edam.error.EDAMNotFoundException;
 import com.evernote.edam.error.EDAMSystemException;
 import com.evernote.edam.error.EDAMUserException;
 import com.evernote.edam.type.LinkedNotebook;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Notebook;
 import com.evernote.thrift.TException;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author rwondratschek
  */
 /*package*/ final class NoteRefHelper {
 
-    private static final Map<String, LinkedNotebook> LINKED_NOTEBOOK_CACHE = new HashMap<>();
+    private static final int MAX_PARALLELISM = 4;
+
+    private static ExecutorService sExecutorService;
 
     private NoteRefHelper() {
         // no op
@@ -39,16 +60,291 @@ import java.util.Map;
     }
 
     public static LinkedNotebook getLinkedNotebook(String notebookGuid) throws EDAMUserException, EDAMSystemException, TException, EDAMNotFoundException {
-        if (LINKED_NOTEBOOK_CACHE.containsKey(notebookGuid)) {
-            return LINKED_NOTEBOOK_CACHE.get(notebookGuid);
+        return getSession().getEvernoteClientFactory().getLinkedNotebookCache().get(notebookGuid);
+    }
+
+    public static Map<NoteRef, Note> loadNotes(Collection<? extends NoteRef> noteRefs, final boolean withContent, final boolean withResourcesData,
+                                               final boolean withResourcesRecognition, final boolean withResourcesAlternateData)
+            throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException, InterruptedException {
+
+        final Groups groups = group(noteRefs, getSession().getEvernoteClientFactory().getLinkedNotebookCache());
+        final Map<NoteRef, Note> notes = new ConcurrentHashMap<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        // each task gets the factory of the thread it runs on, the factories and their clients aren't thread safe
+        if (!groups.mPersonal.isEmpty()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    loadNotes(getSession().getEvernoteClientFactory().getNoteStoreClient(), groups.mPersonal, notes, withContent,
+                            withResourcesData, withResourcesRecognition, withResourcesAlternateData);
+                    return null;
+                }
+            });
+        }
+
+        if (!groups.mBusiness.isEmpty()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    loadNotes(getSession().getEvernoteClientFactory().getBusinessNotebookHelper().getClient(), groups.mBusiness, notes,
+                            withContent, withResourcesData, withResourcesRecognition, withResourcesAlternateData);
+                    return null;
+                }
+            });
         }
 
-        List<LinkedNotebook> linkedNotebooks = getSession().getEvernoteClientFactory().getNoteStoreClient().listLinkedNotebooks();
-        for (LinkedNotebook linkedNotebook : linkedNotebooks) {
-            LINKED_NOTEBOOK_CACHE.put(linkedNotebook.getGuid(), linkedNotebook);
+        for (final Map.Entry<String, List<NoteRef>> entry : groups.mLinked.entrySet()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    LinkedNotebook linkedNotebook = groups.mLinkedNotebooks.get(entry.getKey());
+                    loadNotes(getSession().getEvernoteClientFactory().getLinkedNotebookHelper(linkedNotebook).getClient(), entry.getValue(),
+                            notes, withContent, withResourcesData, withResourcesRecognition, withResourcesAlternateData);
+                    return null;
+                }
+            });
         }
 
-        return LINKED_NOTEBOOK_CACHE.get(notebookGuid);
+        invokeAll(tasks);
+
+        Map<NoteRef, Note> result = new LinkedHashMap<>();
+        for (NoteRef noteRef : noteRefs) {
+            Note note = notes.get(noteRef);
+            if (note != null) {
+                result.put(noteRef, note);
+            }
+        }
+        return result;
+    }
+
+    private static void loadNotes(EvernoteNoteStoreClient client, List<NoteRef> noteRefs, Map<NoteRef, Note> target, boolean withContent,
+                                  boolean withResourcesData, boolean withResourcesRecognition, boolean withResourcesAlternateData)
+            throws EDAMUserException, EDAMSystemException, TException {
+
+        for (NoteRef noteRef : noteRefs) {
+            try {
+                target.put(noteRef, client.getNote(noteRef.getGuid(), withContent, withResourcesData, withResourcesRecognition, withResourcesAlternateData));
+            } catch (EDAMNotFoundException ignored) {
+                // the note was deleted in the meantime
+            }
+        }
+    }
+
+    public static Map<String, Notebook> loadNotebooks(Collection<? extends NoteRef> noteRefs)
+            throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException, InterruptedException {
+
+        final Set<String> personalNotebookGuids = new LinkedHashSet<>();
+        Map<String, LinkedNotebook> linkedNotebooks = new LinkedHashMap<>();
+        EvernoteLinkedNotebookCache linkedNotebookCache = getSession().getEvernoteClientFactory().getLinkedNotebookCache();
+
+        for (NoteRef noteRef : noteRefs) {
+            String notebookGuid = noteRef.getNotebookGuid();
+            if (notebookGuid == null) {
+                continue;
+            }
+
+            if (!noteRef.isLinked()) {
+                personalNotebookGuids.add(notebookGuid);
+
+            } else if (!linkedNotebooks.containsKey(notebookGuid)) {
+                // resolved once for all notes in the same linked notebook
+                linkedNotebooks.put(notebookGuid, linkedNotebookCache.get(notebookGuid));
+            }
+        }
+
+        final Map<String, Notebook> notebooks = new ConcurrentHashMap<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        if (!personalNotebookGuids.isEmpty()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    EvernoteNoteStoreClient client = getSession().getEvernoteClientFactory().getNoteStoreClient();
+                    if (personalNotebookGuids.size() == 1) {
+                        String notebookGuid = personalNotebookGuids.iterator().next();
+                        try {
+                            notebooks.put(notebookGuid, client.getNotebook(notebookGuid));
+                        } catch (EDAMNotFoundException ignored) {
+                            // the notebook was deleted in the meantime
+                        }
+
+                    } else {
+                        // a single call for all notebooks is cheaper than one call per notebook
+                        for (Notebook notebook : client.listNotebooks()) {
+                            if (personalNotebookGuids.contains(notebook.getGuid())) {
+                                notebooks.put(notebook.getGuid(), notebook);
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        for (final Map.Entry<String, LinkedNotebook> entry : linkedNotebooks.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        notebooks.put(entry.getKey(), getSession().getEvernoteClientFactory().getLinkedNotebookHelper(entry.getValue())
+                                .getCorrespondingNotebook());
+                    } catch (EDAMNotFoundException ignored) {
+                        // the notebook isn't shared anymore
+                    }
+                    return null;
+                }
+            });
+        }
+
+        invokeAll(tasks);
+
+        Map<String, Notebook> result = new LinkedHashMap<>();
+        for (String notebookGuid : personalNotebookGuids) {
+            Notebook notebook = notebooks.get(notebookGuid);
+            if (notebook != null) {
+                result.put(notebookGuid, notebook);
+            }
+        }
+        for (String notebookGuid : linkedNotebooks.keySet()) {
+            Notebook notebook = notebooks.get(notebookGuid);
+            if (notebook != null) {
+                result.put(notebookGuid, notebook);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits the references by their note store. Personal notes, all business notes and each linked
+     * notebook use their own note store. Duplicates and notes of unknown linked notebooks are dropped.
+     */
+    /*package*/ static Groups group(Collection<? extends NoteRef> noteRefs, EvernoteLinkedNotebookCache linkedNotebookCache)
+            throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException {
+
+        Groups groups = new Groups();
+
+        for (NoteRef noteRef : new LinkedHashSet<>(noteRefs)) {
+            if (!noteRef.isLinked()) {
+                groups.mPersonal.add(noteRef);
+                continue;
+            }
+
+            LinkedNotebook linkedNotebook = noteRef.getNotebookGuid() == null ? null : linkedNotebookCache.get(noteRef.getNotebookGuid());
+            if (linkedNotebook == null) {
+                continue;
+            }
+
+            // same check as EvernoteBusinessNotebookHelper.isBusinessNotebook()
+            if (linkedNotebook.isSetBusinessId()) {
+                groups.mBusiness.add(noteRef);
+            } else {
+                List<NoteRef> group = groups.mLinked.get(noteRef.getNotebookGuid());
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.mLinked.put(noteRef.getNotebookGuid(), group);
+                    groups.mLinkedNotebooks.put(noteRef.getNotebookGuid(), linkedNotebook);
+                }
+                group.add(noteRef);
+            }
+        }
+
+        return groups;
+    }
+
+    /**
+     * Runs the tasks in parallel on a shared pool, the first task runs on the calling thread. The
+     * tasks must get their clients from the factory of the thread they're running on.
+     */
+    /*package*/ static void invokeAll(List<Callable<Void>> tasks)
+            throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException, InterruptedException {
+
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        List<Future<Void>> futures = new ArrayList<>();
+        try {
+            if (tasks.size() > 1) {
+                ExecutorService executorService = getExecutorService();
+                for (Callable<Void> task : tasks.subList(1, tasks.size())) {
+                    futures.add(executorService.submit(task));
+                }
+            }
+
+            try {
+                tasks.get(0).call();
+            } catch (Exception e) {
+                throw rethrow(e);
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw rethrow(e.getCause());
+                }
+            }
+
+        } finally {
+            // the pool is shared, only stop the remaining tasks of this call
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutorService() {
+        if (sExecutorService == null) {
+            ThreadPoolExecutor executorService = new ThreadPoolExecutor(MAX_PARALLELISM, MAX_PARALLELISM, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "NoteRefLoader-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executorService.allowCoreThreadTimeOut(true);
+            sExecutorService = executorService;
+        }
+        return sExecutorService;
+    }
+
+    private static RuntimeException rethrow(Throwable throwable)
+            throws EDAMUserException, EDAMSystemException, EDAMNotFoundException, TException, InterruptedException {
+
+        if (throwable instanceof EDAMUserException) {
+            throw (EDAMUserException) throwable;
+        } else if (throwable instanceof EDAMSystemException) {
+            throw (EDAMSystemException) throwable;
+        } else if (throwable instanceof EDAMNotFoundException) {
+            throw (EDAMNotFoundException) throwable;
+        } else if (throwable instanceof TException) {
+            throw (TException) throwable;
+        } else if (throwable instanceof InterruptedException) {
+            throw (InterruptedException) throwable;
+        } else if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        throw new IllegalStateException(throwable);
+    }
+
+    /*package*/ static final class Groups {
+
+        /*package*/ final List<NoteRef> mPersonal = new ArrayList<>();
+        /*package*/ final List<NoteRef> mBusiness = new ArrayList<>();
+        /*package*/ final Map<String, List<NoteRef>> mLinked = new LinkedHashMap<>();
+        /*package*/ final Map<String, LinkedNotebook> mLinkedNotebooks = new LinkedHashMap<>();
     }
 
     public static EvernoteSession getSession() {
@@ -0,0 +1,224 @@
+package com.evernote.client.android.type;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.asyncclient.EvernoteSearchHelper;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of {@link NoteRef}s, which stores the values of all references in parallel
+ * arrays instead of one object per note. Notebook GUIDs are shared, the same GUID is only stored
+ * once. {@link #get(int)} creates the {@link NoteRef} on demand, the single values can be read
+ * without creating any object with {@link #getGuid(int)}, {@link #getTitle(int)},
+ * {@link #getNotebookGuid(int)} and {@link #isLinked(int)}.
+ *
+ * <br>
+ * <br>
+ *
+ * The list itself is {@link Parcelable}, it's parceled as a single byte array created by
+ * {@link NoteRefCodec}, which is much cheaper than parceling each reference.
+ *
+ * @see EvernoteSearchHelper.Result#getAllAsNoteRef()
+ */
+@SuppressWarnings("unused")
+public final class NoteRefList extends AbstractList<NoteRef> implements RandomAccess, Parcelable {
+
+    private static final NoteRefList EMPTY = new Builder(0).build();
+
+    private final String[] mGuids;
+    private final String[] mTitles;
+    private final int[] mNotebookIndices;
+    private final String[] mNotebookGuids;
+    private final boolean[] mLinked;
+
+    private NoteRefList(String[] guids, String[] titles, int[] notebookIndices, String[] notebookGuids, boolean[] linked) {
+        mGuids = guids;
+        mTitles = titles;
+        mNotebookIndices = notebookIndices;
+        mNotebookGuids = notebookGuids;
+        mLinked = linked;
+    }
+
+    /**
+     * @return An empty list.
+     */
+    public static NoteRefList empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param noteRefs The references to copy.
+     * @return The given collection, if it's already a {@link NoteRefList}, otherwise a copy.
+     */
+    public static NoteRefList copyOf(@NonNull Collection<? extends NoteRef> noteRefs) {
+        if (noteRefs instanceof NoteRefList) {
+            return (NoteRefList) noteRefs;
+        }
+
+        Builder builder = new Builder(noteRefs.size());
+        for (NoteRef noteRef : noteRefs) {
+            builder.add(noteRef);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return mGuids.length;
+    }
+
+    /**
+     * @return A new reference with the values at this position.
+     */
+    @Override
+    public NoteRef get(int location) {
+        return new NoteRef(mGuids[location], getNotebookGuid(location), mTitles[location], mLinked[location]);
+    }
+
+    /**
+     * @see NoteRef#getGuid()
+     */
+    @NonNull
+    public String getGuid(int location) {
+        return mGuids[location];
+    }
+
+    /**
+     * @see NoteRef#getTitle()
+     */
+    public String getTitle(int location) {
+        return mTitles[location];
+    }
+
+    /**
+     * @see NoteRef#getNotebookGuid()
+     */
+    @Nullable
+    public String getNotebookGuid(int location) {
+        int index = mNotebookIndices[location];
+        return index < 0 ? null : mNotebookGuids[index];
+    }
+
+    /**
+     * @see NoteRef#isLinked()
+     */
+    public boolean isLinked(int location) {
+        return mLinked[location];
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        // a single array instead of one native call per string
+        dest.writeByteArray(NoteRefCodec.encode(this));
+    }
+
+    public static final Creator<NoteRefList> CREATOR = new Creator<NoteRefList>() {
+        @Override
+        public NoteRefList createFromParcel(final Parcel source) {
+            try {
+                return NoteRefCodec.decode(source.createByteArray());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public NoteRefList[] newArray(final int size) {
+            return new NoteRefList[size];
+        }
+    };
+
+    /**
+     * Collects the values for a {@link NoteRefList}.
+     */
+    public static final class Builder {
+
+        private final Map<String, Integer> mNotebookPool;
+
+        private String[] mGuids;
+        private String[] mTitles;
+        private int[] mNotebookIndices;
+        private String[] mNotebookGuids;
+        private boolean[] mLinked;
+        private int mSize;
+
+        /**
+         * @param expectedSize The number of references, which are going to be added. The builder
+         *                     grows, if more references are added.
+         */
+        public Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 0);
+            mGuids = new String[capacity];
+            mTitles = new String[capacity];
+            mNotebookIndices = new int[capacity];
+            mLinked = new boolean[capacity];
+            mNotebookGuids = new String[4];
+            mNotebookPool = new HashMap<>();
+        }
+
+        public Builder add(@NonNull NoteRef noteRef) {
+            return add(noteRef.getGuid(), noteRef.getNotebookGuid(), noteRef.getTitle(), noteRef.isLinked());
+        }
+
+        public Builder add(@NonNull String noteGuid, @Nullable String notebookGuid, String title, boolean linked) {
+            if (mSize == mGuids.length) {
+                int capacity = Math.max(16, mSize * 2);
+                mGuids = Arrays.copyOf(mGuids, capacity);
+                mTitles = Arrays.copyOf(mTitles, capacity);
+                mNotebookIndices = Arrays.copyOf(mNotebookIndices, capacity);
+                mLinked = Arrays.copyOf(mLinked, capacity);
+            }
+
+            mGuids[mSize] = noteGuid;
+            mTitles[mSize] = title;
+            mNotebookIndices[mSize] = getNotebookIndex(notebookGuid);
+            mLinked[mSize] = linked;
+            mSize++;
+            return this;
+        }
+
+        public Builder addAll(@NonNull NoteRefList noteRefList) {
+            for (int i = 0; i < noteRefList.size(); i++) {
+                add(noteRefList.mGuids[i], noteRefList.getNotebookGuid(i), noteRefList.mTitles[i], noteRefList.mLinked[i]);
+            }
+            return this;
+        }
+
+        private int getNotebookIndex(String notebookGuid) {
+            if (notebookGuid == null) {
+                return -1;
+            }
+
+            Integer index = mNotebookPool.get(notebookGuid);
+            if (index == null) {
+                index = mNotebookPool.size();
+                if (index == mNotebookGuids.length) {
+                    mNotebookGuids = Arrays.copyOf(mNotebookGuids, index * 2);
+                }
+                mNotebookGuids[index] = notebookGuid;
+                mNotebookPool.put(notebookGuid, index);
+            }
+            return index;
+        }
+
+        public NoteRefList build() {
+            return new NoteRefList(Arrays.copyOf(mGuids, mSize), Arrays.copyOf(mTitles, mSize), Arrays.copyOf(mNotebookIndices, mSize),
+                    Arrays.copyOf(mNotebookGuids, mNotebookPool.size()), Arrays.copyOf(mLinked, mSize));
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.evernote.client.android.type;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import com.evernote.client.android.asyncclient.EvernoteClientFactory;
+import com.evernote.client.android.asyncclient.EvernoteHtmlHelper;
+import com.evernote.client.android.asyncclient.EvernoteNoteStoreClient;
+import com.evernote.client.android.asyncclient.EvernoteRateLimiter;
+import com.evernote.client.android.asyncclient.EvernoteTransferPolicy;
+import com.evernote.client.android.helper.Cat;
+import com.evernote.client.android.helper.EvernotePreconditions;
+import com.evernote.edam.error.EDAMNotFoundException;
+import com.evernote.edam.type.LinkedNotebook;
+import com.evernote.edam.type.Note;
+import com.squareup.okhttp.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads the notes of a scrolling list before the user opens them. Call
+ * {@link #onWindowChanged(List, int, int, boolean)} whenever the visible items change. The prefetcher
+ * then loads the visible notes and the next notes in scroll direction on a single low priority
+ * thread and keeps them in a memory cache. Prefetches of notes, which left the window, are dropped
+ * before they start.
+ *
+ * <br>
+ * <br>
+ *
+ * Open a note with {@link #getHtml(NoteRef)} or {@link #getNote(NoteRef)}. They return the cached
+ * value, wait for a prefetch, which is already running, or load the note immediately.
+ *
+ * <br>
+ * <br>
+ *
+ * The cache never exceeds its memory budget. Prefetching stops for the rest of the minute, if the
+ * bandwidth budget is used up, and if the {@link EvernoteTransferPolicy} of the client factory doesn't
+ * allow optional transfers, e.g. on a metered network.
+ */
+@SuppressWarnings("unused")
+public class NoteRefPrefetcher {
+
+    private static final Cat CAT = new Cat("NoteRefPrefetcher");
+
+    public static final int DEFAULT_PREFETCH_COUNT = 5;
+
+    private static final long BUDGET_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Defines which representation of the notes is prefetched.
+     */
+    public enum Target {
+        /**
+         * The note as HTML, see {@link EvernoteHtmlHelper}.
+         */
+        HTML,
+
+        /**
+         * The note with its ENML content, but without resources.
+         */
+        NOTE
+    }
+
+    private final Target mTarget;
+    private final int mPrefetchCount;
+    private final LruCache<String, Object> mCache;
+    private final Map<String, PrefetchTask> mPendingTasks;
+    private final ExecutorService mExecutorService;
+
+    private long mBandwidthBudget;
+    private long mBudgetIntervalStart;
+    private long mBudgetUsed;
+
+    /**
+     * @param target The representation, which is prefetched.
+     * @param prefetchCount How many notes ahead of the visible window are prefetched.
+     * @param maxCacheBytes The memory budget of the cache in bytes.
+     */
+    public NoteRefPrefetcher(@NonNull Target target, int prefetchCount, int maxCacheBytes) {
+        mTarget = EvernotePreconditions.checkNotNull(target);
+        mPrefetchCount = EvernotePreconditions.checkArgumentNonnegative(prefetchCount, "negative value");
+        mBandwidthBudget = Long.MAX_VALUE;
+        mPendingTasks = new HashMap<>();
+
+        mCache = new LruCache<String, Object>(EvernotePreconditions.checkArgumentPositive(maxCacheBytes, "maxCacheBytes must be positive")) {
+            @Override
+            protected int sizeOf(String key, Object value) {
+                return estimateSize(value);
+            }
+        };
+
+        mExecutorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "NoteRefPrefetcher");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param bytesPerMinute The maximum number of bytes prefetched per minute. Notes loaded with
+     *                       {@link #getHtml(NoteRef)} or {@link #getNote(NoteRef)} don't count.
+     *                       {@code 0} disables prefetching.
+     */
+    public synchronized NoteRefPrefetcher setBandwidthBudget(long bytesPerMinute) {
+        mBandwidthBudget = EvernotePreconditions.checkArgumentNonnegative(bytesPerMinute, "negative value");
+        return this;
+    }
+
+    /**
+     * Updates the window of visible notes. Pending prefetches outside of the new window are dropped,
+     * missing notes are scheduled, the visible notes first and then the next notes in scroll direction.
+     *
+     * @param noteRefs All notes of the list.
+     * @param firstVisible The position of the first visible note.
+     * @param visibleCount The number of visible notes.
+     * @param forward {@code true} if the user scrolls towards the end of the list.
+     */
+    public void onWindowChanged(@NonNull List<? extends NoteRef> noteRefs, int firstVisible, int visibleCount, boolean forward) {
+        List<NoteRef> window = new ArrayList<>();
+
+        int start = Math.max(firstVisible, 0);
+        int end = Math.min(firstVisible + visibleCount, noteRefs.size());
+        for (int i = start; i < end; i++) {
+            window.add(noteRefs.get(i));
+        }
+
+        if (forward) {
+            for (int i = end; i < Math.min(end + mPrefetchCount, noteRefs.size()); i++) {
+                window.add(noteRefs.get(i));
+            }
+        } else {
+            for (int i = start - 1; i >= Math.max(start - mPrefetchCount, 0); i--) {
+                window.add(noteRefs.get(i));
+            }
+        }
+
+        boolean allowed = isPrefetchAllowed();
+
+        synchronized (this) {
+            Set<String> keys = new HashSet<>();
+            for (NoteRef noteRef : window) {
+                keys.add(getKey(mTarget, noteRef));
+            }
+
+            Iterator<Map.Entry<String, PrefetchTask>> iterator = mPendingTasks.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, PrefetchTask> entry = iterator.next();
+                if ((!allowed || !keys.contains(entry.getKey())) && entry.getValue().claim()) {
+                    // not started yet, it won't run anymore
+                    entry.getValue().finish();
+                    iterator.remove();
+                }
+            }
+
+            if (!allowed || mExecutorService.isShutdown()) {
+                return;
+            }
+
+            for (NoteRef noteRef : window) {
+                String key = getKey(mTarget, noteRef);
+                if (mCache.get(key) != null || mPendingTasks.containsKey(key)) {
+                    continue;
+                }
+
+                PrefetchTask task = new PrefetchTask(key, noteRef);
+                mPendingTasks.put(key, task);
+                mExecutorService.execute(task);
+            }
+        }
+    }
+
+    /**
+     * @param noteRef The note, which should be opened.
+     * @return The note as HTML or {@code null}, if the server didn't return the note.
+     */
+    @Nullable
+    public String getHtml(@NonNull NoteRef noteRef) throws Exception {
+        return (String) get(Target.HTML, noteRef);
+    }
+
+    /**
+     * @param noteRef The note, which should be opened.
+     * @return The note with its content, but without resources.
+     */
+    public Note getNote(@NonNull NoteRef noteRef) throws Exception {
+        return (Note) get(Target.NOTE, noteRef);
+    }
+
+    /**
+     * @return The cached value or {@code null}, if the note wasn't loaded yet. Never blocks.
+     */
+    @Nullable
+    public Object peek(@NonNull Target target, @NonNull NoteRef noteRef) {
+        return mCache.get(getKey(target, noteRef));
+    }
+
+    /**
+     * Drops all cached notes and pending prefetches.
+     */
+    public synchronized void clear() {
+        for (PrefetchTask task : mPendingTasks.values()) {
+            if (task.claim()) {
+                task.finish();
+            }
+        }
+        mPendingTasks.clear();
+        mCache.evictAll();
+    }
+
+    /**
+     * Stops prefetching and drops the cache. Call this method when the list is destroyed.
+     */
+    public void shutdown() {
+        clear();
+        mExecutorService.shutdown();
+    }
+
+    /**
+     * Blocks until all prefetches, which were scheduled before, are done.
+     */
+    /*package*/ void awaitIdle() throws InterruptedException, ExecutionException {
+        mExecutorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                // the executor has a single thread, all earlier prefetches ran before
+            }
+        }).get();
+    }
+
+    private Object get(Target target, NoteRef noteRef) throws Exception {
+        String key = getKey(target, noteRef);
+        Object value = mCache.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        PrefetchTask task;
+        synchronized (this) {
+            task = mPendingTasks.get(key);
+            if (task != null && task.claim()) {
+                // the prefetch didn't start yet, load the note right now instead
+                mPendingTasks.remove(key);
+                task.finish();
+                task = null;
+            }
+        }
+
+        if (task != null) {
+            task.await();
+            value = mCache.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+
+        value = load(target, noteRef, false);
+        if (value != null) {
+            mCache.put(key, value);
+        }
+        return value;
+    }
+
+    private Object load(Target target, NoteRef noteRef, boolean background) throws Exception {
+        switch (target) {
+            case HTML:
+                return loadHtml(noteRef);
+            case NOTE:
+                return loadNote(noteRef, background);
+            default:
+                throw new IllegalStateException("not implemented");
+        }
+    }
+
+    /**
+     * @return The note as HTML or {@code null}, if the server didn't return the note.
+     */
+    protected String loadHtml(@NonNull NoteRef noteRef) throws Exception {
+        EvernoteClientFactory clientFactory = NoteRefHelper.getSession().getEvernoteClientFactory();
+
+        EvernoteHtmlHelper htmlHelper;
+        if (noteRef.isLinked()) {
+            LinkedNotebook linkedNotebook = noteRef.loadLinkedNotebook();
+            if (linkedNotebook == null) {
+                return null;
+            }
+            htmlHelper = clientFactory.getLinkedHtmlHelper(linkedNotebook);
+        } else {
+            htmlHelper = clientFactory.getHtmlHelperDefault();
+        }
+
+        Response response = htmlHelper.downloadNote(noteRef.getGuid());
+        return htmlHelper.parseBody(response);
+    }
+
+    /**
+     * @param background {@code true} if the note is prefetched. The call then runs with
+     *                   {@link EvernoteRateLimiter.Priority#BACKGROUND}.
+     * @return The note with its content, but without resources.
+     */
+    protected Note loadNote(@NonNull NoteRef noteRef, boolean background) throws Exception {
+        EvernoteNoteStoreClient client = NoteRefHelper.getNoteStore(noteRef);
+        if (client == null) {
+            return null;
+        }
+        if (background) {
+            client = client.asBackgroundClient();
+        }
+
+        try {
+            return client.getNote(noteRef.getGuid(), true, false, false, false);
+        } catch (EDAMNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return {@code false} if the transfer policy of the client factory doesn't allow optional
+     * transfers at the moment.
+     */
+    protected boolean isPrefetchAllowed() {
+        EvernoteTransferPolicy transferPolicy = NoteRefHelper.getSession().getEvernoteClientFactory().getTransferPolicy();
+        return transferPolicy == null || transferPolicy.isAllowed(EvernoteTransferPolicy.TransferClass.RESOURCE_EXTRAS);
+    }
+
+    private synchronized boolean isWithinBandwidthBudget() {
+        long now = System.nanoTime();
+        if (now - mBudgetIntervalStart >= BUDGET_INTERVAL_NANOS) {
+            mBudgetIntervalStart = now;
+            mBudgetUsed = 0;
+        }
+        return mBudgetUsed < mBandwidthBudget;
+    }
+
+    private synchronized void consumeBandwidthBudget(long bytes) {
+        mBudgetUsed += bytes;
+    }
+
+    private synchronized void removePendingTask(String key, PrefetchTask task) {
+        if (mPendingTasks.get(key) == task) {
+            mPendingTasks.remove(key);
+        }
+    }
+
+    private static String getKey(Target target, NoteRef noteRef) {
+        return target.name() + ':' + noteRef.getGuid();
+    }
+
+    /*package*/ static int estimateSize(Object value) {
+        if (value instanceof String) {
+            return 40 + ((String) value).length() * 2;
+        }
+        if (value instanceof Note) {
+            Note note = (Note) value;
+            return 512 + (note.isSetContent() ? note.getContent().length() * 2 : 0);
+        }
+        return 1;
+    }
+
+    private final class PrefetchTask implements Runnable {
+
+        private final String mKey;
+        private final NoteRef mNoteRef;
+        private final AtomicBoolean mClaimed;
+        private final CountDownLatch mDoneLatch;
+
+        private PrefetchTask(String key, NoteRef noteRef) {
+            mKey = key;
+            mNoteRef = noteRef;
+            mClaimed = new AtomicBoolean();
+            mDoneLatch = new CountDownLatch(1);
+        }
+
+        /**
+         * @return {@code true} if the caller owns the task, it won't run anymore.
+         */
+        private boolean claim() {
+            return mClaimed.compareAndSet(false, true);
+        }
+
+        private void finish() {
+            mDoneLatch.countDown();
+        }
+
+        private void await() throws InterruptedException {
+            mDoneLatch.await();
+        }
+
+        @Override
+        public void run() {
+            if (!claim()) {
+                return;
+            }
+
+            try {
+                if (!isWithinBandwidthBudget() || !isPrefetchAllowed()) {
+                    return;
+                }
+
+                Object value = load(mTarget, mNoteRef, true);
+                if (value != null) {
+                    mCache.put(mKey, value);
+                    consumeBandwidthBudget(estimateSize(value) / 2);
+                }
+
+            } catch (Exception e) {
+                CAT.w(e, "prefetch of %s failed", mNoteRef.getGuid());
+
+            } finally {
+                removePendingTask(mKey, this);
+                finish();
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.evernote.client.conn.mobile;
 
+import android.support.annotation.NonNull;
+
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -26,6 +28,17 @@ public abstract class ByteStore extends OutputStream {
      */
     public abstract byte[] getData() throws IOException;
 
+    /**
+     * Writes all data to the given stream. The default implementation uses {@link #getData()}.
+     * Subclasses holding the data on disk should override this method, so that large messages
+     * aren't loaded into memory at once.
+     *
+     * @param outputStream The target of the data.
+     */
+    public void writeTo(@NonNull OutputStream outputStream) throws IOException {
+        outputStream.write(getData(), 0, getBytesWritten());
+    }
+
     /**
      * Reset all pointers.
      */
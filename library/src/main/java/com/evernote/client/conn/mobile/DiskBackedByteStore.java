@@ -45,6 +45,7 @@ import java.io.OutputStream;
 public class DiskBackedByteStore extends ByteStore {
 
     private static final int DEFAULT_MEMORY_BUFFER_SIZE = 2 * 1024 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
     /**
      * The maximum amount of memory to use before writing to disk.
@@ -62,6 +63,7 @@ public class DiskBackedByteStore extends ByteStore {
 
     protected byte[] mData;
     protected byte[] mFileBuffer;
+    protected byte[] mCopyBuffer;
 
     /**
      * @param cacheDir A directory where the temporary data is stored.
@@ -174,6 +176,38 @@ public class DiskBackedByteStore extends ByteStore {
         return mData;
     }
 
+    @Override
+    public void writeTo(@NonNull OutputStream outputStream) throws IOException {
+        if (mData != null || !swapped()) {
+            super.writeTo(outputStream);
+            return;
+        }
+
+        close();
+
+        if (mCopyBuffer == null) {
+            mCopyBuffer = new byte[COPY_BUFFER_SIZE];
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(mCacheFile);
+
+            int remaining = mBytesWritten;
+            while (remaining > 0) {
+                int read = inputStream.read(mCopyBuffer, 0, Math.min(remaining, mCopyBuffer.length));
+                if (read < 0) {
+                    throw new IOException("cache file is truncated");
+                }
+                outputStream.write(mCopyBuffer, 0, read);
+                remaining -= read;
+            }
+
+        } finally {
+            Util.closeQuietly(inputStream);
+        }
+    }
+
     @Override
     public void reset() throws IOException {
         try {
@@ -25,6 +25,7 @@
  */
 package com.evernote.client.conn.mobile;
 
+import com.evernote.client.android.EvernoteUtil;
 import com.evernote.edam.type.Data;
 import com.evernote.thrift.TException;
 import com.evernote.thrift.protocol.TField;
@@ -59,6 +60,7 @@ public class FileData extends Data {
 
   private static final long serialVersionUID = 1L;
   private File mBodyFile;
+  private transient volatile String mBodyHashHex;
 
   /**
    * Create a new FileData.
@@ -72,6 +74,31 @@ public class FileData extends Data {
     setSize((int) file.length());
   }
 
+  /**
+   * @return The file containing the binary data.
+   */
+  public File getBodyFile() {
+    return mBodyFile;
+  }
+
+  /**
+   * @return The body hash as lower case hexadecimal string. The string is computed once and cached.
+   */
+  public String getBodyHashHex() {
+    String bodyHashHex = mBodyHashHex;
+    if (bodyHashHex == null) {
+      bodyHashHex = EvernoteUtil.bytesToHex(getBodyHash());
+      mBodyHashHex = bodyHashHex;
+    }
+    return bodyHashHex;
+  }
+
+  @Override
+  public void setBodyHash(byte[] bodyHash) {
+    super.setBodyHash(bodyHash);
+    mBodyHashHex = null;
+  }
+
   @Override
   public void write(TProtocol oprot) throws TException {
     validate();
@@ -0,0 +1,212 @@
+package com.evernote.client.conn.mobile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.EvernoteUtil;
+import com.squareup.okhttp.internal.Util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the MD5 hashes of files, so that unchanged attachments don't need to be read again
+ * before they're uploaded. An entry is only valid as long as the file has the same length and
+ * modification time. The cache is bounded, the least recently used entries are removed first.
+ *
+ * <br>
+ * <br>
+ *
+ * If a storage file is set, then the cache can be persisted with {@link #save()} and survives
+ * process restarts.
+ */
+@SuppressWarnings("unused")
+public class FileHashCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+    private static final String SEPARATOR = "\t";
+
+    private final File mStorage;
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    private boolean mLoaded;
+    private boolean mDirty;
+
+    /**
+     * @param storage The file, which persists the cache. May be {@code null}.
+     */
+    public FileHashCache(@Nullable File storage) {
+        this(storage, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param storage The file, which persists the cache. May be {@code null}.
+     * @param maxEntries The maximum number of cached hashes.
+     */
+    public FileHashCache(@Nullable File storage, final int maxEntries) {
+        mStorage = storage;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param file The file to look up.
+     * @return The cached MD5 hash or {@code null}, if the file isn't cached or changed since then.
+     */
+    @Nullable
+    public synchronized byte[] get(@NonNull File file) {
+        ensureLoaded();
+
+        String key = file.getAbsolutePath();
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.mLength != file.length() || entry.mLastModified != file.lastModified()) {
+            mEntries.remove(key);
+            mDirty = true;
+            return null;
+        }
+
+        return entry.mHash.clone();
+    }
+
+    /**
+     * @param file The file, which was hashed.
+     * @param hash The MD5 hash of the current file content.
+     */
+    public synchronized void put(@NonNull File file, @NonNull byte[] hash) {
+        ensureLoaded();
+
+        mEntries.put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), hash.clone()));
+        mDirty = true;
+    }
+
+    /**
+     * Returns the cached hash or computes and caches the hash of the file. The file is read
+     * without holding the cache's lock.
+     *
+     * @param file The file to hash.
+     * @return The MD5 hash of the file.
+     */
+    @NonNull
+    public byte[] getOrCompute(@NonNull File file) throws IOException {
+        byte[] hash = get(file);
+        if (hash != null) {
+            return hash;
+        }
+
+        long lastModified = file.lastModified();
+        hash = computeHash(file);
+
+        if (lastModified == file.lastModified()) {
+            // don't cache the hash, if the file changed while reading it
+            put(file, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the cache to the storage file, if it changed.
+     */
+    public synchronized void save() throws IOException {
+        if (mStorage == null || !mDirty) {
+            return;
+        }
+
+        File parent = mStorage.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("could not create directory " + parent);
+        }
+
+        File tempFile = new File(mStorage.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+            for (Map.Entry<String, Entry> mapEntry : mEntries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                writer.write(entry.mLength + SEPARATOR + entry.mLastModified + SEPARATOR + EvernoteUtil.bytesToHex(entry.mHash)
+                        + SEPARATOR + mapEntry.getKey() + '\n');
+            }
+            writer.flush();
+
+        } finally {
+            Util.closeQuietly(writer);
+        }
+
+        if (!tempFile.renameTo(mStorage)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("could not write " + mStorage);
+        }
+
+        mDirty = false;
+    }
+
+    protected byte[] computeHash(File file) throws IOException {
+        return EvernoteUtil.hash(file);
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+
+        if (mStorage == null || !mStorage.isFile()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mStorage), "UTF-8"));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // the path is the last column, it may contain the separator
+                String[] columns = line.split(SEPARATOR, 4);
+                if (columns.length != 4) {
+                    continue;
+                }
+
+                try {
+                    mEntries.put(columns[3], new Entry(Long.parseLong(columns[0]), Long.parseLong(columns[1]), EvernoteUtil.hexToBytes(columns[2])));
+                } catch (IllegalArgumentException ignored) {
+                    // skip corrupted lines
+                }
+            }
+
+        } catch (IOException ignored) {
+            // start with an empty cache
+
+        } finally {
+            Util.closeQuietly(reader);
+        }
+    }
+
+    private static final class Entry {
+        private final long mLength;
+        private final long mLastModified;
+        private final byte[] mHash;
+
+        private Entry(long length, long lastModified, byte[] hash) {
+            mLength = length;
+            mLastModified = lastModified;
+            mHash = hash;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.evernote.client.conn.mobile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.client.android.EvernoteUtil;
+import com.evernote.edam.type.Resource;
+import com.evernote.edam.type.ResourceAttributes;
+import com.squareup.okhttp.internal.Util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates {@link Resource}s backed by a {@link FileData}. The MD5 hash and the size of each
+ * attachment are computed without reading the data more often than necessary.
+ *
+ * <br>
+ * <br>
+ *
+ * Files are hashed once and the hash is remembered in the {@link FileHashCache}, uploading the
+ * same unchanged file again doesn't read it before it's sent. Streams, e.g. from a content provider,
+ * are copied into a temporary file and hashed in the same pass. Call {@link #close()} after the
+ * note was sent to delete the temporary files.
+ */
+@SuppressWarnings("unused")
+public class FileResourceBuilder implements Closeable {
+
+    private final FileHashCache mHashCache;
+    private final File mTempDir;
+    private final List<File> mTempFiles;
+
+    /**
+     * @param hashCache Remembers the hashes of files. May be {@code null}.
+     * @param tempDir The directory for copies of streamed attachments.
+     */
+    public FileResourceBuilder(@Nullable FileHashCache hashCache, @NonNull File tempDir) {
+        mHashCache = hashCache;
+        mTempDir = tempDir;
+        mTempFiles = new ArrayList<>();
+    }
+
+    /**
+     * @param file The attachment.
+     * @param mimeType The MIME type of the attachment.
+     * @param attributes Optional attributes, e.g. the file name.
+     * @return A resource, which streams the file when it's sent.
+     */
+    public Resource fromFile(@NonNull File file, @NonNull String mimeType, @Nullable ResourceAttributes attributes) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("no such file " + file);
+        }
+
+        byte[] hash;
+        if (mHashCache != null) {
+            hash = mHashCache.getOrCompute(file);
+        } else {
+            hash = EvernoteUtil.hash(file);
+        }
+
+        return createResource(new FileData(hash, file), mimeType, attributes);
+    }
+
+    /**
+     * Copies the stream into a temporary file and computes the hash in the same pass. The stream
+     * isn't closed.
+     *
+     * @param inputStream The attachment's data.
+     * @param mimeType The MIME type of the attachment.
+     * @param attributes Optional attributes, e.g. the file name.
+     * @return A resource, which streams the temporary file when it's sent.
+     */
+    public Resource fromStream(@NonNull InputStream inputStream, @NonNull String mimeType,
+                               @Nullable ResourceAttributes attributes) throws IOException {
+
+        if (!mTempDir.isDirectory() && !mTempDir.mkdirs()) {
+            throw new IOException("could not create directory " + mTempDir);
+        }
+
+        File file = File.createTempFile("resource", null, mTempDir);
+        synchronized (mTempFiles) {
+            mTempFiles.add(file);
+        }
+
+        byte[] hash;
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(file);
+            hash = EvernoteUtil.hash(inputStream, outputStream);
+        } finally {
+            Util.closeQuietly(outputStream);
+        }
+
+        return createResource(new FileData(hash, file), mimeType, attributes);
+    }
+
+    /**
+     * Deletes all temporary files created by {@link #fromStream(InputStream, String, ResourceAttributes)}
+     * and persists the hash cache.
+     */
+    @Override
+    public void close() {
+        synchronized (mTempFiles) {
+            for (File file : mTempFiles) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+            mTempFiles.clear();
+        }
+
+        if (mHashCache != null) {
+            try {
+                mHashCache.save();
+            } catch (IOException ignored) {
+                // the hashes are computed again next time
+            }
+        }
+    }
+
+    protected Resource createResource(FileData data, String mimeType, ResourceAttributes attributes) {
+        Resource resource = new Resource();
+        resource.setData(data);
+        resource.setMime(mimeType);
+        if (attributes != null) {
+            resource.setAttributes(attributes);
+        }
+        return resource;
+    }
+}
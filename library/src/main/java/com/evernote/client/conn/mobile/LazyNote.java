@@ -0,0 +1,301 @@
+package com.evernote.client.conn.mobile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.NoteAttributes;
+import com.evernote.edam.type.Resource;
+import com.evernote.thrift.TException;
+import com.evernote.thrift.protocol.TField;
+import com.evernote.thrift.protocol.TList;
+import com.evernote.thrift.protocol.TProtocol;
+import com.evernote.thrift.protocol.TProtocolUtil;
+import com.evernote.thrift.protocol.TType;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Note}, which keeps the ENML content as undecoded UTF-8 bytes while it's read from the
+ * service. The content string is only created when {@link #getContent()} is called the first time.
+ * Screens, which only show the title and attributes, never pay for decoding the content, and the
+ * content can be passed to a stream based consumer like the
+ * {@link com.evernote.client.android.enml.EnmlConverter} with {@link #openContentStream()} without
+ * creating the string at all.
+ *
+ * <br>
+ * <br>
+ *
+ * Unknown fields of newer service versions are skipped. Copying or comparing the note decodes the
+ * content.
+ */
+@SuppressWarnings("unused")
+public class LazyNote extends Note {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final short FIELD_GUID = 1;
+    private static final short FIELD_TITLE = 2;
+    private static final short FIELD_CONTENT = 3;
+    private static final short FIELD_CONTENT_HASH = 4;
+    private static final short FIELD_CONTENT_LENGTH = 5;
+    private static final short FIELD_CREATED = 6;
+    private static final short FIELD_UPDATED = 7;
+    private static final short FIELD_DELETED = 8;
+    private static final short FIELD_ACTIVE = 9;
+    private static final short FIELD_UPDATE_SEQUENCE_NUM = 10;
+    private static final short FIELD_NOTEBOOK_GUID = 11;
+    private static final short FIELD_TAG_GUIDS = 12;
+    private static final short FIELD_RESOURCES = 13;
+    private static final short FIELD_ATTRIBUTES = 14;
+    private static final short FIELD_TAG_NAMES = 15;
+
+    private byte[] mContentBytes;
+
+    @Override
+    public void read(TProtocol iprot) throws TException {
+        iprot.readStructBegin();
+        while (true) {
+            TField field = iprot.readFieldBegin();
+            if (field.type == TType.STOP) {
+                break;
+            }
+
+            if (!readField(iprot, field)) {
+                TProtocolUtil.skip(iprot, field.type);
+            }
+            iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+        validate();
+    }
+
+    private boolean readField(TProtocol iprot, TField field) throws TException {
+        switch (field.id) {
+            case FIELD_GUID:
+                if (field.type == TType.STRING) {
+                    setGuid(iprot.readString());
+                    return true;
+                }
+                return false;
+
+            case FIELD_TITLE:
+                if (field.type == TType.STRING) {
+                    setTitle(iprot.readString());
+                    return true;
+                }
+                return false;
+
+            case FIELD_CONTENT:
+                if (field.type == TType.STRING) {
+                    setContent(null);
+                    mContentBytes = toBytes(iprot.readBinary());
+                    return true;
+                }
+                return false;
+
+            case FIELD_CONTENT_HASH:
+                if (field.type == TType.STRING) {
+                    setContentHash(toBytes(iprot.readBinary()));
+                    return true;
+                }
+                return false;
+
+            case FIELD_CONTENT_LENGTH:
+                if (field.type == TType.I32) {
+                    setContentLength(iprot.readI32());
+                    return true;
+                }
+                return false;
+
+            case FIELD_CREATED:
+                if (field.type == TType.I64) {
+                    setCreated(iprot.readI64());
+                    return true;
+                }
+                return false;
+
+            case FIELD_UPDATED:
+                if (field.type == TType.I64) {
+                    setUpdated(iprot.readI64());
+                    return true;
+                }
+                return false;
+
+            case FIELD_DELETED:
+                if (field.type == TType.I64) {
+                    setDeleted(iprot.readI64());
+                    return true;
+                }
+                return false;
+
+            case FIELD_ACTIVE:
+                if (field.type == TType.BOOL) {
+                    setActive(iprot.readBool());
+                    return true;
+                }
+                return false;
+
+            case FIELD_UPDATE_SEQUENCE_NUM:
+                if (field.type == TType.I32) {
+                    setUpdateSequenceNum(iprot.readI32());
+                    return true;
+                }
+                return false;
+
+            case FIELD_NOTEBOOK_GUID:
+                if (field.type == TType.STRING) {
+                    setNotebookGuid(iprot.readString());
+                    return true;
+                }
+                return false;
+
+            case FIELD_TAG_GUIDS:
+                if (field.type == TType.LIST) {
+                    setTagGuids(readStringList(iprot));
+                    return true;
+                }
+                return false;
+
+            case FIELD_RESOURCES:
+                if (field.type == TType.LIST) {
+                    TList list = iprot.readListBegin();
+                    List<Resource> resources = new ArrayList<>(list.size);
+                    for (int i = 0; i < list.size; i++) {
+                        Resource resource = new Resource();
+                        resource.read(iprot);
+                        resources.add(resource);
+                    }
+                    iprot.readListEnd();
+                    setResources(resources);
+                    return true;
+                }
+                return false;
+
+            case FIELD_ATTRIBUTES:
+                if (field.type == TType.STRUCT) {
+                    NoteAttributes attributes = new NoteAttributes();
+                    attributes.read(iprot);
+                    setAttributes(attributes);
+                    return true;
+                }
+                return false;
+
+            case FIELD_TAG_NAMES:
+                if (field.type == TType.LIST) {
+                    setTagNames(readStringList(iprot));
+                    return true;
+                }
+                return false;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return {@code true}, if the content was read, but wasn't decoded yet.
+     */
+    public synchronized boolean isContentPending() {
+        return mContentBytes != null;
+    }
+
+    /**
+     * @return The UTF-8 encoded content without decoding it. Returns {@code null}, if the note has no content.
+     */
+    @Nullable
+    public synchronized InputStream openContentStream() {
+        if (mContentBytes != null) {
+            return new ByteArrayInputStream(mContentBytes);
+        }
+
+        String content = super.getContent();
+        if (content == null) {
+            return null;
+        }
+        try {
+            return new ByteArrayInputStream(content.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized String getContent() {
+        materializeContent();
+        return super.getContent();
+    }
+
+    /**
+     * Decodes pending content. The generated copy constructor, {@code equals()} and {@code compareTo()}
+     * read the content field directly after checking this method. Use {@link #isContentPending()} to
+     * check for content without decoding it.
+     */
+    @Override
+    public synchronized boolean isSetContent() {
+        materializeContent();
+        return super.isSetContent();
+    }
+
+    @Override
+    public synchronized void setContent(String content) {
+        mContentBytes = null;
+        super.setContent(content);
+    }
+
+    @Override
+    public synchronized void unsetContent() {
+        mContentBytes = null;
+        super.unsetContent();
+    }
+
+    @Override
+    public synchronized void setContentIsSet(boolean value) {
+        if (!value) {
+            mContentBytes = null;
+        }
+        super.setContentIsSet(value);
+    }
+
+    @Override
+    public void write(TProtocol oprot) throws TException {
+        synchronized (this) {
+            materializeContent();
+        }
+        super.write(oprot);
+    }
+
+    private void materializeContent() {
+        if (mContentBytes != null) {
+            try {
+                super.setContent(new String(mContentBytes, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            mContentBytes = null;
+        }
+    }
+
+    private static List<String> readStringList(TProtocol iprot) throws TException {
+        TList list = iprot.readListBegin();
+        List<String> result = new ArrayList<>(list.size);
+        for (int i = 0; i < list.size; i++) {
+            result.add(iprot.readString());
+        }
+        iprot.readListEnd();
+        return result;
+    }
+
+    @NonNull
+    private static byte[] toBytes(ByteBuffer buffer) {
+        // the buffer may point into the transport's read buffer, always copy
+        byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+}
@@ -0,0 +1,228 @@
+package com.evernote.client.conn.mobile;
+
+import android.support.annotation.NonNull;
+
+import com.squareup.okhttp.internal.Util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The counterpart of {@link DiskBackedByteStore} for the download direction. A response is read
+ * completely from the network before it's decoded. It's held in memory until a threshold is
+ * reached, then it's written to a temporary file, which is memory mapped for decoding.
+ *
+ * <br>
+ * <br>
+ *
+ * The connection is released as soon as the response was received, no matter how slow the
+ * consumer decodes it, and the response can be decoded again with {@link #rewind()} without
+ * downloading it a second time.
+ */
+@SuppressWarnings("unused")
+public class ResponseSpool implements Closeable {
+
+    private static final int DEFAULT_MEMORY_BUFFER_SIZE = 2 * 1024 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    protected final File mCacheDir;
+    protected final int mMaxMemory;
+    protected final LazyByteArrayOutputStream mByteArrayOutputStream;
+
+    protected File mCacheFile;
+    protected MappedByteBuffer mMappedBuffer;
+    protected byte[] mCopyBuffer;
+
+    protected long mLength;
+    protected int mPosition;
+
+    /**
+     * @param cacheDir A directory where the temporary data is stored.
+     * @param maxMemory The threshold before the data is written to disk.
+     */
+    protected ResponseSpool(File cacheDir, int maxMemory) {
+        mCacheDir = cacheDir;
+        mMaxMemory = maxMemory;
+        mByteArrayOutputStream = new LazyByteArrayOutputStream();
+    }
+
+    /**
+     * Reads the whole stream and replaces the previously spooled response. The stream isn't closed.
+     *
+     * @param inputStream The response body.
+     */
+    public void spool(@NonNull InputStream inputStream) throws IOException {
+        reset();
+
+        if (mCopyBuffer == null) {
+            mCopyBuffer = new byte[COPY_BUFFER_SIZE];
+        }
+
+        FileOutputStream fileOutputStream = null;
+        try {
+            int read;
+            while ((read = inputStream.read(mCopyBuffer)) != -1) {
+                if (fileOutputStream == null && mLength + read > mMaxMemory) {
+                    fileOutputStream = swapToDisk();
+                }
+
+                if (fileOutputStream != null) {
+                    fileOutputStream.write(mCopyBuffer, 0, read);
+                } else {
+                    mByteArrayOutputStream.write(mCopyBuffer, 0, read);
+                }
+                mLength += read;
+            }
+
+        } catch (IOException e) {
+            Util.closeQuietly(fileOutputStream);
+            fileOutputStream = null;
+            reset();
+            throw e;
+
+        } finally {
+            Util.closeQuietly(fileOutputStream);
+        }
+
+        if (mCacheFile != null) {
+            mapFile();
+        }
+    }
+
+    private FileOutputStream swapToDisk() throws IOException {
+        if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+            throw new IOException("could not create cache dir");
+        }
+        if (!mCacheDir.isDirectory()) {
+            throw new IOException("cache dir is no directory");
+        }
+
+        mCacheFile = File.createTempFile("response_spool", null, mCacheDir);
+        FileOutputStream fileOutputStream = new FileOutputStream(mCacheFile);
+
+        mByteArrayOutputStream.writeTo(fileOutputStream);
+        mByteArrayOutputStream.reset();
+        return fileOutputStream;
+    }
+
+    private void mapFile() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mCacheFile, "r");
+        try {
+            // the mapping stays valid after the channel was closed
+            mMappedBuffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, mLength);
+        } finally {
+            Util.closeQuietly(file);
+        }
+    }
+
+    /**
+     * @return {@code true}, if the response was written to disk.
+     */
+    public boolean isSwapped() {
+        return mCacheFile != null;
+    }
+
+    /**
+     * @return The size of the spooled response.
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return The number of bytes, which were read since the response was spooled or rewound.
+     */
+    public long getPosition() {
+        return mMappedBuffer != null ? mMappedBuffer.position() : mPosition;
+    }
+
+    /**
+     * @return The number of bytes read or {@code -1}, if the end of the response was reached.
+     */
+    public int read(@NonNull byte[] buffer, int offset, int count) {
+        if (mMappedBuffer != null) {
+            int remaining = mMappedBuffer.remaining();
+            if (remaining == 0) {
+                return -1;
+            }
+            count = Math.min(count, remaining);
+            mMappedBuffer.get(buffer, offset, count);
+            return count;
+        }
+
+        int remaining = (int) mLength - mPosition;
+        if (remaining == 0) {
+            return -1;
+        }
+        count = Math.min(count, remaining);
+        System.arraycopy(mByteArrayOutputStream.toByteArray(), mPosition, buffer, offset, count);
+        mPosition += count;
+        return count;
+    }
+
+    /**
+     * Starts reading the spooled response from the beginning again.
+     */
+    public void rewind() {
+        mPosition = 0;
+        if (mMappedBuffer != null) {
+            mMappedBuffer.rewind();
+        }
+    }
+
+    /**
+     * Releases the spooled response and deletes the temporary file.
+     */
+    public void reset() {
+        mByteArrayOutputStream.reset();
+        mMappedBuffer = null;
+        mLength = 0;
+        mPosition = 0;
+
+        if (mCacheFile != null && !mCacheFile.delete()) {
+            // some platforms don't delete files, which are still mapped
+            mCacheFile.deleteOnExit();
+        }
+        mCacheFile = null;
+    }
+
+    @Override
+    public void close() {
+        reset();
+    }
+
+    /**
+     * Creates {@link ResponseSpool}s with the same configuration.
+     */
+    public static class Factory {
+
+        private final File mCacheDir;
+        private final int mMaxMemory;
+
+        /**
+         * @param cacheDir A directory where the temporary data is stored.
+         */
+        public Factory(File cacheDir) {
+            this(cacheDir, DEFAULT_MEMORY_BUFFER_SIZE);
+        }
+
+        /**
+         * @param cacheDir A directory where the temporary data is stored.
+         * @param maxMemory The threshold before the data is written to disk.
+         */
+        public Factory(File cacheDir, int maxMemory) {
+            mCacheDir = cacheDir;
+            mMaxMemory = maxMemory;
+        }
+
+        public ResponseSpool create() {
+            return new ResponseSpool(mCacheDir, mMaxMemory);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.evernote.client.conn.mobile;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.evernote.thrift.transport.TTransport;
 import com.evernote.thrift.transport.TTransportException;
+import com.squareup.okhttp.Headers;
 import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
@@ -12,11 +14,11 @@ import com.squareup.okhttp.Response;
 import com.squareup.okhttp.internal.Util;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
 import okio.BufferedSink;
+import okio.BufferedSource;
 
 /**
  * A {@link TTransport} implementation, which uses an {@link OkHttpClient} to read and write data
@@ -29,12 +31,27 @@ public class TAndroidTransport extends TTransport {
 
     private static final MediaType MEDIA_TYPE_THRIFT = MediaType.parse("application/x-thrift");
 
+    /**
+     * Small reads of the protocol are served from this buffer. The buffer is reused and therefore never
+     * exposed to {@link com.evernote.thrift.protocol.TBinaryProtocol}, otherwise decoded binary fields
+     * would point into it and change with the next refill.
+     */
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
     private final OkHttpClient mHttpClient;
     private final ByteStore mByteStore;
     private final String mUrl;
 
-    private InputStream mResponseBody;
+    private final ResponseSpool mResponseSpool;
+
+    private BufferedSource mResponseBody;
+    private boolean mResponseSpooled;
     private Map<String, String> mHeaders;
+    private Request mRequest;
+
+    private byte[] mReadBuffer;
+    private int mReadPosition;
+    private int mReadLimit;
 
     /**
      * @param httpClient The HTTP client.
@@ -53,10 +70,24 @@ public class TAndroidTransport extends TTransport {
      * @param headers Additional headers which are POSTed.
      */
     public TAndroidTransport(OkHttpClient httpClient, ByteStore byteStore, String url, Map<String, String> headers) {
+        this(httpClient, byteStore, url, headers, null);
+    }
+
+    /**
+     * @param httpClient The HTTP client.
+     * @param byteStore Holds the data until it's POSTed with the HTTP client.
+     * @param url The note store URL.
+     * @param headers Additional headers which are POSTed.
+     * @param responseSpool If not {@code null}, then each response is received completely before
+     *                      it's decoded and can be decoded again with {@link #rewindResponse()}.
+     */
+    public TAndroidTransport(OkHttpClient httpClient, ByteStore byteStore, String url, Map<String, String> headers,
+                             @Nullable ResponseSpool responseSpool) {
         mHttpClient = httpClient;
         mByteStore = byteStore;
         mUrl = url;
         mHeaders = headers;
+        mResponseSpool = responseSpool;
     }
 
     public void addHeader(String name, String value) {
@@ -64,6 +95,7 @@ public class TAndroidTransport extends TTransport {
             mHeaders = new HashMap<>();
         }
         mHeaders.put(name, value);
+        mRequest = null;
     }
 
     public void addHeaders(Map<String, String> headers) {
@@ -71,6 +103,7 @@ public class TAndroidTransport extends TTransport {
             mHeaders = new HashMap<>();
         }
         mHeaders.putAll(headers);
+        mRequest = null;
     }
 
     @Override
@@ -94,43 +127,26 @@ public class TAndroidTransport extends TTransport {
 
     @Override
     public void flush() throws TTransportException {
-        Util.closeQuietly(mResponseBody);
-        mResponseBody = null;
-
-        RequestBody requestBody = new RequestBody() {
-            @Override
-            public MediaType contentType() {
-                if (mHeaders != null && mHeaders.containsKey("Content-Type")) {
-                    return MediaType.parse(mHeaders.get("Content-Type"));
-                } else {
-                    return MEDIA_TYPE_THRIFT;
-                }
-            }
-
-            @Override
-            public void writeTo(BufferedSink sink) throws IOException {
-                sink.write(mByteStore.getData(), 0, mByteStore.getBytesWritten());
-            }
-        };
+        closeResponse();
 
         try {
-            Request.Builder builder = new Request.Builder()
-                    .url(mUrl)
-                    .post(requestBody);
-
-            if (mHeaders != null) {
-                for (String name : mHeaders.keySet()) {
-                    builder.header(name, mHeaders.get(name));
-                }
-            }
-
-            Response response = mHttpClient.newCall(builder.build()).execute();
+            Response response = mHttpClient.newCall(getRequest()).execute();
 
             if (response.code() != 200) {
+                Util.closeQuietly(response.body());
                 throw new TTransportException("HTTP Response code: " + response.code() + ", message " + response.message());
             }
 
-            mResponseBody = response.body().byteStream();
+            if (mResponseSpool != null) {
+                try {
+                    mResponseSpool.spool(response.body().byteStream());
+                    mResponseSpooled = true;
+                } finally {
+                    Util.closeQuietly(response.body());
+                }
+            } else {
+                mResponseBody = response.body().source();
+            }
 
         } catch (Exception e) {
             throw new TTransportException(e);
@@ -143,27 +159,149 @@ public class TAndroidTransport extends TTransport {
         }
     }
 
+    /**
+     * The request is immutable and its body always sends the current content of the byte store, so
+     * the same instance is used for all calls until the headers change.
+     */
+    private Request getRequest() {
+        if (mRequest == null) {
+            Request.Builder builder = new Request.Builder()
+                    .url(mUrl)
+                    .post(new ByteStoreRequestBody(mByteStore, getContentType()));
+
+            if (mHeaders != null) {
+                builder.headers(Headers.of(mHeaders));
+            }
+
+            mRequest = builder.build();
+        }
+        return mRequest;
+    }
+
+    private MediaType getContentType() {
+        String contentType = mHeaders == null ? null : mHeaders.get("Content-Type");
+        if (contentType != null) {
+            MediaType mediaType = MediaType.parse(contentType);
+            if (mediaType != null) {
+                return mediaType;
+            }
+        }
+        return MEDIA_TYPE_THRIFT;
+    }
+
     @Override
     public int read(byte[] buf, int off, int len) throws TTransportException {
-        if (mResponseBody == null) {
+        if (mResponseBody == null && !mResponseSpooled) {
             throw new TTransportException("Response buffer is empty, no request.");
         }
 
+        int remaining = mReadLimit - mReadPosition;
+        if (remaining > 0) {
+            int count = Math.min(remaining, len);
+            System.arraycopy(mReadBuffer, mReadPosition, buf, off, count);
+            mReadPosition += count;
+            return count;
+        }
+
         try {
-            int ret = mResponseBody.read(buf, off, len);
-            if (ret == -1) {
-                throw new TTransportException("No more data available.");
+            if (len >= READ_BUFFER_SIZE) {
+                // large binary fields bypass the buffer, there's no benefit in copying them twice
+                return checkRead(readResponse(buf, off, len));
             }
-            return ret;
+
+            if (mReadBuffer == null) {
+                mReadBuffer = new byte[READ_BUFFER_SIZE];
+            }
+            mReadLimit = checkRead(readResponse(mReadBuffer, 0, READ_BUFFER_SIZE));
+            mReadPosition = 0;
+
+            int count = Math.min(mReadLimit, len);
+            System.arraycopy(mReadBuffer, 0, buf, off, count);
+            mReadPosition = count;
+            return count;
 
         } catch (IOException e) {
             throw new TTransportException(e);
         }
     }
 
+    private int readResponse(byte[] buf, int off, int len) throws IOException {
+        if (mResponseSpooled) {
+            return mResponseSpool.read(buf, off, len);
+        } else {
+            return mResponseBody.read(buf, off, len);
+        }
+    }
+
+    private static int checkRead(int read) throws TTransportException {
+        if (read == -1) {
+            throw new TTransportException("No more data available.");
+        }
+        return read;
+    }
+
     @Override
-    public void close() {
+    public int getBytesRemainingInBuffer() {
+        // the protocol must copy all values, see READ_BUFFER_SIZE
+        return -1;
+    }
+
+    /**
+     * Decodes the last response again from the beginning without downloading it a second time,
+     * e.g. after decoding failed. The response spool is shared with all transports of the same
+     * thread, so only the last response of the thread can be rewound.
+     *
+     * @throws IllegalStateException If this transport doesn't spool responses or there's no response.
+     */
+    public void rewindResponse() {
+        if (!mResponseSpooled) {
+            throw new IllegalStateException("no spooled response");
+        }
+        mResponseSpool.rewind();
+        resetReadBuffer();
+    }
+
+    private void resetReadBuffer() {
+        mReadPosition = 0;
+        mReadLimit = 0;
+    }
+
+    private void closeResponse() {
         Util.closeQuietly(mResponseBody);
         mResponseBody = null;
+        mResponseSpooled = false;
+        resetReadBuffer();
+    }
+
+    @Override
+    public void close() {
+        closeResponse();
+    }
+
+    private static final class ByteStoreRequestBody extends RequestBody {
+
+        private final ByteStore mByteStore;
+        private final MediaType mContentType;
+
+        private ByteStoreRequestBody(ByteStore byteStore, MediaType contentType) {
+            mByteStore = byteStore;
+            mContentType = contentType;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mContentType;
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return mByteStore.getBytesWritten();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // streams large messages from disk instead of loading them into memory
+            mByteStore.writeTo(sink.outputStream());
+        }
     }
 }
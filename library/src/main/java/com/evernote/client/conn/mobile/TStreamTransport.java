@@ -0,0 +1,88 @@
+package com.evernote.client.conn.mobile;
+
+import com.evernote.thrift.transport.TTransport;
+import com.evernote.thrift.transport.TTransportException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A {@link TTransport} implementation, which reads from an {@link InputStream} and writes to an
+ * {@link OutputStream}. It's used to persist Thrift structs locally. The transport doesn't close
+ * the streams.
+ */
+@SuppressWarnings("unused")
+public class TStreamTransport extends TTransport {
+
+    private final InputStream mInputStream;
+    private final OutputStream mOutputStream;
+
+    /**
+     * @param inputStream The source for read calls. May be {@code null}, if the transport is only written.
+     * @param outputStream The target for write calls. May be {@code null}, if the transport is only read.
+     */
+    public TStreamTransport(InputStream inputStream, OutputStream outputStream) {
+        mInputStream = inputStream;
+        mOutputStream = outputStream;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void open() throws TTransportException {
+        // no op
+    }
+
+    @Override
+    public void close() {
+        // no op, the owner closes the streams
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+        if (mInputStream == null) {
+            throw new TTransportException("Cannot read from a write only transport.");
+        }
+
+        try {
+            int ret = mInputStream.read(buf, off, len);
+            if (ret == -1) {
+                throw new TTransportException("No more data available.");
+            }
+            return ret;
+
+        } catch (IOException e) {
+            throw new TTransportException(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws TTransportException {
+        if (mOutputStream == null) {
+            throw new TTransportException("Cannot write to a read only transport.");
+        }
+
+        try {
+            mOutputStream.write(buf, off, len);
+        } catch (IOException e) {
+            throw new TTransportException(e);
+        }
+    }
+
+    @Override
+    public void flush() throws TTransportException {
+        if (mOutputStream == null) {
+            return;
+        }
+
+        try {
+            mOutputStream.flush();
+        } catch (IOException e) {
+            throw new TTransportException(e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.evernote.client.android;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvernoteUtilTest {
+
+    @Test
+    public void testHashKnownValue() throws Exception {
+        assertThat(EvernoteUtil.bytesToHex(EvernoteUtil.hash("hello".getBytes("UTF-8")))).isEqualTo("5d41402abc4b2a76b9719d911017c592");
+    }
+
+    @Test
+    public void testHexRoundTrip() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            byte[] data = createRandomData(i);
+            String hex = EvernoteUtil.bytesToHex(data);
+
+            assertThat(hex).isEqualTo(referenceHex(data));
+            assertThat(EvernoteUtil.hexToBytes(hex)).isEqualTo(data);
+            assertThat(EvernoteUtil.hexToBytes(hex.toUpperCase(Locale.US))).isEqualTo(data);
+        }
+
+        assertThat(EvernoteUtil.bytesToHex(new byte[]{0x0f, (byte) 0xa0}, true)).isEqualTo("0f a0 ");
+    }
+
+    @Test
+    public void testHexIntoBuffers() throws Exception {
+        byte[] data = {0x00, 0x12, (byte) 0xab, (byte) 0xff};
+
+        char[] chars = new char[10];
+        assertThat(EvernoteUtil.bytesToHex(data, 1, 2, chars, 3)).isEqualTo(4);
+        assertThat(new String(chars, 3, 4)).isEqualTo("12ab");
+
+        byte[] ascii = new byte[8];
+        assertThat(EvernoteUtil.bytesToHex(data, 0, data.length, ascii, 0)).isEqualTo(8);
+        assertThat(new String(ascii, "US-ASCII")).isEqualTo("0012abff");
+
+        byte[] bytes = new byte[4];
+        assertThat(EvernoteUtil.hexToBytes("xx12ABxx", 2, 4, bytes, 1)).isEqualTo(2);
+        assertThat(bytes).isEqualTo(new byte[]{0x00, 0x12, (byte) 0xab, 0x00});
+
+        assertThat(EvernoteUtil.hexToBytes("ff00".toCharArray(), 0, 4, bytes, 0)).isEqualTo(2);
+        assertThat(bytes[0]).isEqualTo((byte) 0xff);
+        assertThat(bytes[1]).isEqualTo((byte) 0x00);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHexInvalidCharacter() {
+        EvernoteUtil.hexToBytes("0g");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHexOddLength() {
+        EvernoteUtil.hexToBytes("abc", 0, 3, new byte[2], 0);
+    }
+
+    @Test
+    public void testHashSources() throws Exception {
+        byte[] data = createRandomData(3 * 64 * 1024 + 17);
+        byte[] expected = referenceHash(data);
+
+        File file = createTempFile(data);
+        try {
+            assertThat(EvernoteUtil.hash(data)).isEqualTo(expected);
+            assertThat(EvernoteUtil.hash(new ByteArrayInputStream(data))).isEqualTo(expected);
+            assertThat(EvernoteUtil.hash(file)).isEqualTo(expected);
+
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            assertThat(EvernoteUtil.hash(new ByteArrayInputStream(data), copy)).isEqualTo(expected);
+            assertThat(copy.toByteArray()).isEqualTo(data);
+
+        } finally {
+            assertThat(file.delete()).isTrue();
+        }
+    }
+
+    @Test
+    public void testConcurrentHashing() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final byte[] data = createRandomData(32 * 1024 + i);
+                futures.add(executorService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return MessageDigest.isEqual(referenceHash(data), EvernoteUtil.hash(new ByteArrayInputStream(data)));
+                    }
+                }));
+            }
+
+            for (Future<Boolean> future : futures) {
+                assertThat(future.get()).isTrue();
+            }
+
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testHashAll() throws Exception {
+        List<File> files = new ArrayList<>();
+        List<byte[]> expected = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                byte[] data = createRandomData(100 * 1024 * i + 1);
+                files.add(createTempFile(data));
+                expected.add(referenceHash(data));
+            }
+
+            List<byte[]> hashes = EvernoteUtil.hashAll(files);
+            assertThat(hashes).hasSize(files.size());
+            for (int i = 0; i < hashes.size(); i++) {
+                assertThat(hashes.get(i)).isEqualTo(expected.get(i));
+            }
+
+        } finally {
+            for (File file : files) {
+                assertThat(file.delete()).isTrue();
+            }
+        }
+    }
+
+    private static String referenceHex(byte[] data) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : data) {
+            builder.append(String.format("%02x", b & 0xff));
+        }
+        return builder.toString();
+    }
+
+    private static byte[] referenceHash(byte[] data) throws Exception {
+        return MessageDigest.getInstance("MD5").digest(data);
+    }
+
+    private static byte[] createRandomData(int length) {
+        byte[] data = new byte[length];
+        new Random().nextBytes(data);
+        return data;
+    }
+
+    private static File createTempFile(byte[] data) throws IOException {
+        File file = File.createTempFile("hash", null);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(data);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+}
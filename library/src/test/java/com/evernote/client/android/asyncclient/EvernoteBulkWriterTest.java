@@ -0,0 +1,53 @@
+package com.evernote.client.android.asyncclient;
+
+import com.evernote.edam.type.Note;
+import com.evernote.thrift.transport.TTransportException;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvernoteBulkWriterTest {
+
+    @Test
+    public void testChainsKeepOrderOfSameNote() {
+        List<EvernoteBulkWriter.Operation> operations = Arrays.asList(
+                EvernoteBulkWriter.Operation.updateNote(createNote("a")),
+                EvernoteBulkWriter.Operation.createNote(createNote(null)),
+                EvernoteBulkWriter.Operation.deleteNote("a"),
+                EvernoteBulkWriter.Operation.updateNote(createNote("b")),
+                EvernoteBulkWriter.Operation.deleteNote("c"),
+                EvernoteBulkWriter.Operation.createNote(createNote(null)));
+
+        long[] sizes = {500, 100, 0, 50, 0, 100};
+        int[][] chains = EvernoteBulkWriter.createChains(operations, sizes);
+
+        // the deletion of "a" stays behind its update, creations are independent
+        assertThat(chains).hasSize(5);
+        assertThat(chains[0]).isEqualTo(new int[]{4});
+        assertThat(chains[1]).isEqualTo(new int[]{3});
+        assertThat(chains[2]).isEqualTo(new int[]{1});
+        assertThat(chains[3]).isEqualTo(new int[]{5});
+        assertThat(chains[4]).isEqualTo(new int[]{0, 2});
+    }
+
+    @Test
+    public void testRequestNotSent() {
+        assertThat(EvernoteBulkWriter.isRequestNotSent(new TTransportException(new ConnectException()))).isTrue();
+        assertThat(EvernoteBulkWriter.isRequestNotSent(new TTransportException(new IOException(new ConnectException())))).isTrue();
+        assertThat(EvernoteBulkWriter.isRequestNotSent(new TTransportException(new SocketTimeoutException()))).isFalse();
+        assertThat(EvernoteBulkWriter.isRequestNotSent(new TTransportException("HTTP Response code: 500"))).isFalse();
+    }
+
+    private static Note createNote(String guid) {
+        Note note = new Note();
+        note.setGuid(guid);
+        return note;
+    }
+}
@@ -0,0 +1,113 @@
+package com.evernote.client.android.asyncclient;
+
+import com.evernote.edam.type.LinkedNotebook;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvernoteLinkedNotebookCacheTest {
+
+    @Test
+    public void testSingleListCall() throws Exception {
+        TestCache cache = new TestCache(60000L, 100, "a", "b", "c");
+
+        for (int i = 0; i < 200; i++) {
+            assertThat(cache.get(String.valueOf((char) ('a' + i % 3)))).isNotNull();
+        }
+
+        assertThat(cache.mListCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnknownGuidCached() throws Exception {
+        TestCache cache = new TestCache(60000L, 100, "a");
+
+        assertThat(cache.get("deleted")).isNull();
+        assertThat(cache.get("deleted")).isNull();
+        assertThat(cache.get("a")).isNotNull();
+
+        assertThat(cache.mListCalls.get()).isEqualTo(1);
+        assertThat(cache.mSyncStateCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRefreshOnlyIfAccountChanged() throws Exception {
+        TestCache cache = new TestCache(0L, 100, "a");
+
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.mListCalls.get()).isEqualTo(1);
+        assertThat(cache.mSyncStateCalls.get()).isEqualTo(2);
+
+        cache.mGuids.add("b");
+        cache.mUpdateCount++;
+        assertThat(cache.get("b")).isNotNull();
+        assertThat(cache.mListCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testUserChange() throws Exception {
+        TestCache cache = new TestCache(60000L, 100, "a");
+        assertThat(cache.get("a")).isNotNull();
+
+        cache.mAuthToken = "other";
+        cache.mGuids.clear();
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.mListCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        TestCache cache = new TestCache(60000L, 2, "a", "b", "c");
+
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("b")).isNotNull();
+        assertThat(cache.get("c")).isNotNull();
+        assertThat(cache.get("unknown")).isNull();
+    }
+
+    private static final class TestCache extends EvernoteLinkedNotebookCache {
+
+        private final List<String> mGuids;
+        private final AtomicInteger mListCalls = new AtomicInteger();
+        private final AtomicInteger mSyncStateCalls = new AtomicInteger();
+        private int mUpdateCount = 1;
+        private String mAuthToken = "token";
+
+        private TestCache(long timeToLiveMillis, int maxSize, String... guids) {
+            super(null, timeToLiveMillis, maxSize);
+            mGuids = new ArrayList<>();
+            for (String guid : guids) {
+                mGuids.add(guid);
+            }
+        }
+
+        @Override
+        protected String getAuthToken() {
+            return mAuthToken;
+        }
+
+        @Override
+        protected int loadUpdateCount() {
+            mSyncStateCalls.incrementAndGet();
+            return mUpdateCount;
+        }
+
+        @Override
+        protected List<LinkedNotebook> loadLinkedNotebooks() {
+            mListCalls.incrementAndGet();
+            List<LinkedNotebook> result = new ArrayList<>();
+            for (String guid : mGuids) {
+                LinkedNotebook linkedNotebook = new LinkedNotebook();
+                linkedNotebook.setGuid(guid);
+                result.add(linkedNotebook);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.evernote.client.android.asyncclient;
+
+import com.evernote.edam.error.EDAMErrorCode;
+import com.evernote.edam.error.EDAMSystemException;
+import com.evernote.thrift.TException;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class EvernoteRateLimiterTest {
+
+    private static final double SLOW_RATE = 0.001;
+
+    @Test
+    public void testForegroundReserve() {
+        EvernoteRateLimiter rateLimiter = new EvernoteRateLimiter(SLOW_RATE, SLOW_RATE, 4, 0.5f);
+
+        assertThat(rateLimiter.tryAcquire(EvernoteRateLimiter.Priority.BACKGROUND)).isTrue();
+        assertThat(rateLimiter.tryAcquire(EvernoteRateLimiter.Priority.BACKGROUND)).isTrue();
+        assertThat(rateLimiter.tryAcquire(EvernoteRateLimiter.Priority.BACKGROUND)).isFalse();
+
+        assertThat(rateLimiter.tryAcquire(EvernoteRateLimiter.Priority.FOREGROUND)).isTrue();
+        assertThat(rateLimiter.tryAcquire(EvernoteRateLimiter.Priority.FOREGROUND)).isTrue();
+        assertThat(rateLimiter.tryAcquire(EvernoteRateLimiter.Priority.FOREGROUND)).isFalse();
+    }
+
+    @Test
+    public void testRateLimitReached() throws TException {
+        EvernoteRateLimiter rateLimiter = new EvernoteRateLimiter(4, 8, 10, 0.25f);
+        rateLimiter.onRateLimitReached(60);
+
+        assertThat(rateLimiter.getRate()).isEqualTo(2);
+        assertThat(rateLimiter.getBlockedMillis()).isGreaterThan(0);
+        assertThat(rateLimiter.tryAcquire(EvernoteRateLimiter.Priority.FOREGROUND)).isFalse();
+
+        try {
+            rateLimiter.acquire(EvernoteRateLimiter.Priority.FOREGROUND);
+            fail("blocked limiter must reject calls");
+
+        } catch (EDAMSystemException e) {
+            assertThat(e.getErrorCode()).isEqualTo(EDAMErrorCode.RATE_LIMIT_REACHED);
+            assertThat(e.getRateLimitDuration()).isGreaterThanOrEqualTo(59).isLessThanOrEqualTo(60);
+        }
+    }
+
+    @Test
+    public void testRecovery() {
+        EvernoteRateLimiter rateLimiter = new EvernoteRateLimiter(4, 8, 10, 0.25f);
+        rateLimiter.onRateLimitReached(0);
+
+        double rate = rateLimiter.getRate();
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.onSuccess();
+        }
+
+        assertThat(rateLimiter.getRate()).isGreaterThan(rate).isLessThanOrEqualTo(8);
+    }
+}
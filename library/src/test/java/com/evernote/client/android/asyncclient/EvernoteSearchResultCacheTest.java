@@ -0,0 +1,226 @@
+package com.evernote.client.android.asyncclient;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.type.LinkedNotebook;
+import com.evernote.edam.type.NoteSortOrder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvernoteSearchResultCacheTest {
+
+    @Test
+    public void testEquivalentFiltersHaveSameKey() {
+        NoteFilter first = new NoteFilter();
+        first.setOrder(NoteSortOrder.UPDATED.getValue());
+        first.setWords("  Tag:Work   \u00dcbersicht ");
+        first.setTagGuids(Arrays.asList("b", "a"));
+
+        NoteFilter second = new NoteFilter();
+        second.setOrder(NoteSortOrder.UPDATED.getValue());
+        second.setWords("tag:work \u00fcbersicht");
+        second.setTagGuids(Arrays.asList("a", "b"));
+        second.setAscending(false);
+
+        assertThat(createKey(first, createResultSpec(), createLinkedNotebooks("1", "2")))
+                .isEqualTo(createKey(second, createResultSpec(), createLinkedNotebooks("2", "1")));
+    }
+
+    @Test
+    public void testDifferentSearchesHaveDifferentKeys() {
+        NoteFilter noteFilter = new NoteFilter();
+        noteFilter.setWords("work");
+
+        String key = createKey(noteFilter, createResultSpec(), createLinkedNotebooks("1"));
+
+        NoteFilter otherWords = new NoteFilter(noteFilter);
+        otherWords.setWords("home");
+        assertThat(createKey(otherWords, createResultSpec(), createLinkedNotebooks("1"))).isNotEqualTo(key);
+
+        NoteFilter ascending = new NoteFilter(noteFilter);
+        ascending.setAscending(true);
+        assertThat(createKey(ascending, createResultSpec(), createLinkedNotebooks("1"))).isNotEqualTo(key);
+
+        NotesMetadataResultSpec resultSpec = createResultSpec();
+        resultSpec.setIncludeUpdated(true);
+        assertThat(createKey(noteFilter, resultSpec, createLinkedNotebooks("1"))).isNotEqualTo(key);
+
+        assertThat(createKey(noteFilter, createResultSpec(), createLinkedNotebooks("2"))).isNotEqualTo(key);
+    }
+
+    @Test
+    public void testCacheHit() {
+        EvernoteSearchResultCache cache = new EvernoteSearchResultCache();
+        TestLoader loader = new TestLoader();
+        LinkedNotebook linkedNotebook = createLinkedNotebooks("1").get(0);
+
+        assertThat(cache.get("token", "key", loader)).isNull();
+
+        EvernoteSearchHelper.Result result = createResult();
+        EvernoteSearchResultCache.Recording recording = cache.startRecording("token", "key", loader);
+        recording.addStore(EvernoteSearchHelper.Scope.PERSONAL_NOTES, null);
+        recording.addStore(EvernoteSearchHelper.Scope.LINKED_NOTEBOOKS, linkedNotebook);
+        assertThat(recording.commit(result)).isTrue();
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get("token", "key", loader)).isSameAs(result);
+        assertThat(cache.get("token", "other", loader)).isNull();
+        assertThat(loader.mLoads).isEqualTo(4);
+    }
+
+    @Test
+    public void testUpdateCountChange() {
+        EvernoteSearchResultCache cache = new EvernoteSearchResultCache();
+        TestLoader loader = new TestLoader();
+        LinkedNotebook linkedNotebook = createLinkedNotebooks("1").get(0);
+
+        EvernoteSearchResultCache.Recording recording = cache.startRecording("token", "key", loader);
+        recording.addStore(EvernoteSearchHelper.Scope.PERSONAL_NOTES, null);
+        recording.addStore(EvernoteSearchHelper.Scope.LINKED_NOTEBOOKS, linkedNotebook);
+        recording.commit(createResult());
+
+        // a change in a linked notebook invalidates the result
+        loader.mUpdateCounts.put("1", 2);
+        assertThat(cache.get("token", "key", loader)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testUserSwitch() {
+        EvernoteSearchResultCache cache = new EvernoteSearchResultCache();
+        TestLoader loader = new TestLoader();
+
+        EvernoteSearchResultCache.Recording recording = cache.startRecording("token", "key", loader);
+        recording.addStore(EvernoteSearchHelper.Scope.PERSONAL_NOTES, null);
+        recording.commit(createResult());
+
+        assertThat(cache.get("otherToken", "key", loader)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.get("token", "key", loader)).isNull();
+    }
+
+    @Test
+    public void testIncompleteResultNotCached() {
+        EvernoteSearchResultCache cache = new EvernoteSearchResultCache();
+        TestLoader loader = new TestLoader();
+
+        EvernoteSearchResultCache.Recording recording = cache.startRecording("token", "key", loader);
+        recording.addStore(EvernoteSearchHelper.Scope.PERSONAL_NOTES, null);
+        recording.setIncomplete();
+        assertThat(recording.isComplete()).isFalse();
+        assertThat(recording.commit(createResult())).isFalse();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFailedNotebookListNotCached() {
+        EvernoteSearchResultCache cache = new EvernoteSearchResultCache();
+        TestLoader loader = new TestLoader();
+
+        // like the search helper, when listing the linked notebooks fails and exceptions are ignored
+        EvernoteSearchResultCache.Recording recording = cache.startRecording("token", "key", loader);
+        recording.addStore(EvernoteSearchHelper.Scope.PERSONAL_NOTES, null);
+        recording.setIncomplete();
+        assertThat(recording.commit(createResult())).isFalse();
+
+        // the next search queries the server again, even though the personal update count didn't change
+        assertThat(cache.get("token", "key", loader)).isNull();
+
+        recording = cache.startRecording("token", "key", loader);
+        recording.addStore(EvernoteSearchHelper.Scope.PERSONAL_NOTES, null);
+        recording.addStore(EvernoteSearchHelper.Scope.LINKED_NOTEBOOKS, createLinkedNotebooks("1").get(0));
+        EvernoteSearchHelper.Result result = createResult();
+        assertThat(recording.commit(result)).isTrue();
+        assertThat(cache.get("token", "key", loader)).isSameAs(result);
+    }
+
+    @Test
+    public void testFailingUpdateCount() {
+        EvernoteSearchResultCache cache = new EvernoteSearchResultCache();
+        TestLoader loader = new TestLoader();
+        loader.mFail = true;
+
+        // the failure only prevents caching
+        EvernoteSearchResultCache.Recording recording = cache.startRecording("token", "key", loader);
+        recording.addStore(EvernoteSearchHelper.Scope.PERSONAL_NOTES, null);
+        assertThat(recording.commit(createResult())).isFalse();
+        assertThat(cache.size()).isEqualTo(0);
+
+        loader.mFail = false;
+        recording = cache.startRecording("token", "key", loader);
+        recording.addStore(EvernoteSearchHelper.Scope.PERSONAL_NOTES, null);
+        assertThat(recording.commit(createResult())).isTrue();
+
+        // a failing validation is a cache miss
+        loader.mFail = true;
+        assertThat(cache.get("token", "key", loader)).isNull();
+    }
+
+    @Test
+    public void testMaxSize() {
+        EvernoteSearchResultCache cache = new EvernoteSearchResultCache(2);
+        TestLoader loader = new TestLoader();
+
+        for (String key : Arrays.asList("a", "b", "c")) {
+            EvernoteSearchResultCache.Recording recording = cache.startRecording("token", key, loader);
+            recording.addStore(EvernoteSearchHelper.Scope.PERSONAL_NOTES, null);
+            recording.commit(createResult());
+        }
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("token", "a", loader)).isNull();
+        assertThat(cache.get("token", "c", loader)).isNotNull();
+    }
+
+    private static EvernoteSearchHelper.Result createResult() {
+        return new EvernoteSearchHelper.Result(EnumSet.of(EvernoteSearchHelper.Scope.PERSONAL_NOTES));
+    }
+
+    private static String createKey(NoteFilter noteFilter, NotesMetadataResultSpec resultSpec, List<LinkedNotebook> linkedNotebooks) {
+        return EvernoteSearchResultCache.createKey(noteFilter, resultSpec, EnumSet.of(EvernoteSearchHelper.Scope.LINKED_NOTEBOOKS),
+                linkedNotebooks, Collections.<LinkedNotebook>emptyList(), 0, 10, 10, false);
+    }
+
+    private static NotesMetadataResultSpec createResultSpec() {
+        NotesMetadataResultSpec resultSpec = new NotesMetadataResultSpec();
+        resultSpec.setIncludeTitle(true);
+        resultSpec.setIncludeNotebookGuid(true);
+        return resultSpec;
+    }
+
+    private static List<LinkedNotebook> createLinkedNotebooks(String... guids) {
+        LinkedNotebook[] linkedNotebooks = new LinkedNotebook[guids.length];
+        for (int i = 0; i < guids.length; i++) {
+            linkedNotebooks[i] = new LinkedNotebook();
+            linkedNotebooks[i].setGuid(guids[i]);
+        }
+        return Arrays.asList(linkedNotebooks);
+    }
+
+    private static final class TestLoader implements EvernoteSearchResultCache.UpdateCountLoader {
+
+        private final Map<String, Integer> mUpdateCounts = new HashMap<>();
+        private boolean mFail;
+        private int mLoads;
+
+        @Override
+        public int loadUpdateCount(EvernoteSearchHelper.Scope scope, LinkedNotebook linkedNotebook) throws Exception {
+            if (mFail) {
+                throw new IllegalStateException("offline");
+            }
+            mLoads++;
+            String key = linkedNotebook == null ? scope.toString() : linkedNotebook.getGuid();
+            Integer updateCount = mUpdateCounts.get(key);
+            return updateCount == null ? 1 : updateCount;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.evernote.client.android.asyncclient;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvernoteThumbnailCacheTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testDiskCache() throws Exception {
+        File directory = mTemporaryFolder.newFolder();
+
+        EvernoteThumbnailCache cache = new EvernoteThumbnailCache(directory, 1024, 4096);
+        assertThat(cache.get("a")).isNull();
+
+        cache.put("a", new byte[]{1, 2, 3});
+        assertThat(cache.get("a")).isEqualTo(new byte[]{1, 2, 3});
+
+        // a new instance only has the disk cache
+        cache = new EvernoteThumbnailCache(directory, 1024, 4096);
+        assertThat(cache.get("a")).isEqualTo(new byte[]{1, 2, 3});
+
+        // no thumbnail stays on the disk after the user logged out
+        cache.clear();
+        assertThat(cache.get("a")).isNull();
+        assertThat(directory.list()).isEmpty();
+    }
+
+    @Test
+    public void testDiskTrimmed() throws Exception {
+        File directory = mTemporaryFolder.newFolder();
+        EvernoteThumbnailCache cache = new EvernoteThumbnailCache(directory, 1, 1000);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, new byte[300]);
+        }
+
+        long size = 0;
+        File[] files = directory.listFiles();
+        assertThat(files).isNotNull();
+        for (File file : files) {
+            size += file.length();
+        }
+        assertThat(size).isLessThanOrEqualTo(1000);
+        assertThat(cache.get("key9")).hasSize(300);
+    }
+
+    @Test
+    public void testConcurrentLoadsMerged() throws Exception {
+        final EvernoteThumbnailCache cache = new EvernoteThumbnailCache(null, 1024, 0);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Callable<byte[]> loader = new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                loads.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new byte[]{42};
+            }
+        };
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> first = executorService.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return cache.get("key", loader);
+                }
+            });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            Future<byte[]> second = executorService.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return cache.get("key", loader);
+                }
+            });
+
+            Thread.sleep(100);
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(new byte[]{42});
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(new byte[]{42});
+            assertThat(loads.get()).isEqualTo(1);
+
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
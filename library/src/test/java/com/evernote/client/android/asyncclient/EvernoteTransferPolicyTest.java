@@ -0,0 +1,110 @@
+package com.evernote.client.android.asyncclient;
+
+import com.evernote.client.android.asyncclient.EvernoteTransferPolicy.TransferClass;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EvernoteTransferPolicyTest {
+
+    @Test
+    public void testClassify() {
+        assertThat(EvernoteTransferPolicy.classify("getNote", new Object[]{"token", "guid", true, false, false, false}))
+                .isEqualTo(TransferClass.METADATA);
+        assertThat(EvernoteTransferPolicy.classify("getNote", new Object[]{"token", "guid", true, true, false, false}))
+                .isEqualTo(TransferClass.RESOURCE_DATA);
+        assertThat(EvernoteTransferPolicy.classify("getNote", new Object[]{"token", "guid", true, false, true, false}))
+                .isEqualTo(TransferClass.RESOURCE_EXTRAS);
+        assertThat(EvernoteTransferPolicy.classify("getResource", new Object[]{"token", "guid", false, false, true, true}))
+                .isEqualTo(TransferClass.RESOURCE_EXTRAS);
+        assertThat(EvernoteTransferPolicy.classify("getResourceData", new Object[]{"token", "guid"}))
+                .isEqualTo(TransferClass.RESOURCE_DATA);
+        assertThat(EvernoteTransferPolicy.classify("getResourceAlternateData", new Object[]{"token", "guid"}))
+                .isEqualTo(TransferClass.RESOURCE_EXTRAS);
+        assertThat(EvernoteTransferPolicy.classify("getSyncChunk", new Object[]{"token", 0, 100, true}))
+                .isEqualTo(TransferClass.METADATA);
+    }
+
+    @Test
+    public void testMeteredNetwork() throws Exception {
+        FakeConnectivitySource source = new FakeConnectivitySource();
+        EvernoteTransferPolicy policy = new EvernoteTransferPolicy(source);
+
+        source.set(true, true);
+        assertThat(policy.isAllowed(TransferClass.METADATA)).isTrue();
+        assertThat(policy.isAllowed(TransferClass.RESOURCE_DATA)).isFalse();
+
+        policy.setAllowedOnMeteredNetwork(TransferClass.RESOURCE_DATA, true);
+        assertThat(policy.isAllowed(TransferClass.RESOURCE_DATA)).isTrue();
+        assertThat(policy.isAllowed(TransferClass.RESOURCE_EXTRAS)).isFalse();
+
+        source.set(false, false);
+        assertThat(policy.isAllowed(TransferClass.METADATA)).isTrue();
+        assertThat(policy.isAllowed(TransferClass.RESOURCE_DATA)).isFalse();
+    }
+
+    @Test(expected = EvernoteTransferPolicy.TransferDeferredException.class)
+    public void testCheckAllowed() throws Exception {
+        FakeConnectivitySource source = new FakeConnectivitySource();
+        source.set(true, true);
+        new EvernoteTransferPolicy(source).checkAllowed(TransferClass.RESOURCE_DATA);
+    }
+
+    @Test
+    public void testAwaitAllowed() throws Exception {
+        final FakeConnectivitySource source = new FakeConnectivitySource();
+        source.set(true, true);
+        final EvernoteTransferPolicy policy = new EvernoteTransferPolicy(source);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    policy.awaitAllowed(TransferClass.RESOURCE_DATA);
+                    latch.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }.start();
+
+        assertThat(latch.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+        source.set(true, false);
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static final class FakeConnectivitySource implements ConnectivitySource {
+
+        private volatile boolean mConnected;
+        private volatile boolean mMetered;
+        private Listener mListener;
+
+        private void set(boolean connected, boolean metered) {
+            mConnected = connected;
+            mMetered = metered;
+            if (mListener != null) {
+                mListener.onConnectivityChanged();
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        @Override
+        public boolean isMetered() {
+            return mMetered;
+        }
+
+        @Override
+        public void setListener(Listener listener) {
+            mListener = listener;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.evernote.client.android.asyncclient;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.type.NoteSortOrder;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LocalIndexQueryTest {
+
+    @Test
+    public void testMatchQuery() {
+        assertThat(LocalIndexQuery.toMatchQuery(null)).isEqualTo("");
+        assertThat(LocalIndexQuery.toMatchQuery("   ")).isEqualTo("");
+        assertThat(LocalIndexQuery.toMatchQuery(" meeting  notes ")).isEqualTo("\"meeting\" \"notes\"");
+        assertThat(LocalIndexQuery.toMatchQuery("\"project plan\" meet*")).isEqualTo("\"project plan\" \"meet*\"");
+        assertThat(LocalIndexQuery.toMatchQuery("\u00fcbersicht AND")).isEqualTo("\"\u00fcbersicht\" \"AND\"");
+    }
+
+    @Test
+    public void testUnsupportedGrammar() {
+        assertThat(LocalIndexQuery.toMatchQuery("tag:work")).isNull();
+        assertThat(LocalIndexQuery.toMatchQuery("meeting -notes")).isNull();
+        assertThat(LocalIndexQuery.toMatchQuery("\"open phrase")).isNull();
+        assertThat(LocalIndexQuery.toMatchQuery("in\"side")).isNull();
+        assertThat(LocalIndexQuery.toMatchQuery("*")).isNull();
+    }
+
+    @Test
+    public void testSupportedFilter() {
+        NoteFilter noteFilter = new NoteFilter();
+        noteFilter.setOrder(NoteSortOrder.UPDATED.getValue());
+        noteFilter.setWords("meeting");
+        noteFilter.setNotebookGuid("notebook");
+
+        NotesMetadataResultSpec resultSpec = new NotesMetadataResultSpec();
+        resultSpec.setIncludeTitle(true);
+        resultSpec.setIncludeNotebookGuid(true);
+
+        assertThat(LocalIndexQuery.isSupported(noteFilter, resultSpec)).isTrue();
+        assertThat(LocalIndexQuery.getOrderColumn(noteFilter)).isEqualTo("n.updated DESC");
+
+        NoteFilter relevance = new NoteFilter(noteFilter);
+        relevance.setOrder(NoteSortOrder.RELEVANCE.getValue());
+        assertThat(LocalIndexQuery.isSupported(relevance, resultSpec)).isFalse();
+
+        NoteFilter tags = new NoteFilter(noteFilter);
+        tags.setTagGuids(Collections.singletonList("tag"));
+        assertThat(LocalIndexQuery.isSupported(tags, resultSpec)).isFalse();
+
+        NotesMetadataResultSpec attributes = new NotesMetadataResultSpec(resultSpec);
+        attributes.setIncludeAttributes(true);
+        assertThat(LocalIndexQuery.isSupported(noteFilter, attributes)).isFalse();
+    }
+}
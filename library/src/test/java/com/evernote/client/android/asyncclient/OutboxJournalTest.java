@@ -0,0 +1,145 @@
+package com.evernote.client.android.asyncclient;
+
+import com.evernote.client.conn.mobile.FileData;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Resource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutboxJournalTest {
+
+    private static final String URL = "https://www.evernote.com/edam/note/s1";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRestartAfterCoalesce() throws Exception {
+        File directory = mTemporaryFolder.newFolder("outbox");
+
+        OutboxJournal journal = new OutboxJournal(directory);
+        OutboxJournal.Entry entryA = journal.append(URL, "token", createUpdate("noteA", "a1"));
+        journal.append(URL, "token", createUpdate("noteB", "b1"));
+        journal.replace(entryA, URL, "token", createUpdate("noteA", "a2"));
+
+        // a new instance reads the journal files like after a process restart
+        journal = new OutboxJournal(directory);
+        assertThat(journal.getEntries()).hasSize(2);
+        journal.append(URL, "token", createUpdate("noteC", "c1"));
+
+        List<OutboxJournal.Entry> entries = journal.getEntries();
+        assertThat(entries).hasSize(3);
+        assertThat(entries.get(0).mGuid).isEqualTo("noteA");
+        assertThat(entries.get(1).mGuid).isEqualTo("noteB");
+        assertThat(entries.get(2).mGuid).isEqualTo("noteC");
+
+        assertThat(readResource(journal, entries.get(0))).isEqualTo("a2");
+        assertThat(readResource(journal, entries.get(1))).isEqualTo("b1");
+        assertThat(readResource(journal, entries.get(2))).isEqualTo("c1");
+
+        Set<String> resourceFiles = new HashSet<>();
+        for (OutboxJournal.Entry entry : entries) {
+            resourceFiles.addAll(entry.mResourceFiles);
+        }
+        assertThat(resourceFiles).hasSize(3);
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        File directory = mTemporaryFolder.newFolder("outbox");
+
+        OutboxJournal journal = new OutboxJournal(directory);
+        OutboxJournal.Entry entry = journal.append(URL, "token", createUpdate("noteA", "a1"));
+        journal.append(URL, "token", EvernoteBulkWriter.Operation.deleteNote("noteB"));
+        journal.remove(entry);
+
+        journal = new OutboxJournal(directory);
+        assertThat(journal.getEntries()).hasSize(1);
+        assertThat(journal.getEntries().getFirst().mType).isEqualTo(EvernoteBulkWriter.Type.DELETE_NOTE);
+        assertThat(directory.list()).hasSize(1);
+    }
+
+    @Test
+    public void testCoalescePartialUpdates() throws Exception {
+        File directory = mTemporaryFolder.newFolder("outbox");
+
+        OutboxJournal journal = new OutboxJournal(directory);
+        EvernoteBulkWriter.Operation first = createUpdate("noteA", "a1");
+        first.getNote().setContent("<en-note>first</en-note>");
+        first.getNote().setContentHash(new byte[16]);
+        OutboxJournal.Entry entry = journal.append(URL, "token", first);
+
+        Note titleOnly = new Note();
+        titleOnly.setGuid("noteA");
+        titleOnly.setTitle("renamed");
+        journal.coalesce(entry, URL, "token", EvernoteBulkWriter.Operation.updateNote(titleOnly));
+
+        journal = new OutboxJournal(directory);
+        assertThat(journal.getEntries()).hasSize(1);
+        entry = journal.getEntries().getFirst();
+
+        // the pending content and resources aren't lost
+        Note note = journal.readOperation(entry).getNote();
+        assertThat(note.getTitle()).isEqualTo("renamed");
+        assertThat(note.getContent()).isEqualTo("<en-note>first</en-note>");
+        assertThat(note.isSetContentHash()).isTrue();
+        assertThat(readResource(journal, entry)).isEqualTo("a1");
+
+        Note contentOnly = new Note();
+        contentOnly.setGuid("noteA");
+        contentOnly.setContent("<en-note>second</en-note>");
+        journal.coalesce(entry, URL, "token", EvernoteBulkWriter.Operation.updateNote(contentOnly));
+
+        note = journal.readOperation(journal.getEntries().getFirst()).getNote();
+        assertThat(note.getTitle()).isEqualTo("renamed");
+        assertThat(note.getContent()).isEqualTo("<en-note>second</en-note>");
+        assertThat(note.isSetContentHash()).isFalse();
+        assertThat(readResource(journal, journal.getEntries().getFirst())).isEqualTo("a1");
+        assertThat(directory.list()).hasSize(2);
+    }
+
+    private EvernoteBulkWriter.Operation createUpdate(String guid, String content) throws IOException {
+        File file = mTemporaryFolder.newFile();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+
+        Resource resource = new Resource();
+        resource.setData(new FileData(new byte[16], file));
+
+        Note note = new Note();
+        note.setGuid(guid);
+        note.setTitle(guid);
+        note.addToResources(resource);
+        return EvernoteBulkWriter.Operation.updateNote(note);
+    }
+
+    private static String readResource(OutboxJournal journal, OutboxJournal.Entry entry) throws Exception {
+        Note note = journal.readOperation(entry).getNote();
+        File file = ((FileData) note.getResources().get(0).getData()).getBodyFile();
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(bytes);
+            return new String(bytes, "UTF-8");
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
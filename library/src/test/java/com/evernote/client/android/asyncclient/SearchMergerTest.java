@@ -0,0 +1,219 @@
+package com.evernote.client.android.asyncclient;
+
+import com.evernote.edam.error.EDAMSystemException;
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.type.LinkedNotebook;
+import com.evernote.edam.type.NoteSortOrder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class SearchMergerTest {
+
+    @Test
+    public void testMergeDescending() throws Exception {
+        SearchMerger merger = new SearchMerger(createFilter(NoteSortOrder.UPDATED, false), new NotesMetadataResultSpec(), false);
+        LinkedNotebook linkedNotebook = new LinkedNotebook();
+        linkedNotebook.setGuid("linked");
+
+        merger.addSource(new TestSource(merger, null, 100, 70, 40));
+        merger.addSource(new TestSource(merger, linkedNotebook, 90, 80, 10));
+        merger.addSource(new TestSource(merger, null));
+
+        EvernoteSearchHelper.MergedResult result = merger.merge(0, 5, 10);
+        assertThat(getUpdated(result)).containsExactly(100L, 90L, 80L, 70L, 40L);
+        assertThat(result.getScope(0)).isEqualTo(EvernoteSearchHelper.Scope.PERSONAL_NOTES);
+        assertThat(result.getScope(1)).isEqualTo(EvernoteSearchHelper.Scope.LINKED_NOTEBOOKS);
+        assertThat(result.getLinkedNotebook(0)).isNull();
+        assertThat(result.getLinkedNotebook(1)).isSameAs(linkedNotebook);
+    }
+
+    @Test
+    public void testMergeAscending() throws Exception {
+        SearchMerger merger = new SearchMerger(createFilter(NoteSortOrder.CREATED, true), new NotesMetadataResultSpec(), false);
+        TestSource first = new TestSource(merger, null, 1, 4, 5);
+        TestSource second = new TestSource(merger, null, 2, 3, 6);
+        merger.addSource(first);
+        merger.addSource(second);
+
+        EvernoteSearchHelper.MergedResult result = merger.merge(0, 10, 10);
+        List<Long> created = new ArrayList<>();
+        for (NoteMetadata note : result.getNotes()) {
+            created.add(note.getCreated());
+        }
+        assertThat(created).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+
+        assertThat(first.mFilters.get(0).getOrder()).isEqualTo(NoteSortOrder.CREATED.getValue());
+        assertThat(first.mFilters.get(0).isAscending()).isTrue();
+        assertThat(first.mResultSpecs.get(0).isIncludeCreated()).isTrue();
+    }
+
+    @Test
+    public void testEqualNotesKeepSourceOrder() throws Exception {
+        SearchMerger merger = new SearchMerger(createFilter(NoteSortOrder.UPDATED, false), new NotesMetadataResultSpec(), false);
+        merger.addSource(new TestSource(merger, null, 5, 5));
+        LinkedNotebook linkedNotebook = new LinkedNotebook();
+        merger.addSource(new TestSource(merger, linkedNotebook, 5));
+
+        EvernoteSearchHelper.MergedResult result = merger.merge(0, 3, 10);
+        assertThat(result.getLinkedNotebook(0)).isNull();
+        assertThat(result.getLinkedNotebook(1)).isNull();
+        assertThat(result.getLinkedNotebook(2)).isSameAs(linkedNotebook);
+    }
+
+    @Test
+    public void testPageRefill() throws Exception {
+        SearchMerger merger = new SearchMerger(createFilter(NoteSortOrder.UPDATED, false), new NotesMetadataResultSpec(), false);
+        TestSource large = new TestSource(merger, null, 10, 9, 8, 7, 6, 1);
+        TestSource small = new TestSource(merger, null, 5);
+        merger.addSource(large);
+        merger.addSource(small);
+
+        EvernoteSearchHelper.MergedResult result = merger.merge(0, 5, 2);
+        assertThat(getUpdated(result)).containsExactly(10L, 9L, 8L, 7L, 6L);
+
+        // the last page only requests the remaining note
+        assertThat(large.mCalls).containsExactly("0/2", "2/2", "4/1");
+        assertThat(small.mCalls).containsExactly("0/2");
+    }
+
+    @Test
+    public void testOffsetAndMaxNotes() throws Exception {
+        SearchMerger merger = new SearchMerger(createFilter(NoteSortOrder.UPDATED, false), new NotesMetadataResultSpec(), false);
+        TestSource first = new TestSource(merger, null, 8, 6, 4, 2);
+        TestSource second = new TestSource(merger, null, 7, 5, 3, 1);
+        merger.addSource(first);
+        merger.addSource(second);
+
+        EvernoteSearchHelper.MergedResult result = merger.merge(2, 4, 100);
+        assertThat(getUpdated(result)).containsExactly(6L, 5L);
+
+        // no store is asked for more notes than the merged list can contain
+        assertThat(first.mCalls).containsExactly("0/4");
+        assertThat(second.mCalls).containsExactly("0/4");
+
+        merger = new SearchMerger(createFilter(NoteSortOrder.UPDATED, false), new NotesMetadataResultSpec(), false);
+        merger.addSource(new TestSource(merger, null, 3, 1));
+        merger.addSource(new TestSource(merger, null, 2));
+        assertThat(getUpdated(merger.merge(1, 10, 10))).containsExactly(2L, 1L);
+    }
+
+    @Test
+    public void testExplicitOrder() throws Exception {
+        NoteFilter noteFilter = new NoteFilter();
+        noteFilter.setWords("meeting");
+        SearchMerger merger = new SearchMerger(noteFilter, new NotesMetadataResultSpec(), false);
+
+        NoteFilter storeFilter = merger.createNoteFilter("notebook");
+        assertThat(storeFilter.isSetOrder()).isTrue();
+        assertThat(storeFilter.getOrder()).isEqualTo(NoteSortOrder.UPDATED.getValue());
+        assertThat(storeFilter.isSetAscending()).isTrue();
+        assertThat(storeFilter.isAscending()).isFalse();
+        assertThat(storeFilter.getNotebookGuid()).isEqualTo("notebook");
+        assertThat(storeFilter.getWords()).isEqualTo("meeting");
+
+        assertThat(noteFilter.isSetOrder()).isFalse();
+        assertThat(noteFilter.isSetNotebookGuid()).isFalse();
+        assertThat(merger.createNoteFilter(null).isSetNotebookGuid()).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedOrder() {
+        new SearchMerger(createFilter(NoteSortOrder.RELEVANCE, false), new NotesMetadataResultSpec(), false);
+    }
+
+    @Test
+    public void testFailingSource() throws Exception {
+        SearchMerger merger = new SearchMerger(createFilter(NoteSortOrder.UPDATED, false), new NotesMetadataResultSpec(), true);
+        merger.addSource(new FailingSource(merger));
+        merger.addSource(new TestSource(merger, null, 2, 1));
+        assertThat(getUpdated(merger.merge(0, 10, 10))).containsExactly(2L, 1L);
+
+        merger = new SearchMerger(createFilter(NoteSortOrder.UPDATED, false), new NotesMetadataResultSpec(), false);
+        merger.addSource(new FailingSource(merger));
+        merger.addSource(new TestSource(merger, null, 2, 1));
+        try {
+            merger.merge(0, 10, 10);
+            fail("expected exception");
+        } catch (EDAMSystemException e) {
+            // expected
+        }
+    }
+
+    private static NoteFilter createFilter(NoteSortOrder order, boolean ascending) {
+        NoteFilter noteFilter = new NoteFilter();
+        noteFilter.setOrder(order.getValue());
+        noteFilter.setAscending(ascending);
+        return noteFilter;
+    }
+
+    private static List<Long> getUpdated(EvernoteSearchHelper.MergedResult result) {
+        List<Long> updated = new ArrayList<>();
+        for (NoteMetadata note : result.getNotes()) {
+            updated.add(note.getUpdated());
+        }
+        return updated;
+    }
+
+    private static class TestSource extends SearchMerger.Source {
+
+        private final List<NoteMetadata> mNotes;
+        private final List<String> mCalls;
+        private final List<NoteFilter> mFilters;
+        private final List<NotesMetadataResultSpec> mResultSpecs;
+
+        /**
+         * @param values The sort keys in the order of the store, used as created and updated date.
+         */
+        private TestSource(SearchMerger merger, LinkedNotebook linkedNotebook, long... values) {
+            super(linkedNotebook == null ? EvernoteSearchHelper.Scope.PERSONAL_NOTES : EvernoteSearchHelper.Scope.LINKED_NOTEBOOKS,
+                    linkedNotebook, null, merger.createNoteFilter(null));
+
+            mNotes = new ArrayList<>();
+            for (long value : values) {
+                NoteMetadata note = new NoteMetadata();
+                note.setGuid("note" + value);
+                note.setCreated(value);
+                note.setUpdated(value);
+                mNotes.add(note);
+            }
+
+            mCalls = new ArrayList<>();
+            mFilters = new ArrayList<>();
+            mResultSpecs = new ArrayList<>();
+        }
+
+        @Override
+        protected NotesMetadataList loadPage(NoteFilter noteFilter, int offset, int maxNotes, NotesMetadataResultSpec resultSpec) throws Exception {
+            mCalls.add(offset + "/" + maxNotes);
+            mFilters.add(noteFilter);
+            mResultSpecs.add(resultSpec);
+
+            NotesMetadataList result = new NotesMetadataList();
+            result.setStartIndex(offset);
+            result.setTotalNotes(mNotes.size());
+            result.setNotes(new ArrayList<>(mNotes.subList(Math.min(offset, mNotes.size()), Math.min(offset + maxNotes, mNotes.size()))));
+            return result;
+        }
+    }
+
+    private static final class FailingSource extends TestSource {
+
+        private FailingSource(SearchMerger merger) {
+            super(merger, null);
+        }
+
+        @Override
+        protected NotesMetadataList loadPage(NoteFilter noteFilter, int offset, int maxNotes, NotesMetadataResultSpec resultSpec) throws Exception {
+            throw new EDAMSystemException();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.evernote.client.android.enml;
+
+import com.evernote.client.android.EvernoteUtil;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EnmlConverterTest {
+
+    private static final String HASH_IMAGE = "00ff00ff00ff00ff00ff00ff00ff00ff";
+    private static final String HASH_PDF = "00AA00AA00AA00AA00AA00AA00AA00AA";
+    private static final String HASH_UNKNOWN = "0123456789abcdef0123456789abcdef";
+
+    @Test
+    public void testMedia() throws Exception {
+        String html = toHtml("<en-media hash=\"" + HASH_IMAGE + "\" type=\"image/png\" width=\"10\"/>"
+                + "<en-media hash=\"" + HASH_PDF + "\" type=\"application/pdf\"/>"
+                + "<en-media hash=\"" + HASH_UNKNOWN + "\" type=\"image/png\"/>");
+
+        assertThat(html).isEqualTo("<div><img src=\"file:///res/" + HASH_IMAGE + "\" width=\"10\"/>"
+                + "<a href=\"file:///res/" + HASH_PDF + "\">application/pdf</a></div>");
+    }
+
+    @Test
+    public void testMediaPathTraversal() throws Exception {
+        String html = toHtml("<en-media hash=\"../../shared_prefs/x\" type=\"image/png\"/>"
+                + "<en-media hash=\"../../../00ff00ff00ff00ff00ff00ff00ff\" type=\"application/pdf\"/>"
+                + "<en-media hash=\"" + HASH_IMAGE + "/..\" type=\"image/png\"/>"
+                + "<en-media type=\"image/png\"/>");
+
+        assertThat(html).isEqualTo("<div></div>");
+
+        assertThat(EnmlConverter.isValidHash(HASH_IMAGE)).isTrue();
+        assertThat(EnmlConverter.isValidHash(HASH_PDF)).isTrue();
+        assertThat(EnmlConverter.isValidHash("00ff")).isFalse();
+        assertThat(EnmlConverter.isValidHash("00ff00ff00ff00ff00ff00ff00ff00fg")).isFalse();
+        assertThat(EnmlConverter.isValidHash("\u0660\u0661\u0662\u0663\u0664\u0665\u0666\u0667\u0668\u0669"
+                + "0123456789abcdef012345")).isFalse();
+        assertThat(EnmlConverter.isValidHash(null)).isFalse();
+
+        // resolvers don't trust the hash either
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        assertThat(new EnmlConverter.DirectoryMediaResolver(new File(directory, "res")).resolve("../" + directory.getName(), null)).isNull();
+    }
+
+    @Test
+    public void testTodoAndCrypt() throws Exception {
+        String html = toHtml("<en-todo checked=\"true\"/>a<en-todo/>b<en-crypt hint=\"h\">AAAA</en-crypt>");
+
+        assertThat(html).isEqualTo("<div><input type=\"checkbox\" disabled=\"disabled\" checked=\"checked\"/>a"
+                + "<input type=\"checkbox\" disabled=\"disabled\"/>b<span>[encrypted]</span></div>");
+    }
+
+    @Test
+    public void testEntities() throws Exception {
+        String html = toHtml("<p>&nbsp;&euro; &amp; &lt;b&gt; &quot;</p>");
+
+        assertThat(html).isEqualTo("<div><p>\u00a0\u20ac &amp; &lt;b&gt; &quot;</p></div>");
+    }
+
+    @Test
+    public void testPlainText() throws Exception {
+        StringWriter text = new StringWriter();
+        createConverter().toPlainText(new StringReader(EvernoteUtil.NOTE_PREFIX
+                + "<div><en-todo checked=\"true\"/>done</div><ul><li>one</li></ul><en-media hash=\"00ff\" type=\"image/png\"/>"
+                + "<en-crypt>AAAA</en-crypt>" + EvernoteUtil.NOTE_SUFFIX), text);
+
+        assertThat(text.toString()).isEqualTo("[x] done\n- one\n[image/png][encrypted]");
+    }
+
+    @Test
+    public void testMaliciousAttributes() throws Exception {
+        String html = toHtml("<a href=\"javascript:alert(1)\" onclick=\"alert(2)\" title=\"t\">a</a>"
+                + "<a href=\" JaVa&#9;Script:alert(3)\">b</a>"
+                + "<a href=\"https://evernote.com/?q=a:b\" target=\"_blank\">c</a>"
+                + "<a href=\"notes/1\">d</a>"
+                + "<img src=\"data:image/png;base64,AAAA\" alt=\"i\"/>"
+                + "<div style=\"color:red\" class=\"c\" id=\"i\" ONMOUSEOVER=\"alert(4)\">e</div>"
+                + "<span style=\"background: URL (http://x)\">f</span>"
+                + "<span style=\"width: expression(alert(5))\">g</span>");
+
+        assertThat(html).isEqualTo("<div><a title=\"t\">a</a>"
+                + "<a>b</a>"
+                + "<a href=\"https://evernote.com/?q=a:b\" target=\"_blank\">c</a>"
+                + "<a href=\"notes/1\">d</a>"
+                + "<img alt=\"i\"/>"
+                + "<div style=\"color:red\">e</div>"
+                + "<span>f</span>"
+                + "<span>g</span></div>");
+    }
+
+    @Test
+    public void testProhibitedElements() throws Exception {
+        String html = toHtml("a<script>alert(1)</script><iframe src=\"https://x\"><p>b</p></iframe>c");
+
+        assertThat(html).isEqualTo("<div>ac</div>");
+    }
+
+    @Test
+    public void testAllowedUrl() {
+        assertThat(EnmlConverter.isAllowedUrl("http://evernote.com")).isTrue();
+        assertThat(EnmlConverter.isAllowedUrl("mailto:a@b.c")).isTrue();
+        assertThat(EnmlConverter.isAllowedUrl("#top")).isTrue();
+        assertThat(EnmlConverter.isAllowedUrl("a/b:c")).isTrue();
+        assertThat(EnmlConverter.isAllowedUrl("vbscript:x")).isFalse();
+        assertThat(EnmlConverter.isAllowedUrl("\u0001javascript:x")).isFalse();
+        assertThat(EnmlConverter.isAllowedUrl("data:text/html,x")).isFalse();
+    }
+
+    private static String toHtml(String body) throws Exception {
+        StringWriter html = new StringWriter();
+        createConverter().toHtml(new StringReader(EvernoteUtil.NOTE_PREFIX + body + EvernoteUtil.NOTE_SUFFIX), html);
+        return html.toString();
+    }
+
+    private static EnmlConverter createConverter() {
+        return new EnmlConverter(new EnmlConverter.MediaResolver() {
+            @Override
+            public String resolve(String hashHex, String mimeType) {
+                return HASH_UNKNOWN.equals(hashHex) ? null : "file:///res/" + hashHex;
+            }
+        }) {
+            @Override
+            XmlPullParser newPullParser() {
+                // android.util.Xml isn't available in unit tests, it returns the same parser on devices
+                return new KXmlParser();
+            }
+        };
+    }
+}
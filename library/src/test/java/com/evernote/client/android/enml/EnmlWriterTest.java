@@ -0,0 +1,65 @@
+package com.evernote.client.android.enml;
+
+import com.evernote.client.android.EvernoteUtil;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EnmlWriterTest {
+
+    @Test
+    public void testStructureAndEscaping() throws Exception {
+        StringWriter content = new StringWriter();
+        new EnmlWriter(content)
+                .startNote()
+                .startElement("div").attribute("style", "a\"b").text("1 < 2 & 3 > 2").endElement()
+                .lineBreak()
+                .media("0011", "image/png")
+                .todo(true)
+                .startElement("p").text(new StringReader("<x>"))
+                .endNote();
+
+        assertThat(content.toString()).isEqualTo(EvernoteUtil.NOTE_PREFIX
+                + "<div style=\"a&quot;b\">1 &lt; 2 &amp; 3 &gt; 2</div>"
+                + "<br/>"
+                + "<en-media hash=\"0011\" type=\"image/png\"/>"
+                + "<en-todo checked=\"true\"/>"
+                + "<p>&lt;x&gt;</p>"
+                + EvernoteUtil.NOTE_SUFFIX);
+    }
+
+    @Test
+    public void testControlCharactersDropped() throws Exception {
+        StringWriter content = new StringWriter();
+        new EnmlWriter(content).startNote().text("a\u0001b\tc").endNote();
+
+        assertThat(content.toString()).isEqualTo(EvernoteUtil.NOTE_PREFIX + "ab\tc" + EvernoteUtil.NOTE_SUFFIX);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidElement() throws Exception {
+        new EnmlWriter(new StringWriter()).startNote().startElement("script");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProhibitedAttribute() throws Exception {
+        new EnmlWriter(new StringWriter()).startNote().startElement("div").attribute("onclick", "x()");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAttributeAfterContent() throws Exception {
+        new EnmlWriter(new StringWriter()).startNote().startElement("div").text("a").attribute("style", "b");
+    }
+
+    @Test
+    public void testNonValidating() throws Exception {
+        StringWriter content = new StringWriter();
+        new EnmlWriter(content, false).startNote().startElement("custom").attribute("id", "1").endNote();
+
+        assertThat(content.toString()).isEqualTo(EvernoteUtil.NOTE_PREFIX + "<custom id=\"1\"/>" + EvernoteUtil.NOTE_SUFFIX);
+    }
+}
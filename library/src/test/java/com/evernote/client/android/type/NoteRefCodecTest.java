@@ -0,0 +1,92 @@
+package com.evernote.client.android.type;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NoteRefCodecTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        List<NoteRef> noteRefs = Arrays.asList(
+                new NoteRef("note1", "notebook1", "Title", false),
+                new NoteRef("note2", null, "\u00dcbersicht \u65e5\u672c", true),
+                new NoteRef("note3", "notebook1", "", false));
+
+        NoteRefList decoded = NoteRefCodec.decode(NoteRefCodec.encode(noteRefs));
+        assertThat(decoded).isEqualTo(noteRefs);
+
+        NoteRefList copy = NoteRefList.copyOf(noteRefs);
+        assertThat(NoteRefCodec.encode(copy)).isEqualTo(NoteRefCodec.encode(noteRefs));
+    }
+
+    @Test
+    public void testNotebookGuidWrittenOnce() throws Exception {
+        String notebookGuid = "12345678-1234-1234-1234-123456789012";
+
+        List<NoteRef> noteRefs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            noteRefs.add(new NoteRef("n" + i, notebookGuid, "t", false));
+        }
+
+        byte[] data = NoteRefCodec.encode(noteRefs);
+        assertThat(data.length).isLessThan(notebookGuid.length() + 200 * 8);
+        assertThat(NoteRefCodec.decode(data)).isEqualTo(noteRefs);
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        List<NoteRef> noteRefs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            noteRefs.add(new NoteRef("note" + i, "notebook" + (i % 7), "Title " + i, i % 2 == 0));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NoteRefCodec.writeList(out, noteRefs);
+        NoteRefCodec.writeList(out, null);
+        NoteRefCodec.writeList(out, NoteRefList.empty());
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertThat(NoteRefCodec.readList(in)).isEqualTo(noteRefs);
+        assertThat(NoteRefCodec.readList(in)).isNull();
+        assertThat(NoteRefCodec.readList(in)).isEmpty();
+        assertThat(in.read()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        File file = new File(mTemporaryFolder.getRoot(), "search/last");
+        assertThat(NoteRefCodec.readFromFile(file)).isNull();
+
+        List<NoteRef> noteRefs = Arrays.asList(new NoteRef("note1", "notebook1", "Title", false));
+        NoteRefCodec.writeToFile(file, noteRefs);
+        assertThat(NoteRefCodec.readFromFile(file)).isEqualTo(noteRefs);
+
+        NoteRefCodec.writeToFile(file, NoteRefList.empty());
+        assertThat(NoteRefCodec.readFromFile(file)).isEmpty();
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        byte[] data = NoteRefCodec.encode(Arrays.asList(new NoteRef("note1", "notebook1", "Title", false)));
+        NoteRefCodec.decode(Arrays.copyOf(data, data.length - 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrongHeader() throws Exception {
+        NoteRefCodec.decode(new byte[]{1, 2, 3, 4});
+    }
+}
@@ -0,0 +1,154 @@
+package com.evernote.client.android.type;
+
+import com.evernote.client.android.asyncclient.EvernoteLinkedNotebookCache;
+import com.evernote.edam.error.EDAMErrorCode;
+import com.evernote.edam.error.EDAMNotFoundException;
+import com.evernote.edam.error.EDAMUserException;
+import com.evernote.edam.type.LinkedNotebook;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class NoteRefHelperTest {
+
+    @Test
+    public void testGroupByNoteStore() throws Exception {
+        NoteRef personal1 = new NoteRef("p1", "notebook", "t", false);
+        NoteRef personal2 = new NoteRef("p2", "notebook", "t", false);
+        NoteRef linked1 = new NoteRef("l1", "linkedA", "t", true);
+        NoteRef linked2 = new NoteRef("l2", "linkedB", "t", true);
+        NoteRef linked3 = new NoteRef("l3", "linkedA", "t", true);
+        NoteRef business1 = new NoteRef("b1", "businessA", "t", true);
+        NoteRef business2 = new NoteRef("b2", "businessB", "t", true);
+        NoteRef unknown = new NoteRef("u", "unknown", "t", true);
+
+        List<NoteRef> noteRefs = Arrays.asList(personal1, linked1, business1, personal2, linked2, linked3, business2, unknown, personal1);
+        NoteRefHelper.Groups groups = NoteRefHelper.group(noteRefs, new TestCache());
+
+        assertThat(groups.mPersonal).containsExactly(personal1, personal2);
+        assertThat(groups.mBusiness).containsExactly(business1, business2);
+        assertThat(groups.mLinked.keySet()).containsExactly("linkedA", "linkedB");
+        assertThat(groups.mLinked.get("linkedA")).containsExactly(linked1, linked3);
+        assertThat(groups.mLinked.get("linkedB")).containsExactly(linked2);
+        assertThat(groups.mLinkedNotebooks.get("linkedA").getGuid()).isEqualTo("linkedA");
+    }
+
+    @Test
+    public void testTasksRunInParallel() throws Exception {
+        final int taskCount = 4;
+        final CountDownLatch allStarted = new CountDownLatch(taskCount);
+        final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < taskCount; i++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    threads.add(Thread.currentThread());
+                    allStarted.countDown();
+                    // only returns, if all tasks run at the same time
+                    assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+                    return null;
+                }
+            });
+        }
+
+        NoteRefHelper.invokeAll(tasks);
+
+        assertThat(threads).hasSize(taskCount);
+        assertThat(threads).contains(Thread.currentThread());
+        for (Thread thread : threads) {
+            if (thread != Thread.currentThread()) {
+                assertThat(thread.isDaemon()).isTrue();
+            }
+        }
+    }
+
+    @Test
+    public void testExceptionOfCallingThread() throws Exception {
+        try {
+            NoteRefHelper.invokeAll(Arrays.asList(createFailingTask(new EDAMNotFoundException()), createTask()));
+            fail("expected exception");
+        } catch (EDAMNotFoundException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testExceptionOfPoolThread() throws Exception {
+        EDAMUserException exception = new EDAMUserException(EDAMErrorCode.PERMISSION_DENIED);
+        try {
+            NoteRefHelper.invokeAll(Arrays.asList(createTask(), createFailingTask(exception)));
+            fail("expected exception");
+        } catch (EDAMUserException e) {
+            assertThat(e).isSameAs(exception);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnexpectedCheckedException() throws Exception {
+        NoteRefHelper.invokeAll(Arrays.asList(createTask(), createFailingTask(new IOException())));
+    }
+
+    private static Callable<Void> createTask() {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                return null;
+            }
+        };
+    }
+
+    private static Callable<Void> createFailingTask(final Exception exception) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                throw exception;
+            }
+        };
+    }
+
+    private static final class TestCache extends EvernoteLinkedNotebookCache {
+
+        private TestCache() {
+            super(null, 60000L, 100);
+        }
+
+        @Override
+        protected String getAuthToken() {
+            return "token";
+        }
+
+        @Override
+        protected int loadUpdateCount() {
+            return 1;
+        }
+
+        @Override
+        protected List<LinkedNotebook> loadLinkedNotebooks() {
+            List<LinkedNotebook> result = new ArrayList<>();
+            for (String guid : Arrays.asList("linkedA", "linkedB", "businessA", "businessB")) {
+                LinkedNotebook linkedNotebook = new LinkedNotebook();
+                linkedNotebook.setGuid(guid);
+                if (guid.startsWith("business")) {
+                    linkedNotebook.setBusinessId(1);
+                }
+                result.add(linkedNotebook);
+            }
+            return result;
+        }
+    }
+}
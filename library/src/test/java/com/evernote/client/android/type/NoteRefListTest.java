@@ -0,0 +1,70 @@
+package com.evernote.client.android.type;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NoteRefListTest {
+
+    @Test
+    public void testBuilder() {
+        NoteRefList list = new NoteRefList.Builder(2)
+                .add("note1", "notebook1", "Title 1", false)
+                .add("note2", null, "Title 2", true)
+                .build();
+
+        assertThat(list).hasSize(2);
+        assertThat(list.getGuid(0)).isEqualTo("note1");
+        assertThat(list.getNotebookGuid(0)).isEqualTo("notebook1");
+        assertThat(list.getTitle(0)).isEqualTo("Title 1");
+        assertThat(list.isLinked(0)).isFalse();
+
+        assertThat(list.getNotebookGuid(1)).isNull();
+        assertThat(list.isLinked(1)).isTrue();
+
+        assertThat(list.get(0)).isEqualTo(new NoteRef("note1", "notebook1", "Title 1", false));
+        assertThat(list.get(1)).isEqualTo(new NoteRef("note2", null, "Title 2", true));
+    }
+
+    @Test
+    public void testNotebookGuidShared() {
+        NoteRefList.Builder builder = new NoteRefList.Builder(0);
+        for (int i = 0; i < 100; i++) {
+            builder.add("note" + i, "notebook" + (i % 3), "Title " + i, false);
+        }
+        NoteRefList list = builder.build();
+
+        assertThat(list).hasSize(100);
+        assertThat(list.getNotebookGuid(99)).isEqualTo("notebook0");
+        assertThat(list.getNotebookGuid(0)).isSameAs(list.getNotebookGuid(3));
+    }
+
+    @Test
+    public void testCopyOf() {
+        List<NoteRef> noteRefs = new ArrayList<>();
+        noteRefs.add(new NoteRef("note1", "notebook1", "Title 1", false));
+        noteRefs.add(new NoteRef("note2", "notebook2", "Title 2", true));
+
+        NoteRefList list = NoteRefList.copyOf(noteRefs);
+        assertThat(list).isEqualTo(noteRefs);
+        assertThat(list.hashCode()).isEqualTo(noteRefs.hashCode());
+        assertThat(NoteRefList.copyOf(list)).isSameAs(list);
+    }
+
+    @Test
+    public void testAddAll() {
+        NoteRefList first = new NoteRefList.Builder(1).add("note1", "notebook1", "Title 1", false).build();
+        NoteRefList second = new NoteRefList.Builder(1).add("note2", "notebook1", "Title 2", false).build();
+
+        NoteRefList list = new NoteRefList.Builder(0).addAll(first).addAll(second).build();
+        assertThat(list).containsExactly(first.get(0), second.get(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        NoteRefList.empty().add(new NoteRef("note1", "notebook1", "Title 1", false));
+    }
+}
@@ -0,0 +1,113 @@
+package com.evernote.client.android.type;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NoteRefPrefetcherTest {
+
+    @Test
+    public void testPrefetchAhead() throws Exception {
+        TestPrefetcher prefetcher = new TestPrefetcher(2);
+        List<NoteRef> noteRefs = createNoteRefs(20);
+
+        prefetcher.onWindowChanged(noteRefs, 5, 3, true);
+        prefetcher.awaitIdle();
+        assertThat(prefetcher.mLoaded).containsExactly("note5", "note6", "note7", "note8", "note9");
+
+        prefetcher.onWindowChanged(noteRefs, 5, 3, false);
+        prefetcher.awaitIdle();
+        assertThat(prefetcher.mLoaded).containsExactly("note5", "note6", "note7", "note8", "note9", "note4", "note3");
+
+        assertThat(prefetcher.getHtml(noteRefs.get(9))).isEqualTo("html note9");
+        assertThat(prefetcher.mLoaded).hasSize(7);
+
+        assertThat(prefetcher.getHtml(noteRefs.get(15))).isEqualTo("html note15");
+        assertThat(prefetcher.mLoaded).hasSize(8);
+
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void testStalePrefetchDropped() throws Exception {
+        TestPrefetcher prefetcher = new TestPrefetcher(0);
+        prefetcher.mBlock = new CountDownLatch(1);
+        List<NoteRef> noteRefs = createNoteRefs(20);
+
+        prefetcher.onWindowChanged(noteRefs, 0, 3, true);
+        assertThat(prefetcher.mStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        prefetcher.onWindowChanged(noteRefs, 10, 3, true);
+        prefetcher.mBlock.countDown();
+        prefetcher.awaitIdle();
+
+        // the first note was already running, the other two were dropped
+        assertThat(prefetcher.mLoaded).containsExactly("note0", "note10", "note11", "note12");
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void testNotAllowed() throws Exception {
+        TestPrefetcher prefetcher = new TestPrefetcher(5);
+        prefetcher.mAllowed = false;
+
+        prefetcher.onWindowChanged(createNoteRefs(20), 0, 3, true);
+        prefetcher.awaitIdle();
+        assertThat(prefetcher.mLoaded).isEmpty();
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void testBandwidthBudget() throws Exception {
+        TestPrefetcher prefetcher = new TestPrefetcher(5);
+        prefetcher.setBandwidthBudget(1);
+
+        prefetcher.onWindowChanged(createNoteRefs(20), 0, 3, true);
+        prefetcher.awaitIdle();
+        assertThat(prefetcher.mLoaded).containsExactly("note0");
+        prefetcher.shutdown();
+    }
+
+    private static List<NoteRef> createNoteRefs(int count) {
+        List<NoteRef> noteRefs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            noteRefs.add(new NoteRef("note" + i, "notebook", "Title " + i, false));
+        }
+        return noteRefs;
+    }
+
+    private static final class TestPrefetcher extends NoteRefPrefetcher {
+
+        private final List<String> mLoaded = Collections.synchronizedList(new ArrayList<String>());
+        private volatile boolean mAllowed = true;
+        private volatile CountDownLatch mBlock;
+        private final CountDownLatch mStarted = new CountDownLatch(1);
+
+        private TestPrefetcher(int prefetchCount) {
+            super(Target.HTML, prefetchCount, 1024 * 1024);
+        }
+
+        @Override
+        protected String loadHtml(@NonNull NoteRef noteRef) throws Exception {
+            mStarted.countDown();
+            CountDownLatch block = mBlock;
+            if (block != null) {
+                block.await();
+            }
+            mLoaded.add(noteRef.getGuid());
+            return "html " + noteRef.getGuid();
+        }
+
+        @Override
+        protected boolean isPrefetchAllowed() {
+            return mAllowed;
+        }
+    }
+}
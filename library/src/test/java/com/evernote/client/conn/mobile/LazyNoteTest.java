@@ -0,0 +1,130 @@
+package com.evernote.client.conn.mobile;
+
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.NoteAttributes;
+import com.evernote.edam.type.Resource;
+import com.evernote.thrift.protocol.TBinaryProtocol;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LazyNoteTest {
+
+    @Test
+    public void testContentDecodedOnAccess() throws Exception {
+        Note note = createNote();
+        LazyNote lazyNote = read(write(note));
+
+        assertThat(lazyNote.isContentPending()).isTrue();
+        assertThat(lazyNote.getTitle()).isEqualTo(note.getTitle());
+        assertThat(lazyNote.getTagNames()).isEqualTo(note.getTagNames());
+        assertThat(lazyNote.getResources()).hasSize(1);
+        assertThat(lazyNote.isContentPending()).isTrue();
+
+        InputStream contentStream = lazyNote.openContentStream();
+        assertThat(contentStream).isNotNull();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        int b;
+        while ((b = contentStream.read()) != -1) {
+            content.write(b);
+        }
+        assertThat(content.toString("UTF-8")).isEqualTo(note.getContent());
+        assertThat(lazyNote.isContentPending()).isTrue();
+
+        assertThat(lazyNote.getContent()).isEqualTo(note.getContent());
+        assertThat(lazyNote.isContentPending()).isFalse();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Note note = createNote();
+        LazyNote lazyNote = read(write(note));
+
+        Note copy = new Note();
+        copy.read(new TBinaryProtocol(new TStreamTransport(new ByteArrayInputStream(write(lazyNote)), null)));
+        assertThat(copy).isEqualTo(note);
+    }
+
+    @Test
+    public void testCopyPendingContent() throws Exception {
+        Note note = createNote();
+
+        LazyNote lazyNote = read(write(note));
+        assertThat(new Note(lazyNote).getContent()).isEqualTo(note.getContent());
+        assertThat(lazyNote.isContentPending()).isFalse();
+
+        lazyNote = read(write(note));
+        assertThat(lazyNote.deepCopy()).isEqualTo(note);
+
+        lazyNote = read(write(note));
+        assertThat(lazyNote.isSetContent()).isTrue();
+        assertThat(lazyNote.isContentPending()).isFalse();
+    }
+
+    @Test
+    public void testComparePendingContent() throws Exception {
+        Note note = createNote();
+
+        assertThat(read(write(note)).equals(note)).isTrue();
+        assertThat(note.equals(read(write(note)))).isTrue();
+        assertThat(read(write(note)).equals(read(write(note)))).isTrue();
+        assertThat(read(write(note)).hashCode()).isEqualTo(note.hashCode());
+        assertThat(read(write(note)).compareTo(note)).isEqualTo(0);
+        assertThat(note.compareTo(read(write(note)))).isEqualTo(0);
+
+        Note other = new Note(note);
+        other.setContent("<en-note/>");
+        assertThat(read(write(note)).equals(other)).isFalse();
+        assertThat(other.equals(read(write(note)))).isFalse();
+    }
+
+    @Test
+    public void testSetContentDropsPendingBytes() throws Exception {
+        LazyNote lazyNote = read(write(createNote()));
+        lazyNote.setContent("replaced");
+
+        assertThat(lazyNote.isContentPending()).isFalse();
+        assertThat(lazyNote.getContent()).isEqualTo("replaced");
+    }
+
+    private static Note createNote() {
+        Note note = new Note();
+        note.setGuid("guid");
+        note.setTitle("Title \u00e4");
+        note.setContent("<en-note>\u00fc\u20ac</en-note>");
+        note.setCreated(1L);
+        note.setUpdated(2L);
+        note.setActive(true);
+        note.setUpdateSequenceNum(3);
+        note.setNotebookGuid("notebook");
+        note.setTagNames(Arrays.asList("a", "b"));
+
+        NoteAttributes attributes = new NoteAttributes();
+        attributes.setAuthor("author");
+        note.setAttributes(attributes);
+
+        Resource resource = new Resource();
+        resource.setMime("image/png");
+        note.setResources(Collections.singletonList(resource));
+        return note;
+    }
+
+    private static byte[] write(Note note) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        note.write(new TBinaryProtocol(new TStreamTransport(null, outputStream)));
+        return outputStream.toByteArray();
+    }
+
+    private static LazyNote read(byte[] data) throws Exception {
+        LazyNote note = new LazyNote();
+        note.read(new TBinaryProtocol(new TStreamTransport(new ByteArrayInputStream(data), null)));
+        return note;
+    }
+}
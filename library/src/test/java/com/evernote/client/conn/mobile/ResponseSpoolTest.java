@@ -0,0 +1,69 @@
+package com.evernote.client.conn.mobile;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseSpoolTest {
+
+    @Test
+    public void testInMemory() throws Exception {
+        ResponseSpool spool = new ResponseSpool.Factory(createCacheDir(), 1024).create();
+        byte[] data = createRandomData(1000);
+
+        spool.spool(new ByteArrayInputStream(data));
+        assertThat(spool.isSwapped()).isFalse();
+        assertThat(spool.getLength()).isEqualTo(data.length);
+        assertThat(readAll(spool)).isEqualTo(data);
+
+        spool.close();
+    }
+
+    @Test
+    public void testSwappedAndRewind() throws Exception {
+        File cacheDir = createCacheDir();
+        ResponseSpool spool = new ResponseSpool.Factory(cacheDir, 1024).create();
+        byte[] data = createRandomData(200 * 1024 + 3);
+
+        spool.spool(new ByteArrayInputStream(data));
+        assertThat(spool.isSwapped()).isTrue();
+        assertThat(readAll(spool)).isEqualTo(data);
+        assertThat(spool.getPosition()).isEqualTo(data.length);
+
+        spool.rewind();
+        assertThat(spool.getPosition()).isEqualTo(0);
+        assertThat(readAll(spool)).isEqualTo(data);
+
+        byte[] smaller = createRandomData(10);
+        spool.spool(new ByteArrayInputStream(smaller));
+        assertThat(spool.isSwapped()).isFalse();
+        assertThat(readAll(spool)).isEqualTo(smaller);
+
+        spool.close();
+    }
+
+    private static byte[] readAll(ResponseSpool spool) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[777];
+        int read;
+        while ((read = spool.read(buffer, 0, buffer.length)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static File createCacheDir() {
+        return new File(System.getProperty("java.io.tmpdir"), "responseSpoolTest");
+    }
+
+    private static byte[] createRandomData(int length) {
+        byte[] data = new byte[length];
+        new Random().nextBytes(data);
+        return data;
+    }
+}
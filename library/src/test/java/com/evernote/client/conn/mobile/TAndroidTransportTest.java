@@ -0,0 +1,89 @@
+package com.evernote.client.conn.mobile;
+
+import com.evernote.edam.type.Data;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Resource;
+import com.evernote.thrift.protocol.TBinaryProtocol;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TAndroidTransportTest {
+
+    @Test
+    public void testBinaryFieldsAcrossBufferRefills() throws Exception {
+        // small binary fields before and after each 16 KB refill boundary
+        Note note = new Note();
+        note.setGuid("note");
+        note.setContentHash(createBytes(16, 1));
+        for (int i = 0; i < 12; i++) {
+            Data data = new Data();
+            data.setBodyHash(createBytes(16, 10 + i));
+            data.setBody(createBytes(3000 + i * 7, 50 + i));
+            data.setSize(data.getBody().length);
+
+            Resource resource = new Resource();
+            resource.setGuid("resource" + i);
+            resource.setData(data);
+            note.addToResources(resource);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        note.write(new TBinaryProtocol(new TStreamTransport(null, out)));
+        byte[] response = out.toByteArray();
+        assertThat(response.length).isGreaterThan(2 * 16 * 1024);
+
+        TAndroidTransport transport = new TAndroidTransport(createHttpClient(response), new MemoryByteStore.Factory().create(),
+                "https://www.evernote.com/edam/note/s1");
+        transport.flush();
+
+        Note decoded = new Note();
+        decoded.read(new TBinaryProtocol(transport));
+
+        // the decoded values must not change, while the remaining response is read
+        assertThat(decoded.getContentHash()).isEqualTo(createBytes(16, 1));
+        assertThat(decoded.getResourcesSize()).isEqualTo(12);
+        for (int i = 0; i < 12; i++) {
+            Data data = decoded.getResources().get(i).getData();
+            assertThat(data.getBodyHash()).isEqualTo(createBytes(16, 10 + i));
+            assertThat(data.getBody()).isEqualTo(createBytes(3000 + i * 7, 50 + i));
+        }
+        assertThat(decoded).isEqualTo(note);
+    }
+
+    private static byte[] createBytes(int length, int seed) {
+        byte[] result = new byte[length];
+        Arrays.fill(result, (byte) seed);
+        result[0] = (byte) (seed + 1);
+        result[length - 1] = (byte) (seed + 2);
+        return result;
+    }
+
+    private static OkHttpClient createHttpClient(final byte[] response) {
+        OkHttpClient httpClient = new OkHttpClient();
+        httpClient.interceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(MediaType.parse("application/x-thrift"), response))
+                        .build();
+            }
+        });
+        return httpClient;
+    }
+}